@@ -0,0 +1,274 @@
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks that steady-state playback allocates nothing. A dense pattern (every pad, a synth note and a pitched tone on
+ * every step, each track through a full effects chain) is played headlessly, and the bytes allocated are read from
+ * com.sun.management.ThreadMXBean and held to a budget:
+ *
+ * - Offline, the harness thread does exactly what the transport and render threads do, for thousands of steps, and
+ *   each part is measured on its own: draining the command queue, dispatching a step (the model's triggers and the
+ *   transport's listeners), and mixing and converting a block. Edits are posted now and then; applying one publishes
+ *   a new copy-on-write matrix snapshot, so draining is allowed EDIT_BYTES per edit and nothing else.
+ * - Live, the real transport and render threads play the pattern at the fastest tempo, with edits posted from this
+ *   thread, and their allocation after the first LIVE_WARMUP_MILLIS is held to the same budgets. Until the JIT has
+ *   compiled the mixing code for what the live threads do, the vector kernels run as code that boxes every vector,
+ *   about 20 MB in the first few seconds here and nothing after. That warm-up is counted too, from the threads'
+ *   start, and held to WARMUP_BYTES, so a change that makes it bigger, or longer than LIVE_WARMUP_MILLIS, fails.
+ *
+ * The offline warm-up runs aren't counted: they mix blocks back to back as fast as this thread can, so what they
+ * allocate depends only on how many blocks run before the JIT is done, not on anything playback would see. The live
+ * warm-up is the same cost at the rate the engine really pays it.
+ *
+ * Prints what each part allocated and exits with status 1 if any budget was exceeded.
+ * Usage: AllocationBudgetTest [offline steps] [live seconds]
+ */
+public class AllocationBudgetTest {
+
+    //Instance variables
+    private static final long STEP_BYTES = 0;
+    private static final long BLOCK_BYTES = 0;
+    private static final long EDIT_BYTES = 256;
+    private static final long LIVE_WARMUP_MILLIS = 10_000;
+    private static final long WARMUP_BYTES = 32 << 20;
+    private static final int WARMUP_STEPS = 512;
+    private static final int WARMUP_RUNS = 4;
+    private static final int EDIT_EVERY = 8;
+    private static final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private static final List<String> failures = new ArrayList<>();
+
+    public static void main(String[] args) throws Exception {
+        int steps = args.length > 0 ? Integer.parseInt(args[0]) : 4096;
+        double seconds = args.length > 1 ? Double.parseDouble(args[1]) : 8;
+        offline(steps);
+        live(seconds);
+        if(failures.isEmpty()) {
+            System.out.println("PASS: every budget met");
+            System.exit(0);
+        }
+        for(String failure : failures) {
+            System.out.println("FAIL: " + failure);
+        }
+        System.exit(1);
+    }
+
+    /*
+     * Drives the playback path on this thread and measures each part separately. The warm-up runs through the same
+     * method as the measurement, so the measured steps are played by code the JIT compiled from its entry rather
+     * than by a loop compiled on stack, whose deoptimization would reallocate objects it had eliminated.
+     */
+    private static void offline(int steps) {
+        try(BeatEngine beats = new BeatEngine(null)) {
+            Model model = beats.getModel();
+            PcmSample[] sounds = dense(beats, model);
+            Offline run = new Offline(beats, sounds);
+            for(int i = 0; i < WARMUP_RUNS; i++) {
+                run.play(WARMUP_STEPS);
+            }
+            run.reset();
+            run.play(steps);
+            System.out.printf("offline: %d steps, %d blocks, %d edits, up to %d voices, %d stolen%n", steps,
+                    run.blocks, run.edits, beats.getMetrics().getMaxActiveVoices(),
+                    model.getMixEngine().getVoices().getStolen());
+            check("command draining", run.drained, run.edits * EDIT_BYTES, run.edits + " edits");
+            check("step dispatch", run.dispatched, steps * STEP_BYTES, steps + " steps");
+            check("mixing", run.mixed, run.blocks * BLOCK_BYTES, run.blocks + " blocks");
+        }
+    }
+
+    /*
+     * Plays the pattern on the real threads at the fastest tempo and measures everything they allocate.
+     */
+    private static void live(double seconds) throws InterruptedException {
+        try(BeatEngine beats = new BeatEngine(new NullSink())) {
+            Model model = beats.getModel();
+            PcmSample[] sounds = dense(beats, model);
+            model.updateTempo(new Tempo(Tempo.MAX_BPM, 4));
+            int[][] single = singleSteps();
+            Transport transport = beats.getTransport();
+            transport.start();
+            Thread transportThread = find("transport");
+            Thread renderThread = find("render");
+            Thread.sleep(LIVE_WARMUP_MILLIS);
+
+            long transportBefore = threads.getThreadAllocatedBytes(transportThread.getId());
+            long renderBefore = threads.getThreadAllocatedBytes(renderThread.getId());
+            long stepsBefore = beats.getMetrics().getSteps();
+            int edits = 0;
+            long end = System.nanoTime() + (long) (seconds * 1e9);
+            for(int count = 0; System.nanoTime() < end; count++) {
+                edits += edit(model, sounds, single, count * EDIT_EVERY);
+                Thread.sleep(50);
+            }
+            Thread.sleep(200);
+            long transportBytes = threads.getThreadAllocatedBytes(transportThread.getId()) - transportBefore;
+            long renderBytes = threads.getThreadAllocatedBytes(renderThread.getId()) - renderBefore;
+            long steps = beats.getMetrics().getSteps() - stepsBefore;
+            transport.stop();
+
+            RenderThread render = model.getMixEngine().getRenderThread();
+            System.out.printf("live: %.0f s at %.0f BPM, %d steps, %d edits, %d underruns%n", seconds, Tempo.MAX_BPM,
+                    steps, edits, render.getUnderruns());
+            check("warm-up", transportBefore + renderBefore, WARMUP_BYTES,
+                    "both threads' first " + LIVE_WARMUP_MILLIS / 1000 + " s");
+            check("transport thread", transportBytes, edits * EDIT_BYTES + steps * STEP_BYTES,
+                    steps + " steps, " + edits + " edits");
+            long blocks = (long) (seconds * model.getMixEngine().getSampleRate()
+                    / model.getMixEngine().getBlockFrames());
+            check("render thread", renderBytes, blocks * BLOCK_BYTES, "about " + blocks + " blocks");
+        }
+    }
+
+    /*
+     * Loads the pads, a tone and a synth note, puts all of them on every step, and gives each its own track with a
+     * filter, pan and both sends. Returns the sounds edits are made with.
+     */
+    private static PcmSample[] dense(BeatEngine beats, Model model) {
+        PcmSample[] sounds = new PcmSample[MixSettings.TRACKS];
+        for(int i = 0; i < MixSettings.LOOP_TRACKS; i++) {
+            sounds[MixSettings.FIRST_LOOP + i] = beats.loadSound("loops/" + i + ".wav");
+        }
+        for(int i = 0; i < MixSettings.SAMPLE_TRACKS; i++) {
+            sounds[MixSettings.FIRST_SAMPLE + i] = beats.loadSound("samples/" + i + ".wav");
+        }
+        sounds[MixSettings.MELODY] = SynthNote.of(64);
+        MixSettings settings = model.getMixSettings();
+        int[] every = new int[Model.BEATS_IN_MEASURE];
+        for(int step = 0; step < every.length; step++) {
+            every[step] = step;
+        }
+        for(int track = 0; track < sounds.length; track++) {
+            if(track == MixSettings.MELODY) {
+                settings.routeSynth(track);
+            } else {
+                settings.route(sounds[track], track);
+            }
+            ChannelStrip strip = settings.getStrip(track);
+            strip.setFilter(1000 + 300 * track, 0.5);
+            strip.setPan(track % 2 == 0 ? -0.4 : 0.4);
+            strip.setSends(0.2, 0.2);
+            model.getCommands().addSound(every, sounds[track]);
+        }
+        model.getCommands().addSound(every, beats.loadSound("tones/2.wav"));
+        model.applyCommands();
+        return sounds;
+    }
+
+    /*
+     * Arrays of one step each, to post edits with.
+     */
+    private static int[][] singleSteps() {
+        int[][] single = new int[Model.BEATS_IN_MEASURE][];
+        for(int step = 0; step < single.length; step++) {
+            single[step] = new int[]{step};
+        }
+        return single;
+    }
+
+    /*
+     * Takes a sound off a step, or puts it back, alternately. Returns the number of edits posted.
+     */
+    private static int edit(Model model, PcmSample[] sounds, int[][] single, int count) {
+        int n = count / EDIT_EVERY;
+        PcmSample sound = sounds[n / 2 % sounds.length];
+        int[] step = single[n / 2 % single.length];
+        boolean posted = n % 2 == 0 ? model.getCommands().removeSound(step, sound)
+                : model.getCommands().addSound(step, sound);
+        return posted ? 1 : 0;
+    }
+
+    /*
+     * Finds a running thread by name.
+     */
+    private static Thread find(String name) {
+        for(Thread thread : Thread.getAllStackTraces().keySet()) {
+            if(thread.getName().equals(name)) {
+                return thread;
+            }
+        }
+        throw new IllegalStateException("no thread named " + name);
+    }
+
+    /*
+     * Prints one part's allocation and records a failure if it is over budget.
+     */
+    private static void check(String part, long bytes, long budget, String over) {
+        boolean ok = bytes <= budget;
+        System.out.printf("  %-18s %10d bytes, budget %8d over %s %s%n", part, bytes, budget, over,
+                ok ? "ok" : "OVER");
+        if(!ok) {
+            failures.add(part + " allocated " + bytes + " bytes, budget " + budget);
+        }
+    }
+
+    /*
+     * Plays steps offline as the transport and render threads would, adding up what each part allocates.
+     */
+    private static class Offline {
+        private final Model model;
+        private final PcmSample[] sounds;
+        private final Transport transport;
+        private final MixEngine engine;
+        private final float[] mix;
+        private final byte[] pcm;
+        private final long stepFrames;
+        private final int[][] single = singleSteps();
+        private int count;
+        private long drained;
+        private long dispatched;
+        private long mixed;
+        private int edits;
+        private int blocks;
+
+        Offline(BeatEngine beats, PcmSample[] sounds) {
+            this.model = beats.getModel();
+            this.sounds = sounds;
+            this.transport = beats.getTransport();
+            this.engine = model.getMixEngine();
+            this.mix = new float[engine.getBlockFrames() * MixEngine.CHANNELS];
+            this.pcm = new byte[mix.length * 2];
+            this.stepFrames = (long) (model.getTempo().stepNanos() * engine.getSampleRate() / 1e9);
+        }
+
+        void reset() {
+            drained = 0;
+            dispatched = 0;
+            mixed = 0;
+            edits = 0;
+            blocks = 0;
+        }
+
+        void play(int steps) {
+            for(int i = 0; i < steps; i++) {
+                step();
+            }
+        }
+
+        /*
+         * One step and the blocks up to the next. Kept out of play so that, once compiled, it is too big to be
+         * inlined into play's loop, and a deoptimization of that loop can't reallocate what it had eliminated.
+         */
+        private void step() {
+            if(count % EDIT_EVERY == 0) {
+                edits += edit(model, sounds, single, count);
+            }
+            long before = threads.getCurrentThreadAllocatedBytes();
+            model.applyCommands();
+            long after = threads.getCurrentThreadAllocatedBytes();
+            drained += after - before;
+            transport.playStep(count, engine.nanosAt(count * stepFrames));
+            dispatched += threads.getCurrentThreadAllocatedBytes() - after;
+
+            while(engine.nextFrame() < (count + 1) * stepFrames) {
+                before = threads.getCurrentThreadAllocatedBytes();
+                engine.render(mix);
+                MixEngine.toPcm16(mix, pcm, mix.length);
+                mixed += threads.getCurrentThreadAllocatedBytes() - before;
+                blocks++;
+            }
+            count++;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+import javax.sound.sampled.AudioFormat;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Plays a MixEngine through a RenderThread into a real-time NullSink while stalling the render thread now and then,
+ * the way a GC pause or a busy machine would, and reports underruns and the output latency achieved with fixed
+ * buffers from the smallest to the largest allowed and with an adaptive buffer. The adaptive run then plays on
+ * without stalls, to show the buffer shrinking back.
+ * Usage: BufferStallTest [seconds per run] [longest stall in ms]
+ */
+public class BufferStallTest {
+
+    public static void main(String[] args) throws Exception {
+        double seconds = args.length > 0 ? Double.parseDouble(args[0]) : 20;
+        int stallMillis = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+        System.out.printf("stalls of up to %d ms about once a second, %.0f s per run%n", stallMillis, seconds);
+        System.out.println("buffer      underruns  final buffer  latency mean  latency p99  (ms)");
+        for(int blocks : new int[]{RenderThread.MIN_BLOCKS, RenderThread.DEFAULT_BLOCKS,
+                RenderThread.maxBlocks(new MixEngine())}) {
+            run("fixed " + blocks, blocks, false, seconds, stallMillis, 0);
+        }
+        run("adaptive", RenderThread.MIN_BLOCKS, true, seconds, stallMillis,
+                2.5 * RenderThread.SHRINK_AFTER_NANOS / 1e9);
+    }
+
+    /*
+     * Plays for a while with stalls, then optionally for a while without, and prints how it went.
+     */
+    private static void run(String name, int blocks, boolean adaptive, double seconds, int stallMillis,
+                            double quietSeconds) throws Exception {
+        MixEngine engine = new MixEngine();
+        EngineMetrics metrics = new EngineMetrics(engine, new CommandQueue());
+        StallingSink sink = new StallingSink(new NullSink(), stallMillis);
+        RenderThread render = new RenderThread(engine, sink, blocks, adaptive);
+        render.start();
+        Thread.sleep((long) (seconds * 1000));
+        print(name, render, metrics);
+        if(quietSeconds > 0) {
+            sink.stallMillis = 0;
+            metrics.reset();
+            Thread.sleep((long) (quietSeconds * 1000));
+            print(name + ", quiet", render, metrics);
+        }
+        render.stop();
+        metrics.close();
+    }
+
+    /*
+     * One line of results.
+     */
+    private static void print(String name, RenderThread render, EngineMetrics metrics) {
+        Histogram latency = metrics.getOutputLatency();
+        System.out.printf("%-16s %5d %9d blocks %12.1f %12.1f%n", name, render.getUnderruns(),
+                render.getBufferBlocks(), latency.getMean() / 1e6, latency.getPercentile(0.99) / 1e6);
+    }
+
+    /*
+     * A sink that sleeps in write at random, about once a second, before passing the audio on.
+     */
+    private static class StallingSink implements AudioSink {
+        private final AudioSink sink;
+        private final Random random = new Random(1);
+        private volatile int stallMillis;
+        private long nextStall;
+
+        StallingSink(AudioSink sink, int stallMillis) {
+            this.sink = sink;
+            this.stallMillis = stallMillis;
+        }
+
+        @Override
+        public void open(AudioFormat format) throws IOException {
+            sink.open(format);
+        }
+
+        @Override
+        public void open(AudioFormat format, int bufferFrames) throws IOException {
+            sink.open(format, bufferFrames);
+            nextStall = System.nanoTime() + 1_000_000_000L;
+        }
+
+        @Override
+        public void write(byte[] data, int len) throws IOException {
+            long now = System.nanoTime();
+            if(stallMillis > 0 && now >= nextStall) {
+                try {
+                    Thread.sleep(stallMillis / 2 + random.nextInt(stallMillis / 2 + 1));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                nextStall = now + 500_000_000L + random.nextInt(1_000_000_000);
+            }
+            sink.write(data, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            sink.close();
+        }
+
+        @Override
+        public long getUnderruns() {
+            return sink.getUnderruns();
+        }
+
+        @Override
+        public int getQueuedFrames() {
+            return sink.getQueuedFrames();
+        }
+    }
+}
@@ -0,0 +1,176 @@
+import beatpad.bench.Fixture;
+
+import java.nio.file.Path;
+
+/**
+ * What beatpad.bench.EffectsBenchmark times: the per-track effects, offline at 44.1 kHz in blocks of 256 frames.
+ * Setting up a fixture first checks that tracks left at their defaults sound the same as no effects at all.
+ */
+public class EffectsFixtures {
+
+    //Instance variables
+    private static final String[] SOUNDS = {"loops/0.wav", "loops/1.wav", "loops/2.wav", "loops/3.wav",
+            "loops/4.wav", "loops/5.wav", "loops/6.wav", "loops/7.wav", "loops/8.wav", "samples/0.wav",
+            "samples/1.wav", "samples/2.wav", "samples/3.wav", "samples/4.wav", "samples/5.wav"};
+    private static final double DEFAULT_STRIP_TOLERANCE = 1e-5;
+
+    /**
+     * One block of a MixEngine, with every track's sound hit once a block and the first tracks running a full
+     * chain (filter, pan, delay and reverb sends).
+     */
+    public static class Render implements Fixture {
+        private final PcmSample[] sounds;
+        private final int tracks;
+        private final MixEngine engine;
+        private final float[] out;
+        private int block;
+
+        /**
+         * Loads the sounds, checks the default strips and warms the engine's voices up.
+         * @param tracks The number of tracks running a full chain.
+         * @param voices The engine's polyphony.
+         */
+        public Render(int tracks, int voices) {
+            sounds = load();
+            checkDefaultStrips(sounds);
+            this.tracks = tracks;
+            engine = engine(fullChains(sounds, tracks), voices);
+            out = new float[engine.getBlockFrames() * MixEngine.CHANNELS];
+            play(engine, sounds, tracks, out, 500);
+        }
+
+        @Override
+        public long run() {
+            hit(engine, sounds, tracks, block++);
+            engine.render(out);
+            return Float.floatToRawIntBits(out[0]);
+        }
+    }
+
+    /**
+     * One block of the EffectsRack on its own, with every track's bus fed a block of a loop.
+     */
+    public static class Rack implements Fixture {
+        private final EffectsRack rack;
+        private final int tracks;
+        private final float[][] input;
+        private final float[] out;
+        private int block;
+
+        /**
+         * Renders the input each track is fed.
+         * @param tracks The number of tracks running a full chain.
+         */
+        public Rack(int tracks) {
+            PcmSample[] sounds = load();
+            checkDefaultStrips(sounds);
+            MixSettings settings = fullChains(sounds, tracks);
+            MixEngine engine = engine(null, 64);
+            this.tracks = tracks;
+            rack = new EffectsRack(settings, engine.getSampleRate(), engine.getBlockFrames());
+            out = new float[engine.getBlockFrames() * MixEngine.CHANNELS];
+            input = new float[16][];
+            for(int b = 0; b < input.length; b++) {
+                hit(engine, sounds, 1, b);
+                engine.render(out);
+                input[b] = out.clone();
+            }
+        }
+
+        @Override
+        public long run() {
+            float[] source = input[block++ % input.length];
+            for(int track = 0; track < tracks; track++) {
+                System.arraycopy(source, 0, rack.bus(track), 0, source.length);
+            }
+            System.arraycopy(source, 0, out, 0, source.length);
+            rack.process(out);
+            return Float.floatToRawIntBits(out[0]);
+        }
+    }
+
+    /*
+     * Loads every sound the fixtures hit.
+     */
+    private static PcmSample[] load() {
+        SampleBank bank = new SampleBank(MixEngine.SAMPLE_RATE);
+        PcmSample[] sounds = new PcmSample[SOUNDS.length];
+        for(int i = 0; i < sounds.length; i++) {
+            sounds[i] = bank.acquire(Path.of(SOUNDS[i]).toUri().toString());
+        }
+        return sounds;
+    }
+
+    /*
+     * Throws if routing every sound through a strip left at its defaults changes what is heard.
+     */
+    private static void checkDefaultStrips(PcmSample[] sounds) {
+        MixSettings settings = new MixSettings();
+        for(int i = 0; i < sounds.length; i++) {
+            settings.route(sounds[i], i);
+        }
+        float[] dry = play(engine(null, 64), sounds, sounds.length, 200);
+        float[] wet = play(engine(settings, 64), sounds, sounds.length, 200);
+        double difference = 0;
+        for(int i = 0; i < dry.length; i++) {
+            difference = Math.max(difference, Math.abs(dry[i] - wet[i]));
+        }
+        if(difference > DEFAULT_STRIP_TOLERANCE) {
+            throw new IllegalStateException("default strips differ from no effects by " + difference);
+        }
+    }
+
+    /*
+     * Settings with the first tracks' sounds routed through a full chain.
+     */
+    private static MixSettings fullChains(PcmSample[] sounds, int tracks) {
+        MixSettings settings = new MixSettings();
+        for(int i = 0; i < tracks; i++) {
+            settings.route(sounds[i], i);
+            ChannelStrip strip = settings.getStrip(i);
+            strip.setFilter(2000 + 500 * i, 0.4);
+            strip.setGain(0.8);
+            strip.setPan(i % 2 == 0 ? -0.5 : 0.5);
+            strip.setSends(0.3, 0.3);
+        }
+        return settings;
+    }
+
+    /*
+     * A MixEngine with the given settings and polyphony.
+     */
+    private static MixEngine engine(MixSettings settings, int voices) {
+        MixEngine engine = new MixEngine();
+        engine.setMixSettings(settings);
+        engine.getVoices().setPolyphony(voices, voices);
+        return engine;
+    }
+
+    /*
+     * Renders blocks into a new array, hitting every track's sound once a block. Returns the last block.
+     */
+    private static float[] play(MixEngine engine, PcmSample[] sounds, int tracks, int blocks) {
+        float[] out = new float[engine.getBlockFrames() * MixEngine.CHANNELS];
+        play(engine, sounds, tracks, out, blocks);
+        return out;
+    }
+
+    /*
+     * Renders blocks, hitting every track's sound once a block.
+     */
+    private static void play(MixEngine engine, PcmSample[] sounds, int tracks, float[] out, int blocks) {
+        for(int b = 0; b < blocks; b++) {
+            hit(engine, sounds, tracks, b);
+            engine.render(out);
+        }
+    }
+
+    /*
+     * Triggers each track's sound at a different frame of the next block.
+     */
+    private static void hit(MixEngine engine, PcmSample[] sounds, int tracks, int block) {
+        for(int i = 0; i < Math.max(1, tracks); i++) {
+            engine.trigger(sounds[i], 0.5f, engine.nextFrame() + (i * 17 + block) % engine.getBlockFrames(), false);
+        }
+    }
+}
@@ -0,0 +1,227 @@
+import beatpad.bench.Fixture;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * What beatpad.bench.EngineBenchmarks times: the Model, the beat matrix and the audio hot paths. The WAV fixtures
+ * load loops/, samples/ and tones/, so run from the project directory. Anything that would need JavaFX audio goes
+ * through a StubEngine instead of a live MixEngine.
+ */
+public class EngineFixtures {
+
+    /**
+     * A MixEngine that only counts triggers, standing in for live audio output.
+     */
+    static class StubEngine extends MixEngine {
+        private long triggers;
+
+        @Override
+        public void trigger(PcmSample sample, float gain, long frame, boolean cut) {
+            triggers++;
+        }
+
+        long getTriggers() {
+            return triggers;
+        }
+    }
+
+    /**
+     * addSoundToMatrix/removeSoundFromMatrix while other threads edit the matrix and the playback thread reads it.
+     */
+    public static class AddRemoveSound implements Fixture {
+        private final Model model = new Model(null);
+        private final PcmSample[] sounds = synthetics(64, 64);
+        private final AtomicBoolean running = new AtomicBoolean(true);
+        private final List<Thread> threads = new ArrayList<>();
+        private int step;
+
+        /**
+         * Starts the competing threads.
+         * @param writers The number of other threads editing the matrix.
+         */
+        public AddRemoveSound(int writers) {
+            for(int w = 0; w < writers; w++) {
+                threads.add(new Thread(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    while(running.get()) {
+                        int beat = random.nextInt(Model.BEATS_IN_MEASURE);
+                        PcmSample sound = sounds[random.nextInt(sounds.length)];
+                        model.addSoundToMatrix(beat, sound);
+                        model.removeSoundFromMatrix(beat, sound);
+                    }
+                }));
+            }
+            StubEngine reader = new StubEngine();
+            threads.add(new Thread(() -> {
+                int beat = 0;
+                while(running.get()) {
+                    model.triggerBeat(beat, reader, 0);
+                    beat = (beat + 1) % Model.BEATS_IN_MEASURE;
+                }
+            }));
+            threads.forEach(Thread::start);
+        }
+
+        @Override
+        public long run() {
+            PcmSample sound = sounds[step % sounds.length];
+            int beat = step++ % Model.BEATS_IN_MEASURE;
+            model.addSoundToMatrix(beat, sound);
+            return model.removeSoundFromMatrix(beat, sound) ? 1 : 0;
+        }
+
+        @Override
+        public void close() {
+            running.set(false);
+            try {
+                for(Thread t : threads) {
+                    t.join();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            model.close();
+        }
+    }
+
+    /**
+     * The cost of walking one step of the matrix and triggering every voice on it.
+     */
+    public static class PlayBeat implements Fixture {
+        private final Model model = new Model(null);
+        private final StubEngine engine = new StubEngine();
+
+        /**
+         * Fills step 0.
+         * @param voices The number of sounds on it.
+         */
+        public PlayBeat(int voices) {
+            for(PcmSample sound : synthetics(voices, 64)) {
+                model.addSoundToMatrix(0, sound);
+            }
+        }
+
+        @Override
+        public long run() {
+            model.triggerBeat(0, engine, 0);
+            return engine.getTriggers();
+        }
+
+        @Override
+        public void close() {
+            model.close();
+        }
+    }
+
+    /**
+     * Loading (reading, hashing and decoding) every WAV in a sound directory into a fresh SampleBank.
+     */
+    public static class LoadDirectory implements Fixture {
+        private final String directory;
+
+        /**
+         * Instantiate a LoadDirectory.
+         * @param directory The directory, e.g. "loops".
+         */
+        public LoadDirectory(String directory) {
+            this.directory = directory;
+        }
+
+        @Override
+        public long run() {
+            SampleBank bank = new SampleBank(MixEngine.SAMPLE_RATE);
+            bank.loadDirectory(directory);
+            return bank.getResidentBytes();
+        }
+    }
+
+    /**
+     * Dispatching a full 16-step pattern of the loops to the stub.
+     */
+    public static class DispatchPattern implements Fixture {
+        private final Model model = loopPattern();
+        private final StubEngine stub = new StubEngine();
+
+        @Override
+        public long run() {
+            for(int beat = 0; beat < Model.BEATS_IN_MEASURE; beat++) {
+                model.triggerBeat(beat, stub, 0);
+            }
+            return stub.getTriggers();
+        }
+
+        @Override
+        public void close() {
+            model.close();
+        }
+    }
+
+    /**
+     * Dispatching the same pattern through a real mix of one bar of audio.
+     */
+    public static class MixBar implements Fixture {
+        private final Model model = loopPattern();
+        private final MixEngine engine = new MixEngine();
+        private final float[] block = new float[engine.getBlockFrames() * MixEngine.CHANNELS];
+        private final double stepFrames = model.getTempo().stepFrames(engine.getSampleRate());
+
+        @Override
+        public long run() {
+            long base = engine.nextFrame();
+            long barEnd = base + Math.round(Model.BEATS_IN_MEASURE * stepFrames);
+            int beat = 0;
+            while(engine.nextFrame() < barEnd) {
+                long blockEnd = engine.nextFrame() + engine.getBlockFrames();
+                while(beat < Model.BEATS_IN_MEASURE && base + Math.round(beat * stepFrames) < blockEnd) {
+                    model.triggerBeat(beat, engine, base + Math.round(beat * stepFrames));
+                    beat++;
+                }
+                engine.render(block);
+            }
+            return Float.floatToIntBits(block[0]);
+        }
+
+        @Override
+        public void close() {
+            model.close();
+        }
+    }
+
+    /*
+     * A model with the nine loops spread over the steps.
+     */
+    private static Model loopPattern() {
+        Model model = new Model(null);
+        SampleBank samples = model.getSampleBank();
+        for(int loop = 0; loop < 9; loop++) {
+            PcmSample sound = samples.acquire(Path.of("loops", loop + ".wav").toUri().toString());
+            for(int beat = loop % 4; beat < Model.BEATS_IN_MEASURE; beat += 2 + loop % 3) {
+                model.addSoundToMatrix(beat, sound);
+            }
+        }
+        return model;
+    }
+
+    /*
+     * Makes short noise samples that don't need any files.
+     */
+    static PcmSample[] synthetics(int count, int frames) {
+        PcmSample[] sounds = new PcmSample[count];
+        for(int i = 0; i < count; i++) {
+            ShortBuffer data = ByteBuffer.allocateDirect(frames * MixEngine.CHANNELS * 2)
+                    .order(ByteOrder.nativeOrder()).asShortBuffer();
+            for(int s = 0; s < data.capacity(); s++) {
+                data.put(s, (short) ThreadLocalRandom.current().nextInt(-8000, 8000));
+            }
+            sounds[i] = new PcmSample("synthetic-" + i, "synthetic-" + i, data);
+        }
+        return sounds;
+    }
+}
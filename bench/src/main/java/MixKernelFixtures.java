@@ -0,0 +1,266 @@
+import beatpad.bench.Fixture;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * What beatpad.bench.MixKernelBenchmark times: each MixKernels kernel on one block, done by the scalar or the vector
+ * kernels, and whole MixEngine blocks with a set number of sample voices playing. Setting up a kernel fixture first
+ * checks that both give bit-for-bit the same output for every kernel, including block lengths that don't fill the
+ * last vector.
+ */
+public class MixKernelFixtures {
+
+    //Instance variables
+    static final int VOICES = 64;
+
+    /**
+     * A block of random input for one kernel, and the kernels to run it with.
+     */
+    abstract static class Kernel implements Fixture {
+        final MixKernels kernels;
+        final int frames;
+        final int samples;
+        final short[] pcm;
+        final float[] in;
+        final float[] out;
+        final byte[] bytes;
+
+        /**
+         * Checks the kernels agree and makes the input.
+         * @param kernels "scalar" or "vector".
+         * @param frames The block length.
+         */
+        Kernel(String kernels, int frames) {
+            this.kernels = kernels(kernels);
+            this.frames = frames;
+            samples = frames * MixEngine.CHANNELS;
+            Random random = new Random(frames);
+            pcm = new short[samples];
+            in = new float[samples];
+            out = new float[samples];
+            bytes = new byte[samples * 2];
+            for(int i = 0; i < samples; i++) {
+                pcm[i] = (short) random.nextInt();
+                in[i] = (float) random.nextGaussian() * 0.5f;
+            }
+        }
+    }
+
+    /**
+     * Adding 16-bit samples to a block.
+     */
+    public static class Accumulate16 extends Kernel {
+        /**
+         * Instantiate an Accumulate16.
+         * @param kernels "scalar" or "vector".
+         * @param frames The block length.
+         */
+        public Accumulate16(String kernels, int frames) {
+            super(kernels, frames);
+        }
+
+        @Override
+        public long run() {
+            Arrays.fill(out, 0);
+            return kernels.accumulate(out, 0, pcm, 0, samples, 0.5f / 32768);
+        }
+    }
+
+    /**
+     * Adding float samples to a block.
+     */
+    public static class Accumulate extends Kernel {
+        /**
+         * Instantiate an Accumulate.
+         * @param kernels "scalar" or "vector".
+         * @param frames The block length.
+         */
+        public Accumulate(String kernels, int frames) {
+            super(kernels, frames);
+        }
+
+        @Override
+        public long run() {
+            Arrays.fill(out, 0);
+            kernels.accumulate(out, 0, in, 0, samples, 0.5f);
+            return Float.floatToRawIntBits(out[samples - 1]);
+        }
+    }
+
+    /**
+     * Adding mono samples to both sides of a stereo block.
+     */
+    public static class AccumulateMono extends Kernel {
+        /**
+         * Instantiate an AccumulateMono.
+         * @param kernels "scalar" or "vector".
+         * @param frames The block length.
+         */
+        public AccumulateMono(String kernels, int frames) {
+            super(kernels, frames);
+        }
+
+        @Override
+        public long run() {
+            Arrays.fill(out, 0);
+            return Float.floatToRawIntBits(kernels.accumulateMono(out, 0, in, 0, frames, 0.5f));
+        }
+    }
+
+    /**
+     * A gain and pan ramp over a stereo block.
+     */
+    public static class RampStereo extends Kernel {
+        /**
+         * Instantiate a RampStereo.
+         * @param kernels "scalar" or "vector".
+         * @param frames The block length.
+         */
+        public RampStereo(String kernels, int frames) {
+            super(kernels, frames);
+        }
+
+        @Override
+        public long run() {
+            System.arraycopy(in, 0, out, 0, samples);
+            kernels.rampStereo(out, frames, 1, -0.5f / frames, 0.5f, 0.5f / frames);
+            return Float.floatToRawIntBits(out[samples - 1]);
+        }
+    }
+
+    /**
+     * Converting a block to 16-bit PCM.
+     */
+    public static class ToPcm16 extends Kernel {
+        /**
+         * Instantiate a ToPcm16.
+         * @param kernels "scalar" or "vector".
+         * @param frames The block length.
+         */
+        public ToPcm16(String kernels, int frames) {
+            super(kernels, frames);
+        }
+
+        @Override
+        public long run() {
+            kernels.toPcm16(in, bytes, samples);
+            return bytes[samples];
+        }
+    }
+
+    /**
+     * One block of a MixEngine with VOICES samples playing, restarted as they end. The engine uses whichever kernels
+     * MixKernels.get picked for the JVM.
+     */
+    public static class Render implements Fixture {
+        private final BeatEngine beats = new BeatEngine(null);
+        private final PcmSample[] sounds = new PcmSample[6];
+        private final MixEngine engine;
+        private final float[] out;
+        private final byte[] pcm;
+        private int next;
+
+        /**
+         * Loads the sounds.
+         * @param frames The block length.
+         */
+        public Render(int frames) {
+            for(int i = 0; i < sounds.length; i++) {
+                sounds[i] = beats.loadSound("samples/" + i + ".wav");
+            }
+            engine = new MixEngine(MixEngine.SAMPLE_RATE, frames);
+            engine.getVoices().setPolyphony(VOICES, VOICES);
+            out = new float[frames * MixEngine.CHANNELS];
+            pcm = new byte[out.length * 2];
+        }
+
+        @Override
+        public long run() {
+            engine.render(out);
+            MixEngine.toPcm16(out, pcm, out.length);
+            int frames = engine.getBlockFrames();
+            for(int i = engine.getVoices().getPlaying(); i < VOICES; i++) {
+                engine.trigger(sounds[next++ % sounds.length], 0.1f, engine.nextFrame() + i % frames, false);
+            }
+            return pcm[0];
+        }
+
+        @Override
+        public void close() {
+            beats.close();
+        }
+    }
+
+    /*
+     * The kernels a fixture names, after checking that they give the same output as the scalar ones.
+     */
+    private static MixKernels kernels(String name) {
+        MixKernels scalar = MixKernels.scalar();
+        if(name.equals("scalar")) {
+            return scalar;
+        }
+        MixKernels vector = MixKernels.get();
+        if(vector == scalar) {
+            throw new IllegalStateException("vector kernels not loaded; run with --add-modules jdk.incubator.vector");
+        }
+        for(int frames : new int[]{64, 256, 1024}) {
+            for(int extra = 0; extra < 8; extra++) {
+                same(scalar, vector, frames + extra);
+            }
+        }
+        return vector;
+    }
+
+    /*
+     * Runs every kernel both ways on the same random input and throws if anything differs.
+     */
+    private static void same(MixKernels a, MixKernels b, int frames) {
+        Random random = new Random(frames);
+        int samples = frames * MixEngine.CHANNELS;
+        short[] pcm = new short[samples];
+        float[] in = new float[samples];
+        float[] out = new float[samples];
+        for(int i = 0; i < samples; i++) {
+            pcm[i] = (short) random.nextInt();
+            in[i] = (float) random.nextGaussian() * 0.7f;
+            out[i] = (float) random.nextGaussian() * 0.3f;
+        }
+        in[0] = 1.5f;
+        in[samples - 1] = -1.5f;
+        pcm[samples / 2] = Short.MIN_VALUE;
+
+        float[] x = out.clone();
+        float[] y = out.clone();
+        check(a.accumulate(x, 0, pcm, 0, samples, 0.7f / 32768) == b.accumulate(y, 0, pcm, 0, samples, 0.7f / 32768)
+                && Arrays.equals(x, y), "accumulate 16-bit", frames);
+        x = out.clone();
+        y = out.clone();
+        a.accumulate(x, 0, in, 0, samples, 0.3f);
+        b.accumulate(y, 0, in, 0, samples, 0.3f);
+        check(Arrays.equals(x, y), "accumulate float", frames);
+        x = out.clone();
+        y = out.clone();
+        check(a.accumulateMono(x, 0, in, 0, frames, 0.6f) == b.accumulateMono(y, 0, in, 0, frames, 0.6f)
+                && Arrays.equals(x, y), "accumulate mono", frames);
+        x = in.clone();
+        y = in.clone();
+        a.rampStereo(x, frames, 1, -0.4f / frames, 0.2f, 0.5f / frames);
+        b.rampStereo(y, frames, 1, -0.4f / frames, 0.2f, 0.5f / frames);
+        check(Arrays.equals(x, y), "ramp", frames);
+        byte[] p = new byte[samples * 2];
+        byte[] q = new byte[samples * 2];
+        a.toPcm16(in, p, samples);
+        b.toPcm16(in, q, samples);
+        check(Arrays.equals(p, q), "toPcm16", frames);
+    }
+
+    /*
+     * Throws if a check failed.
+     */
+    private static void check(boolean ok, String kernel, int frames) {
+        if(!ok) {
+            throw new IllegalStateException(kernel + " differs at " + frames + " frames");
+        }
+    }
+}
@@ -0,0 +1,89 @@
+import java.util.Random;
+
+/**
+ * Measures key-to-sound latency on a live, real-time engine: the time from a pad hit to when its first frame is
+ * due out of the output. Hits come at random times, as a player's would, and go either through
+ * Model.playSample, which starts the sound on the next block the render thread mixes, or through PadInput, with its
+ * default jitter of a block and with none, when it places every hit the engine's output latency bound after it.
+ * The spread between the 1st and 99th percentiles is the jitter the player hears. A run with quantise on checks that every hit is placed on a sixteenth of the
+ * transport's grid.
+ * Usage: PadLatencyBenchmark [hits] [sound]
+ */
+public class PadLatencyBenchmark {
+
+    //Instance variables
+    private static final int MIN_GAP_MILLIS = 20;
+    private static final int MAX_GAP_MILLIS = 90;
+
+    public static void main(String[] args) throws InterruptedException {
+        int hits = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+        try(BeatEngine engine = new BeatEngine(new NullSink())) {
+            PcmSample sound = engine.loadSound(args.length > 1 ? args[1] : "samples/0.wav");
+            Model model = engine.getModel();
+            PadInput pads = engine.getPads();
+            long jitter = pads.getMaxJitter();
+            Histogram latency = engine.getMetrics().getTriggerLatency();
+            Thread.sleep(500);
+
+            System.out.println("path                     mean(us)   p1(us)   p99(us)   spread(us)");
+            for(int round = 0; round < 2; round++) {
+                latency.reset();
+                play(hits, pressed -> model.playSample(sound));
+                report("Model.playSample", latency);
+                latency.reset();
+                play(hits, pressed -> pads.hit(sound, pressed));
+                report("PadInput.hit", latency);
+                pads.setMaxJitter(0);
+                latency.reset();
+                play(hits, pressed -> pads.hit(sound, pressed));
+                report("PadInput.hit, no jitter", latency);
+                pads.setMaxJitter(jitter);
+            }
+
+            engine.getTransport().start();
+            Thread.sleep(500);
+            pads.setQuantise(true);
+            long sixteenth = engine.getTransport().getTempo().stepNanos();
+            long origin = System.nanoTime();
+            long[] due = new long[hits];
+            int[] n = {0};
+            play(hits, pressed -> due[n[0]++] = pads.hit(sound, pressed));
+            long anchor = engine.getTransport().nextSixteenth(origin);
+            long worst = 0;
+            for(long d : due) {
+                long off = Math.floorMod(d - anchor, sixteenth);
+                worst = Math.max(worst, Math.min(off, sixteenth - off));
+            }
+            System.out.printf("quantised: %d hits, worst distance from a sixteenth %d ns%n", hits, worst);
+        }
+    }
+
+    /*
+     * Something that plays a hit.
+     */
+    private interface Hit {
+        void play(long pressedNanos);
+    }
+
+    /*
+     * Hits a pad some number of times at random gaps, stamping each hit as an input handler would.
+     */
+    private static void play(int hits, Hit hit) throws InterruptedException {
+        Random random = new Random(42);
+        for(int i = 0; i < hits; i++) {
+            Thread.sleep(MIN_GAP_MILLIS + random.nextInt(MAX_GAP_MILLIS - MIN_GAP_MILLIS), random.nextInt(1_000_000));
+            hit.play(System.nanoTime());
+        }
+        Thread.sleep(200);
+    }
+
+    /*
+     * Prints a latency histogram's centre and spread.
+     */
+    private static void report(String path, Histogram latency) {
+        long p1 = latency.getPercentile(0.01);
+        long p99 = latency.getPercentile(0.99);
+        System.out.printf("%-24s %8.0f %8d %9d %12d%n", path, latency.getMean() / 1000, p1 / 1000, p99 / 1000,
+                (p99 - p1) / 1000);
+    }
+}
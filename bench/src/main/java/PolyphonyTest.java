@@ -0,0 +1,72 @@
+import java.nio.file.Path;
+
+/**
+ * Checks the VoicePool's limits through Model, the way the pads and patterns play sounds: rapid hits of one sound
+ * ring over each other up to the per-sound limit and then steal their own oldest hit, more sounds than the global
+ * limit steal the oldest voice of all, and a sound set to cut itself off keeps only its latest hit. The model is
+ * offline, and a block is rendered after each hit so the triggers are applied in order. Run from the project
+ * directory.
+ * Prints each check and exits with status 1 if any failed.
+ */
+public class PolyphonyTest {
+
+    //Instance variables
+    private static final int MAX_VOICES = 6;
+    private static final int MAX_PER_SOUND = 3;
+    private static boolean failed;
+
+    public static void main(String[] args) {
+        SampleBank bank = new SampleBank(MixEngine.SAMPLE_RATE);
+        PcmSample[] sounds = new PcmSample[MAX_VOICES + 1];
+        for(int i = 0; i < sounds.length; i++) {
+            sounds[i] = bank.acquire(Path.of("loops", i + ".wav").toUri().toString());
+        }
+        Model model = new Model(null, bank);
+        VoicePool voices = model.getVoices();
+        voices.setPolyphony(MAX_VOICES, MAX_PER_SOUND);
+        float[] block = new float[model.getMixEngine().getBlockFrames() * MixEngine.CHANNELS];
+
+        for(int i = 0; i < 20; i++) {
+            hit(model, sounds[0], block);
+        }
+        check("20 hits of one sound ring up to the per-sound limit", voices.getPlaying(sounds[0]), MAX_PER_SOUND);
+        check("  and steal their own oldest hits", voices.getStolen(), 20 - MAX_PER_SOUND);
+
+        long stolen = voices.getStolen();
+        for(int i = 1; i < sounds.length; i++) {
+            hit(model, sounds[i], block);
+        }
+        check("one hit each of " + (sounds.length - 1) + " more sounds fills the global limit", voices.getPlaying(),
+                MAX_VOICES);
+        check("  by stealing the oldest voices", voices.getStolen() - stolen, MAX_PER_SOUND);
+        check("  which were all the first sound's", voices.getPlaying(sounds[0]), 0);
+        check("  and left the newest", voices.getPlaying(sounds[sounds.length - 1]), 1);
+
+        model.getMixSettings().setCut(sounds[1], true);
+        for(int i = 0; i < 5; i++) {
+            hit(model, sounds[1], block);
+        }
+        check("5 hits of a sound that cuts itself off leave one", voices.getPlaying(sounds[1]), 1);
+
+        model.close();
+        System.out.println(failed ? "FAIL" : "PASS");
+        System.exit(failed ? 1 : 0);
+    }
+
+    /*
+     * Plays a sound through the model and renders a block, so the trigger is applied.
+     */
+    private static void hit(Model model, PcmSample sound, float[] block) {
+        model.playSample(sound);
+        model.getMixEngine().render(block);
+    }
+
+    /*
+     * Prints one check and remembers if it failed.
+     */
+    private static void check(String name, long actual, long expected) {
+        boolean ok = actual == expected;
+        failed |= !ok;
+        System.out.printf("%-60s %3d %s%n", name, actual, ok ? "ok" : "FAIL, expected " + expected);
+    }
+}
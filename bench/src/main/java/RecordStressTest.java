@@ -0,0 +1,114 @@
+import java.util.Random;
+
+/**
+ * Stress test for recording pad hits into a playing pattern. A beat plays on a real-time engine while another
+ * thread hits six pads at random gaps, over 20 hits a second, with recording disarmed and armed in turn. For
+ * each run it reports how late steps were dispatched and how long blocks took to mix, so the two can be compared.
+ * For the last armed run it also checks every hit was recorded on the step that the transport's actual step deadlines
+ * put it on, and that it ended up in the matrix.
+ * Usage: RecordStressTest [seconds per run] [hits per second]
+ */
+public class RecordStressTest {
+
+    //Instance variables
+    private static final double BPM = 120;
+    private static final int MAX_STEPS = 1 << 12;
+
+    public static void main(String[] args) throws InterruptedException {
+        double seconds = args.length > 0 ? Double.parseDouble(args[0]) : 10;
+        double rate = args.length > 1 ? Double.parseDouble(args[1]) : 25;
+        int hits = (int) (seconds * rate);
+        try(BeatEngine engine = new BeatEngine(new NullSink())) {
+            Model model = engine.getModel();
+            MixEngine mixer = model.getMixEngine();
+            long delay = (long) (mixer.getBlockFrames() * 1e9 / mixer.getSampleRate());
+            PcmSample[] pads = new PcmSample[6];
+            for(int i = 0; i < pads.length; i++) {
+                pads[i] = engine.loadSound("samples/" + i + ".wav");
+            }
+            Transport transport = engine.getTransport();
+            transport.setTempo(new Tempo(BPM, 4));
+            long[] deadlines = new long[MAX_STEPS];
+            int[] steps = new int[MAX_STEPS];
+            int[] dispatched = {0};
+            transport.addListener((step, deadline) -> {
+                if(dispatched[0] < MAX_STEPS) {
+                    steps[dispatched[0]] = step;
+                    deadlines[dispatched[0]++] = deadline;
+                }
+            });
+            transport.start();
+
+            PatternRecorder recorder = engine.getPads().getRecorder();
+            EngineMetrics metrics = engine.getMetrics();
+            long[] heard = new long[hits];
+            int[] recorded = new int[hits];
+            PcmSample[] played = new PcmSample[hits];
+            System.out.printf("%d hits per run at %.0f/s, %.0f BPM%n", hits, rate, BPM);
+            System.out.println("recording  step lateness p99/max (us)  render p99/max (us)  dropped");
+            for(boolean armed : new boolean[]{false, true, false, true}) {
+                model.getCommands().clear();
+                for(int beat : new int[]{0, 4, 8, 12}) {
+                    model.getCommands().addSound(new int[]{beat}, engine.loadSound("loops/0.wav"));
+                }
+                Thread.sleep(500);
+                recorder.setArmed(armed);
+                metrics.reset();
+                Random random = new Random(7);
+                for(int i = 0; i < hits; i++) {
+                    Thread.sleep((long) (random.nextDouble() * 2000 / rate));
+                    // What PadInput.hit does, keeping the recorded step to check
+                    played[i] = pads[random.nextInt(pads.length)];
+                    heard[i] = System.nanoTime() + delay;
+                    model.playSample(played[i], heard[i]);
+                    recorded[i] = recorder.capture(played[i], heard[i]);
+                }
+                Thread.sleep(1000);
+                recorder.setArmed(false);
+                System.out.printf("%-10s %14d / %-12d %11d / %-8d %d%n", armed ? "armed" : "off",
+                        metrics.getStepLateness().getPercentile(0.99) / 1000, metrics.getStepLateness().getMax() / 1000,
+                        metrics.getRenderTime().getPercentile(0.99) / 1000, metrics.getRenderTime().getMax() / 1000,
+                        recorder.getDropped() + metrics.getDroppedTriggers() + metrics.getDroppedCommands());
+            }
+            transport.stop();
+            check(hits, heard, recorded, played, steps, deadlines, dispatched[0], model.getBeatMatrix().snapshot(),
+                    recorder);
+        }
+    }
+
+    /*
+     * Works out the step each hit should have been recorded on from the step deadlines the transport actually
+     * dispatched, and checks it was recorded there and is in the matrix.
+     */
+    private static void check(int hits, long[] heard, int[] recorded, PcmSample[] played, int[] steps,
+                              long[] deadlines, int dispatched, BeatMatrix.Snapshot matrix, PatternRecorder recorder) {
+        int wrong = 0;
+        int missing = 0;
+        int unrecorded = 0;
+        for(int i = 0; i < hits; i++) {
+            if(recorded[i] < 0) {
+                unrecorded++;
+                continue;
+            }
+            int d = 0;
+            while(d + 1 < dispatched && deadlines[d + 1] <= heard[i]) {
+                d++;
+            }
+            double stepNanos = d + 1 < dispatched ? deadlines[d + 1] - deadlines[d] : deadlines[d] - deadlines[d - 1];
+            double position = steps[d] + (heard[i] - deadlines[d]) / stepNanos;
+            int expected = (int) Math.floor(position + recorder.getStrength() / 2) % matrix.getSteps();
+            if(expected != recorded[i]) {
+                wrong++;
+            }
+            boolean found = false;
+            for(int voice : matrix.voicesAt(recorded[i])) {
+                found |= matrix.sound(voice) == played[i];
+            }
+            if(!found) {
+                missing++;
+            }
+        }
+        System.out.printf("last armed run: %d hits recorded in all runs, %d not recorded, %d on the wrong step, "
+                + "%d missing from the matrix%n", recorder.getRecorded(), unrecorded, wrong, missing);
+    }
+}
@@ -0,0 +1,83 @@
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Finds how many concurrent 120 BPM sessions one machine can stream before any of them falls behind real time.
+ * The number of sessions is doubled until a session is late, then the search restarts from the last good level in
+ * finer steps. Each level is held for a few seconds. Every session plays its own busy pattern of loops and tones
+ * from one shared SampleBank, and writes its audio to a discarding stream. Run from the project directory.
+ * Usage: SessionLoadTest [seconds per level] [workers]
+ */
+public class SessionLoadTest {
+
+    public static void main(String[] args) throws Exception {
+        long holdMillis = (long) (Double.parseDouble(args.length > 0 ? args[0] : "5") * 1000);
+        int workers = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        SampleBank bank = new SampleBank(MixEngine.SAMPLE_RATE);
+        PcmSample[] sounds = new PcmSample[17];
+        for(int i = 0; i < 9; i++) {
+            sounds[i] = bank.acquire(Path.of("loops", i + ".wav").toUri().toString());
+        }
+        for(int i = 0; i < 8; i++) {
+            sounds[9 + i] = bank.acquire(Path.of("tones", i + ".wav").toUri().toString());
+        }
+        System.out.printf("%d workers, shared bank %d samples / %d KB%n", workers, bank.getSampleCount(),
+                bank.getResidentBytes() / 1024);
+
+        int sustained = 0;
+        int level = 16;
+        int increment = 0;
+        try(SessionManager manager = new SessionManager(bank, workers)) {
+            List<Session> sessions = new ArrayList<>();
+            while(true) {
+                while(sessions.size() < level) {
+                    Session session = manager.open("user-" + sessions.size(), OutputStream.nullOutputStream());
+                    fillPattern(session.getModel(), sounds, sessions.size());
+                    sessions.add(session);
+                }
+                long lateBefore = manager.getLateTicks();
+                Thread.sleep(holdMillis);
+                long late = manager.getLateTicks() - lateBefore;
+                long worstLag = 0;
+                for(Session session : sessions) {
+                    worstLag = Math.max(worstLag, session.getMaxLagFrames());
+                }
+                System.out.printf("%6d sessions: %s (late ticks %d, worst lag %.1f ms)%n", level,
+                        late == 0 ? "real time" : "FELL BEHIND", late, worstLag * 1000.0 / MixEngine.SAMPLE_RATE);
+                if(late > 0) {
+                    if(increment == 0 && sustained > 0) {
+                        // Found the range; start again from fresh sessions and step up from the last good level in
+                        // eighths of it, so no session carries lag over from the failed level
+                        increment = Math.max(1, sustained / 8);
+                        for(Session session : sessions) {
+                            manager.close(session);
+                        }
+                        sessions.clear();
+                        level = sustained + increment;
+                        continue;
+                    }
+                    break;
+                }
+                sustained = level;
+                level = increment == 0 ? level * 2 : level + increment;
+            }
+        }
+        System.out.println("max sustained sessions at 120 BPM: " + sustained);
+    }
+
+    /*
+     * Gives a session a dense pattern that differs a little from its neighbours'.
+     */
+    private static void fillPattern(Model model, PcmSample[] sounds, int seed) {
+        model.updateTempo(Tempo.DEFAULT.withBpm(120));
+        for(int beat = 0; beat < Model.BEATS_IN_MEASURE; beat++) {
+            model.addSoundToMatrix(beat, sounds[(beat + seed) % 9]);
+            if(beat % 4 == 0) {
+                model.addSoundToMatrix(beat, sounds[0]);
+            }
+            model.addSoundToMatrix(beat, sounds[9 + (beat * 3 + seed) % 8]);
+        }
+    }
+}
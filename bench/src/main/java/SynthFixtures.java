@@ -0,0 +1,95 @@
+import beatpad.bench.Fixture;
+
+import java.util.Arrays;
+
+/**
+ * What beatpad.bench.SynthBenchmark times: the built-in synth at 48 kHz. Voices are rendered the way the VoicePool
+ * does it, into a mono scratch block that is then added to a stereo mix, with notes restarting throughout so the
+ * envelopes and table changes are included.
+ */
+public class SynthFixtures {
+
+    //Instance variables
+    static final float SAMPLE_RATE = 48000f;
+    static final int BLOCK_FRAMES = 256;
+
+    /**
+     * One voice, one block, with the note restarted every second so it keeps going through its envelope.
+     */
+    public static class RenderVoice implements Fixture {
+        private final SynthPatch patch = new SynthPatch();
+        private final SynthVoice voice = new SynthVoice(SAMPLE_RATE);
+        private final float[] scratch = new float[BLOCK_FRAMES];
+        private final float[] mix = new float[BLOCK_FRAMES * 2];
+        private long blocks;
+
+        /**
+         * Instantiate a RenderVoice.
+         * @param waveform The name of the Wavetable to play.
+         */
+        public RenderVoice(String waveform) {
+            patch.setWaveform(Wavetable.valueOf(waveform));
+        }
+
+        @Override
+        public long run() {
+            if(blocks++ % 188 == 0) {
+                voice.start(patch, 110 * Math.pow(2, (blocks / 188 % 36) / 12.0));
+            }
+            voice.render(scratch, 0, BLOCK_FRAMES);
+            addToMix(scratch, mix);
+            return Float.floatToRawIntBits(mix[0]);
+        }
+    }
+
+    /**
+     * A block of many saw voices spread over three octaves. A block is 5.3 ms of audio, so the time per block says
+     * how much of one core that many voices take.
+     */
+    public static class RenderVoices implements Fixture {
+        private final SynthPatch patch = new SynthPatch();
+        private final SynthVoice[] voices;
+        private final float[] scratch = new float[BLOCK_FRAMES];
+        private final float[] mix = new float[BLOCK_FRAMES * 2];
+        private int block;
+
+        /**
+         * Starts the voices at different times.
+         * @param count The number of voices.
+         */
+        public RenderVoices(int count) {
+            patch.setWaveform(Wavetable.SAW);
+            voices = new SynthVoice[count];
+            for(int i = 0; i < count; i++) {
+                voices[i] = new SynthVoice(SAMPLE_RATE);
+                voices[i].start(patch, 110 * Math.pow(2, (i % 36) / 12.0));
+                voices[i].skip(i * 97L);
+            }
+        }
+
+        @Override
+        public long run() {
+            Arrays.fill(mix, 0);
+            for(int i = 0; i < voices.length; i++) {
+                SynthVoice voice = voices[i];
+                if(voice.getFrame() >= voice.getLength()) {
+                    voice.start(patch, 110 * Math.pow(2, ((i + block) % 36) / 12.0));
+                }
+                voice.render(scratch, 0, BLOCK_FRAMES);
+                addToMix(scratch, mix);
+            }
+            block++;
+            return Float.floatToRawIntBits(mix[0]);
+        }
+    }
+
+    /*
+     * Adds a mono block to both sides of a stereo mix.
+     */
+    private static void addToMix(float[] mono, float[] stereo) {
+        for(int i = 0, o = 0; i < mono.length; i++) {
+            stereo[o++] += mono[i] * 0.1f;
+            stereo[o++] += mono[i] * 0.1f;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sweeps the tempo from 40 to 300 BPM (in 16th notes) and measures how far from its deadline each step is
+ * dispatched, for both the StepScheduler and the old sleep-after-each-step loop. The sweep is done on one running
+ * scheduler, changing the tempo live, so it also exercises tempo changes at step boundaries.
+ * Usage: TempoSweepBenchmark [steps per tempo] [simulated work per step in microseconds]
+ */
+public class TempoSweepBenchmark {
+
+    //Instance variables
+    private static final int MIN_BPM = 40;
+    private static final int MAX_BPM = 300;
+    private static final int BPM_STEP = 20;
+    private static final int LOOKAHEAD_MILLIS = 20;
+
+    public static void main(String[] args) throws InterruptedException {
+        int stepsPerTempo = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        long workNanos = TimeUnit.MICROSECONDS.toNanos(args.length > 1 ? Long.parseLong(args[1]) : 500);
+        int points = (MAX_BPM - MIN_BPM) / BPM_STEP + 1;
+
+        // Scheduler: one run, tempo changed live every stepsPerTempo steps
+        StepScheduler scheduler = new StepScheduler(new Tempo(MIN_BPM, 4), LOOKAHEAD_MILLIS,
+                StepScheduler.OverrunPolicy.CATCH_UP);
+        Histogram lateness = new Histogram("step lateness", "ns");
+        scheduler.setLateness(lateness);
+        long[] meanError = new long[points];
+        long[] maxError = new long[points];
+        long[] count = {0};
+        long lookahead = TimeUnit.MILLISECONDS.toNanos(LOOKAHEAD_MILLIS);
+        scheduler.run(16, (step, deadline) -> {
+            long error = Math.abs(System.nanoTime() - (deadline - lookahead));
+            int point = (int) (count[0] / stepsPerTempo);
+            meanError[point] += error;
+            maxError[point] = Math.max(maxError[point], error);
+            busyWork(workNanos);
+            count[0]++;
+            if(count[0] % stepsPerTempo == 0) {
+                if(point + 1 == points) {
+                    scheduler.stop();
+                } else {
+                    scheduler.setTempo(new Tempo(MIN_BPM + (point + 1) * BPM_STEP, 4));
+                }
+            }
+        });
+
+        System.out.println("   bpm   step(ms)   scheduler mean/max error (ms)   sleep loop drift after " + stepsPerTempo
+                + " steps (ms)");
+        for(int point = 0; point < points; point++) {
+            int bpm = MIN_BPM + point * BPM_STEP;
+            long stepNanos = new Tempo(bpm, 4).stepNanos();
+            double drift = sleepLoopDrift(stepNanos, stepsPerTempo, workNanos) / 1e6;
+            System.out.printf("%6d %10.2f %14.3f / %-14.3f %20.3f%n", bpm, stepNanos / 1e6,
+                    meanError[point] / (double) stepsPerTempo / 1e6, maxError[point] / 1e6, drift);
+        }
+        System.out.println("scheduler: " + lateness + ", spin window " + scheduler.getSpinNanos() / 1000 + " us");
+    }
+
+    /*
+     * Runs the old Controller.mainLoop timing (do the work, then sleep a whole step) and returns how far behind the
+     * ideal grid the last step started.
+     */
+    private static long sleepLoopDrift(long stepNanos, int steps, long workNanos) throws InterruptedException {
+        long start = System.nanoTime();
+        long last = start;
+        for(int i = 0; i < steps; i++) {
+            last = System.nanoTime();
+            busyWork(workNanos);
+            TimeUnit.NANOSECONDS.sleep(stepNanos);
+        }
+        return last - (start + (steps - 1) * stepNanos);
+    }
+
+    /*
+     * Stands in for the work done on each step (triggering sounds, posting UI updates).
+     */
+    private static void busyWork(long nanos) {
+        long until = System.nanoTime() + nanos;
+        while(System.nanoTime() < until) {
+            Thread.onSpinWait();
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package beatpad.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the per-track effects, done by EffectsFixtures. The rack's cost should grow in proportion to the
+ * number of tracks running a full chain, and a render's cost on a fixed number of tracks should not grow with the
+ * number of voices beyond the cost of the voices themselves. Run with -prof gc to check that processing allocates
+ * nothing.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class EffectsBenchmark {
+
+    /**
+     * Tracks running a full chain, for the rack on its own.
+     */
+    @State(Scope.Thread)
+    public static class Tracks extends FixtureState {
+        @Param({"0", "1", "2", "4", "8", "15"})
+        int tracks;
+
+        public Tracks() {
+            super("EffectsFixtures$Rack");
+        }
+
+        @Override
+        protected Object[] fixtureParams() {
+            return new Object[]{tracks};
+        }
+    }
+
+    /**
+     * A whole engine, with a number of tracks running a full chain and of voices playing.
+     */
+    @State(Scope.Thread)
+    public static class Engine extends FixtureState {
+        @Param({"0", "4", "15"})
+        int tracks;
+        @Param({"4", "16", "64", "256"})
+        int voices;
+
+        public Engine() {
+            super("EffectsFixtures$Render");
+        }
+
+        @Override
+        protected Object[] fixtureParams() {
+            return new Object[]{tracks, voices};
+        }
+    }
+
+    @Benchmark
+    public long rack(Tracks state) throws Exception {
+        return state.fixture.run();
+    }
+
+    @Benchmark
+    public long render(Engine state) throws Exception {
+        return state.fixture.run();
+    }
+}
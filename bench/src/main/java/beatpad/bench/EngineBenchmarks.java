@@ -0,0 +1,130 @@
+package beatpad.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the Model, the beat matrix and the audio hot paths, done by EngineFixtures. Run from the project
+ * directory, since loadDirectory and the pattern benchmarks load loops/, samples/ and tones/.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class EngineBenchmarks {
+
+    /**
+     * Matrix edits while other threads edit the matrix and the playback thread reads it.
+     */
+    @State(Scope.Thread)
+    public static class Contention extends FixtureState {
+        @Param({"0", "1", "3"})
+        int writers;
+
+        public Contention() {
+            super("EngineFixtures$AddRemoveSound");
+        }
+
+        @Override
+        protected Object[] fixtureParams() {
+            return new Object[]{writers};
+        }
+    }
+
+    /**
+     * A step with a number of sounds on it.
+     */
+    @State(Scope.Thread)
+    public static class Step extends FixtureState {
+        @Param({"1", "10", "50", "100", "500"})
+        int voices;
+
+        public Step() {
+            super("EngineFixtures$PlayBeat");
+        }
+
+        @Override
+        protected Object[] fixtureParams() {
+            return new Object[]{voices};
+        }
+    }
+
+    /**
+     * A sound directory to load.
+     */
+    @State(Scope.Thread)
+    public static class Directory extends FixtureState {
+        @Param({"loops", "samples", "tones"})
+        String directory;
+
+        public Directory() {
+            super("EngineFixtures$LoadDirectory");
+        }
+
+        @Override
+        protected Object[] fixtureParams() {
+            return new Object[]{directory};
+        }
+    }
+
+    /**
+     * The nine loops spread over a pattern, dispatched to a stub.
+     */
+    @State(Scope.Thread)
+    public static class Dispatch extends FixtureState {
+        public Dispatch() {
+            super("EngineFixtures$DispatchPattern");
+        }
+    }
+
+    /**
+     * The same pattern mixed through a real MixEngine.
+     */
+    @State(Scope.Thread)
+    public static class Mix extends FixtureState {
+        public Mix() {
+            super("EngineFixtures$MixBar");
+        }
+    }
+
+    @Benchmark
+    public long addRemoveSound(Contention state) throws Exception {
+        return state.fixture.run();
+    }
+
+    @Benchmark
+    public long playBeat(Step state) throws Exception {
+        return state.fixture.run();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 5)
+    @Measurement(iterations = 20)
+    public long loadDirectory(Directory state) throws Exception {
+        return state.fixture.run();
+    }
+
+    @Benchmark
+    public long dispatchPattern(Dispatch state) throws Exception {
+        return state.fixture.run();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public long mixBar(Mix state) throws Exception {
+        return state.fixture.run();
+    }
+}
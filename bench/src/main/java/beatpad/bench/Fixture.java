@@ -0,0 +1,24 @@
+package beatpad.bench;
+
+/**
+ * The work a benchmark times. JMH only accepts benchmarks in a named package, and the engine is in the unnamed
+ * package, which code in a named package can't refer to. So each benchmark's work is set up and done by a fixture
+ * class in the unnamed package, made by name by FixtureState, and the benchmark calls it through this interface. A
+ * benchmark uses one fixture class, so the call is monomorphic and the JIT inlines it.
+ */
+public interface Fixture extends AutoCloseable {
+
+    /**
+     * Does the timed work once.
+     * @return Anything derived from the work done, for JMH to consume so the JIT can't throw the work away.
+     */
+    long run() throws Exception;
+
+    /**
+     * Stops anything the fixture started, such as background threads, and releases what it holds. Does nothing by
+     * default.
+     */
+    @Override
+    default void close() {
+    }
+}
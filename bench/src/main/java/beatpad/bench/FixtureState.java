@@ -0,0 +1,64 @@
+package beatpad.bench;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.lang.reflect.Constructor;
+
+/**
+ * The state every benchmark keeps: the Fixture it times, made before each trial and closed after it, so no engine
+ * or thread outlives the trial that started it. A benchmark's state extends this, names its fixture class, and
+ * passes its @Param fields on to it.
+ */
+public abstract class FixtureState {
+
+    //Instance variables
+    private final String name;
+    protected Fixture fixture;
+
+    /**
+     * Instantiate a FixtureState.
+     * @param name The binary name of the fixture class to make, e.g. "EngineFixtures$PlayBeat".
+     */
+    protected FixtureState(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Get the fixture class to make. Overridden by states whose fixture class depends on a parameter.
+     * @return Its binary name.
+     */
+    protected String fixtureName() {
+        return name;
+    }
+
+    /**
+     * Get what to pass the fixture.
+     * @return The arguments for its public constructor that takes that many. None by default.
+     */
+    protected Object[] fixtureParams() {
+        return new Object[0];
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws ReflectiveOperationException {
+        Object[] params = fixtureParams();
+        for(Constructor<?> constructor : Class.forName(fixtureName()).getConstructors()) {
+            if(constructor.getParameterCount() == params.length) {
+                fixture = (Fixture) constructor.newInstance(params);
+                return;
+            }
+        }
+        throw new NoSuchMethodException(fixtureName() + " has no public constructor taking " + params.length
+                + " parameters");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if(fixture != null) {
+            fixture.close();
+            fixture = null;
+        }
+    }
+}
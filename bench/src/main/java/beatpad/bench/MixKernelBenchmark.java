@@ -0,0 +1,85 @@
+package beatpad.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the scalar and vector MixKernels on blocks of 64, 256 and 1024 frames, done by MixKernelFixtures, which
+ * first checks that both give identical output. render times a whole 64-voice MixEngine block with the kernels
+ * MixKernels.get picks; a block of 1024 frames is 23.2 ms of audio, so 64 times that over render's time per block is
+ * how many voices one core could mix in real time. Add -jvmArgsAppend -Dbeatpad.kernels=scalar to time render with
+ * the scalar kernels.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class MixKernelBenchmark {
+
+    /**
+     * One kernel's block, done by one set of kernels.
+     */
+    @State(Scope.Thread)
+    public static class Kernel extends FixtureState {
+        @Param({"scalar", "vector"})
+        String kernels;
+        @Param({"64", "256", "1024"})
+        int frames;
+        @Param({"Accumulate16", "Accumulate", "AccumulateMono", "RampStereo", "ToPcm16"})
+        String kernel;
+
+        public Kernel() {
+            super(null);
+        }
+
+        @Override
+        protected String fixtureName() {
+            return "MixKernelFixtures$" + kernel;
+        }
+
+        @Override
+        protected Object[] fixtureParams() {
+            return new Object[]{kernels, frames};
+        }
+    }
+
+    /**
+     * A MixEngine with 64 voices playing.
+     */
+    @State(Scope.Thread)
+    public static class Engine extends FixtureState {
+        @Param({"64", "256", "1024"})
+        int frames;
+
+        public Engine() {
+            super("MixKernelFixtures$Render");
+        }
+
+        @Override
+        protected Object[] fixtureParams() {
+            return new Object[]{frames};
+        }
+    }
+
+    @Benchmark
+    public long kernel(Kernel state) throws Exception {
+        return state.fixture.run();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public long render(Engine state) throws Exception {
+        return state.fixture.run();
+    }
+}
@@ -0,0 +1,75 @@
+package beatpad.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the built-in synth at 48 kHz in blocks of 256 frames, done by SynthFixtures: one voice with each
+ * waveform, and blocks of many voices. A block is 5333 ns of audio, so voices divided by renderVoices' time per
+ * block times 5333 is the share of one core that many voices need. Run with -prof gc to check that rendering
+ * allocates nothing.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SynthBenchmark {
+
+    /**
+     * One voice playing one waveform.
+     */
+    @State(Scope.Thread)
+    public static class Voice extends FixtureState {
+        @Param({"SINE", "TRIANGLE", "SAW", "SQUARE"})
+        String waveform;
+
+        public Voice() {
+            super("SynthFixtures$RenderVoice");
+        }
+
+        @Override
+        protected Object[] fixtureParams() {
+            return new Object[]{waveform};
+        }
+    }
+
+    /**
+     * Many saw voices.
+     */
+    @State(Scope.Thread)
+    public static class Voices extends FixtureState {
+        @Param({"16", "64", "256"})
+        int count;
+
+        public Voices() {
+            super("SynthFixtures$RenderVoices");
+        }
+
+        @Override
+        protected Object[] fixtureParams() {
+            return new Object[]{count};
+        }
+    }
+
+    @Benchmark
+    public long renderVoice(Voice state) throws Exception {
+        return state.fixture.run();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public long renderVoices(Voices state) throws Exception {
+        return state.fixture.run();
+    }
+}
@@ -0,0 +1,151 @@
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorShuffle;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.nio.ByteOrder;
+
+/**
+ * MixKernels written with the Vector API, working on the widest float vector the CPU has, e.g. 16 floats with
+ * AVX-512. 16-bit samples are loaded as a short vector with the same number of lanes and widened. Each kernel does
+ * the whole vectors and then finishes the last few samples with the scalar loop. Only operations that JDK 17
+ * compiles to SIMD instructions are used, which rules out shape-changing narrowing casts and float to int
+ * conversion. Kept in src-vector, apart from the rest of the engine, so that only this file needs compiling with
+ * --add-modules jdk.incubator.vector. Only loaded by MixKernels, and only when that module is present.
+ */
+class VectorKernels extends MixKernels {
+
+    //Instance variables
+    private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Short> SHORTS =
+            VectorSpecies.of(short.class, VectorShape.forBitSize(FLOATS.vectorBitSize() / 2));
+    private static final VectorSpecies<Short> WORDS = VectorSpecies.of(short.class, FLOATS.vectorShape());
+    private static final int LANES = FLOATS.length();
+    private static final float ROUND = 12582912f;
+    private static final float[] FRAME_OF_LANE = new float[LANES];
+    private static final VectorMask<Float> RIGHT;
+    private static final VectorShuffle<Float> FIRST_HALF_TWICE;
+    private static final VectorShuffle<Float> SECOND_HALF_TWICE;
+    private static final VectorShuffle<Short> LOW_WORDS;
+
+    static {
+        boolean[] right = new boolean[LANES];
+        int[] first = new int[LANES];
+        int[] second = new int[LANES];
+        int[] low = new int[LANES * 2];
+        for(int lane = 0; lane < LANES; lane++) {
+            FRAME_OF_LANE[lane] = lane / 2;
+            right[lane] = lane % 2 == 1;
+            first[lane] = lane / 2;
+            second[lane] = LANES / 2 + lane / 2;
+        }
+        for(int lane = 0; lane < LANES * 2; lane++) {
+            low[lane] = lane * 2 % (LANES * 2);
+        }
+        RIGHT = VectorMask.fromArray(FLOATS, right, 0);
+        FIRST_HALF_TWICE = VectorShuffle.fromArray(FLOATS, first, 0);
+        SECOND_HALF_TWICE = VectorShuffle.fromArray(FLOATS, second, 0);
+        LOW_WORDS = VectorShuffle.fromArray(WORDS, low, 0);
+    }
+
+    @Override
+    public String getName() {
+        return "vector " + FLOATS.vectorBitSize() + "-bit";
+    }
+
+    @Override
+    public int accumulate(float[] out, int o, short[] in, int i, int samples, float scale) {
+        int bound = samples - samples % LANES;
+        FloatVector peak = FloatVector.zero(FLOATS);
+        int n = 0;
+        for(; n < bound; n += LANES) {
+            FloatVector sample = (FloatVector) ShortVector.fromArray(SHORTS, in, i + n)
+                    .convertShape(VectorOperators.S2F, FLOATS, 0);
+            sample.mul(scale).add(FloatVector.fromArray(FLOATS, out, o + n)).intoArray(out, o + n);
+            peak = peak.max(sample.abs());
+        }
+        int rest = super.accumulate(out, o + n, in, i + n, samples - n, scale);
+        return Math.max(rest, (int) peak.reduceLanes(VectorOperators.MAX));
+    }
+
+    @Override
+    public void accumulate(float[] out, int o, float[] in, int i, int samples, float gain) {
+        int bound = samples - samples % LANES;
+        int n = 0;
+        for(; n < bound; n += LANES) {
+            FloatVector.fromArray(FLOATS, in, i + n).mul(gain).add(FloatVector.fromArray(FLOATS, out, o + n))
+                    .intoArray(out, o + n);
+        }
+        super.accumulate(out, o + n, in, i + n, samples - n, gain);
+    }
+
+    @Override
+    public float accumulateMono(float[] out, int o, float[] mono, int i, int frames, float gain) {
+        int bound = frames - frames % LANES;
+        FloatVector peak = FloatVector.zero(FLOATS);
+        int n = 0;
+        for(; n < bound; n += LANES) {
+            FloatVector sample = FloatVector.fromArray(FLOATS, mono, i + n);
+            FloatVector scaled = sample.mul(gain);
+            int at = o + 2 * n;
+            scaled.rearrange(FIRST_HALF_TWICE).add(FloatVector.fromArray(FLOATS, out, at)).intoArray(out, at);
+            scaled.rearrange(SECOND_HALF_TWICE).add(FloatVector.fromArray(FLOATS, out, at + LANES))
+                    .intoArray(out, at + LANES);
+            peak = peak.max(sample.abs());
+        }
+        float rest = super.accumulateMono(out, o + 2 * n, mono, i + n, frames - n, gain);
+        return Math.max(rest, peak.reduceLanes(VectorOperators.MAX));
+    }
+
+    @Override
+    public void rampStereo(float[] block, int frames, float fromLeft, float stepLeft, float fromRight,
+                           float stepRight) {
+        int half = LANES / 2;
+        int bound = frames - frames % half;
+        FloatVector from = FloatVector.broadcast(FLOATS, fromLeft).blend(fromRight, RIGHT);
+        FloatVector step = FloatVector.broadcast(FLOATS, stepLeft).blend(stepRight, RIGHT);
+        FloatVector frame = FloatVector.fromArray(FLOATS, FRAME_OF_LANE, 0);
+        int f = 0;
+        for(; f < bound; f += half) {
+            FloatVector gain = step.mul(frame.add(f)).add(from);
+            FloatVector.fromArray(FLOATS, block, 2 * f).mul(gain).intoArray(block, 2 * f);
+        }
+        for(; f < frames; f++) {
+            block[2 * f] *= fromLeft + stepLeft * f;
+            block[2 * f + 1] *= fromRight + stepRight * f;
+        }
+    }
+
+    /**
+     * Clips each vector of samples to 16 bits and rounds it toward zero like an int cast, with NaN going to 0. The
+     * Vector API's float to int conversion is not compiled to SIMD instructions in JDK 17, so instead the values are
+     * rounded by adding and subtracting 1.5 * 2^23, corrected to round toward zero, and offset by 1.5 * 2^23 again,
+     * which leaves each value as the low 16 bits of its float. Those low halves are moved to the bottom of the
+     * register and the whole register is stored; the top half is overwritten by the next vector, so the last
+     * vector's worth of samples is left to the scalar loop to stay inside out.
+     */
+    @Override
+    public void toPcm16(float[] in, byte[] out, int samples) {
+        int n = 0;
+        for(; n + 2 * LANES <= samples; n += LANES) {
+            FloatVector clipped = FloatVector.fromArray(FLOATS, in, n).mul(32767f).max(-32768f).min(32767f);
+            FloatVector rounded = clipped.add(ROUND).sub(ROUND);
+            VectorMask<Float> up = rounded.compare(VectorOperators.GT, clipped)
+                    .and(clipped.compare(VectorOperators.GT, 0f));
+            VectorMask<Float> down = rounded.compare(VectorOperators.LT, clipped)
+                    .and(clipped.compare(VectorOperators.LT, 0f));
+            rounded = rounded.sub(1f, up).add(1f, down).blend(0f, clipped.compare(VectorOperators.NE, clipped));
+            rounded.add(ROUND).reinterpretAsShorts().rearrange(LOW_WORDS)
+                    .intoByteArray(out, 2 * n, ByteOrder.LITTLE_ENDIAN);
+        }
+        for(; n < samples; n++) {
+            float s = in[n] * 32767f;
+            int v = s > 32767f ? 32767 : s < -32768f ? -32768 : (int) s;
+            out[2 * n] = (byte) v;
+            out[2 * n + 1] = (byte) (v >> 8);
+        }
+    }
+}
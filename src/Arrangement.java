@@ -0,0 +1,114 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A song: patterns chained into sections, each played some number of times with some of its tracks muted. Before
+ * it is played an arrangement is compiled into a Timeline, so the player never has to look at the patterns.
+ */
+public class Arrangement {
+
+    /*
+     * One section of the song.
+     */
+    private static class Section {
+        private final Pattern pattern;
+        private final PcmSample[] sounds;
+        private final int repeats;
+        private final boolean[] muted;
+
+        private Section(Pattern pattern, PcmSample[] sounds, int repeats, boolean[] muted) {
+            this.pattern = pattern;
+            this.sounds = sounds;
+            this.repeats = repeats;
+            this.muted = muted;
+        }
+    }
+
+    //Instance variables
+    private final List<Section> sections = new ArrayList<>();
+
+    /**
+     * Adds a section to the end of the song.
+     * @param pattern The pattern the section plays.
+     * @param sounds The sound for each of the pattern's tracks, as returned by Pattern.resolve. Tracks with a null
+     *               sound are silent.
+     * @param repeats How many times the pattern is played.
+     * @param mutedTracks The tracks of the pattern to leave out.
+     */
+    public void addSection(Pattern pattern, PcmSample[] sounds, int repeats, int... mutedTracks) {
+        if(repeats < 0) {
+            throw new IllegalArgumentException("repeats must not be negative: " + repeats);
+        }
+        if(pattern.getSteps() < 1) {
+            throw new IllegalArgumentException("pattern has no steps");
+        }
+        boolean[] muted = new boolean[pattern.getTracks()];
+        for(int track : mutedTracks) {
+            muted[track] = true;
+        }
+        sections.add(new Section(pattern, sounds, repeats, muted));
+    }
+
+    /**
+     * Get the number of sections.
+     * @return The section count.
+     */
+    public int getSections() {
+        return sections.size();
+    }
+
+    /**
+     * Compiles the song into a flat, step-sorted timeline of the events of one pass of each section. Takes time
+     * in proportion to the steps and tracks of the sections, not to how many times they repeat.
+     * @return The timeline.
+     */
+    public Timeline compile() {
+        Map<PcmSample, Integer> soundIndex = new IdentityHashMap<>();
+        List<PcmSample> table = new ArrayList<>();
+        int count = sections.size();
+        int[] passSteps = new int[count];
+        int[] repeats = new int[count];
+        int[][] eventSteps = new int[count][];
+        int[][] eventSounds = new int[count][];
+        Tempo[] tempos = new Tempo[count];
+        double[] volumes = new double[count];
+        int[] steps = new int[16];
+        int[] sounds = new int[16];
+        for(int s = 0; s < count; s++) {
+            Section section = sections.get(s);
+            Pattern pattern = section.pattern;
+            passSteps[s] = pattern.getSteps();
+            repeats[s] = section.repeats;
+            tempos[s] = pattern.getTempo();
+            volumes[s] = pattern.getVolume();
+            int events = 0;
+            for(int step = 0; step < pattern.getSteps(); step++) {
+                for(int track = 0; track < pattern.getTracks(); track++) {
+                    PcmSample sound = section.sounds[track];
+                    if(sound == null || section.muted[track] || !pattern.isSet(track, step)) {
+                        continue;
+                    }
+                    Integer index = soundIndex.get(sound);
+                    if(index == null) {
+                        index = table.size();
+                        soundIndex.put(sound, index);
+                        table.add(sound);
+                    }
+                    if(events == steps.length) {
+                        steps = Arrays.copyOf(steps, events * 2);
+                        sounds = Arrays.copyOf(sounds, events * 2);
+                    }
+                    steps[events] = step;
+                    sounds[events++] = index;
+                }
+            }
+            eventSteps[s] = Arrays.copyOf(steps, events);
+            eventSounds[s] = Arrays.copyOf(sounds, events);
+        }
+        return new Timeline(table.toArray(new PcmSample[0]), passSteps, repeats, eventSteps, eventSounds, tempos,
+                volumes);
+    }
+}
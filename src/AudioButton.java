@@ -1,6 +1,8 @@
+import javafx.animation.PauseTransition;
+import javafx.css.PseudoClass;
 import javafx.scene.control.ButtonBase;
 import javafx.scene.control.ToggleButton;
-import javafx.scene.media.AudioClip;
+import javafx.util.Duration;
 
 /**
  * A button that has a corresponding audio file.
@@ -9,20 +11,23 @@ import javafx.scene.media.AudioClip;
 public class AudioButton {
 
     //Instance variables
+    private static final PseudoClass HIT = PseudoClass.getPseudoClass("hit");
+    private static final Duration FLASH = Duration.millis(120);
     private ButtonBase btn;
-    private AudioClip sound;
+    private PcmSample sound;
     private int[] beatsToPlayOn;
     private boolean status;
+    private PauseTransition flash;
 
     /**
      * Instantiate an AudioButton.
      * @param input The javafx Button object that corresponds to a particular sound
-     * @param m The audio that the button corresponds to
+     * @param m The sound that the button corresponds to
      * @param s Whether the button is on or off (probably should be instantiated to false, unless you're sure about
      *          what you're doing)
      * @param beatsToPlayOn The beats that the sound should trigger on, from 1 to Controller.BEATS_IN_MEASURE inclusive.
      */
-    AudioButton(ButtonBase input, AudioClip m, boolean s, int[] beatsToPlayOn) {
+    AudioButton(ButtonBase input, PcmSample m, boolean s, int[] beatsToPlayOn) {
         btn = input;
         sound = m;
         status = s;
@@ -39,9 +44,9 @@ public class AudioButton {
 
     /**
      * Get the sound.
-     * @return The AudioClip that this object represents.
+     * @return The sound that this object represents.
      */
-    public AudioClip getSound() {
+    public PcmSample getSound() {
         return sound;
     }
 
@@ -49,7 +54,7 @@ public class AudioButton {
      * Change the sound of this button.
      * @param sound The sound to set this button to.
      */
-    public void setSound(AudioClip sound) {
+    public void setSound(PcmSample sound) {
         this.sound = sound;
     }
 
@@ -72,6 +77,19 @@ public class AudioButton {
         this.status = status;
     }
 
+    /**
+     * Lights the button up briefly to show it was hit, without turning it on or off. Must be called on the JavaFX
+     * thread.
+     */
+    public void flash() {
+        if(flash == null) {
+            flash = new PauseTransition(FLASH);
+            flash.setOnFinished(event -> btn.pseudoClassStateChanged(HIT, false));
+        }
+        btn.pseudoClassStateChanged(HIT, true);
+        flash.playFromStart();
+    }
+
     /**
      * Gets the beats this sound will be triggered on.
      * @return An array of the beats the sound should be played on, from 0 to Controller.BEATS_IN_MEASURE inclusive.
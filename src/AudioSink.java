@@ -0,0 +1,60 @@
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.LineUnavailableException;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Destination for the blocks of audio produced by the MixEngine. The engine writes one interleaved, 16-bit,
+ * little-endian block at a time, and a sink's write should block until it is ready for more audio, which is what
+ * keeps the engine running at real-time speed.
+ */
+public interface AudioSink {
+
+    /** Prepare the sink to receive audio in the given format */
+    void open(AudioFormat format) throws IOException;
+
+    /**
+     * Prepare the sink with room to queue bufferFrames frames ahead of what is playing. Sinks without a queue ignore
+     * bufferFrames.
+     */
+    default void open(AudioFormat format, int bufferFrames) throws IOException {
+        open(format);
+    }
+
+    /** Write len bytes of interleaved PCM audio, blocking until the sink can take more */
+    void write(byte[] data, int len) throws IOException;
+
+    /** Release the sink */
+    void close() throws IOException;
+
+    /** The number of times the sink ran out of audio and played silence, or 0 if it can't tell */
+    default long getUnderruns() {
+        return 0;
+    }
+
+    /** The number of frames written that have not been played yet, or -1 if the sink can't tell */
+    default int getQueuedFrames() {
+        return -1;
+    }
+
+    /**
+     * Picks the sink to use for live playback. The system property beatpad.output can be set to "null" to discard
+     * audio, or to the path of a .wav file to record it. Otherwise the default sound card is used, falling back to
+     * a NullSink when none is available (for example, when running headless).
+     * @return A sink that has not been opened yet.
+     */
+    static AudioSink createDefault() {
+        String output = System.getProperty("beatpad.output");
+        if("null".equals(output)) {
+            return new NullSink();
+        }
+        if(output != null && output.endsWith(".wav")) {
+            return new WavFileSink(new File(output), true);
+        }
+        try {
+            return LineSink.open();
+        } catch (LineUnavailableException | IllegalArgumentException e) {
+            return new NullSink();
+        }
+    }
+}
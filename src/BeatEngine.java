@@ -0,0 +1,151 @@
+import javax.management.JMException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The headless core of the beat pad: a SampleBank, a Model and a Transport wired together. Needs nothing from
+ * JavaFX and loads sounds only when asked for them, so it starts in milliseconds and can be embedded in servers
+ * and tests. The JavaFX panes are one optional front end on top of it.
+ *
+ * Timing and load are recorded into EngineMetrics, registered as a JMX MBean. Setting -Dbeatpad.metrics to a number
+ * of seconds also prints them at that period.
+ */
+public class BeatEngine implements AutoCloseable {
+
+    //Instance variables
+    private final SampleBank bank;
+    private final Model model;
+    private final Transport transport;
+    private final EngineMetrics metrics;
+    private final PadInput pads;
+
+    /**
+     * Instantiate a BeatEngine that plays through the default AudioSink.
+     */
+    public BeatEngine() {
+        this(AudioSink.createDefault());
+    }
+
+    /**
+     * Instantiate a BeatEngine.
+     * @param sink Where to send the audio, or null to only render offline.
+     */
+    public BeatEngine(AudioSink sink) {
+        this(sink, defaultBank());
+    }
+
+    /**
+     * Instantiate a BeatEngine that shares an existing SampleBank.
+     * @param sink Where to send the audio, or null to only render offline.
+     * @param bank The bank to load sounds into.
+     */
+    public BeatEngine(AudioSink sink, SampleBank bank) {
+        this.bank = bank;
+        this.model = new Model(sink, bank);
+        this.transport = new Transport(model, Model.BEATS_IN_MEASURE);
+        PatternRecorder recorder = new PatternRecorder(transport, model.getCommands(), Model.BEATS_IN_MEASURE);
+        transport.addListener(recorder);
+        this.pads = new PadInput(model, transport, model.getMixEngine(), recorder);
+        this.metrics = new EngineMetrics(model.getMixEngine(), model.getCommands());
+        transport.setMetrics(metrics);
+        try {
+            metrics.register();
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+        String period = System.getProperty("beatpad.metrics");
+        if(period != null) {
+            metrics.startDump((long) (Double.parseDouble(period) * 1000), TimeUnit.MILLISECONDS, System.out);
+        }
+    }
+
+    /**
+     * Loads a sound file into the engine's bank.
+     * @param path The path of the file, e.g. "loops/0.wav".
+     * @return The handle to play it with.
+     */
+    public PcmSample loadSound(String path) {
+        return bank.acquire(Path.of(path).toUri().toString());
+    }
+
+    /**
+     * Get the model.
+     * @return The model holding the pattern.
+     */
+    public Model getModel() {
+        return model;
+    }
+
+    /**
+     * Get the transport.
+     * @return The transport that starts, stops and tracks playback.
+     */
+    public Transport getTransport() {
+        return transport;
+    }
+
+    /**
+     * Get the pad input.
+     * @return The path that pad and key hits take to the engine.
+     */
+    public PadInput getPads() {
+        return pads;
+    }
+
+    /**
+     * Get the metrics.
+     * @return The engine's timing and load, as recorded so far.
+     */
+    public EngineMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Get the sample bank.
+     * @return The bank sounds are loaded into.
+     */
+    public SampleBank getSampleBank() {
+        return bank;
+    }
+
+    /**
+     * Stops playback and releases the audio output.
+     */
+    @Override
+    public void close() {
+        transport.stop();
+        transport.setMetrics(null);
+        metrics.close();
+        model.close();
+    }
+
+    /*
+     * A bank that uses the cache directory given by -Dbeatpad.cache, if any.
+     */
+    private static SampleBank defaultBank() {
+        String cache = System.getProperty("beatpad.cache");
+        return new SampleBank(MixEngine.SAMPLE_RATE, cache == null ? null : Path.of(cache));
+    }
+
+    /**
+     * Plays a pattern headlessly for a while, then prints how long the engine took to start and how well it kept
+     * time. Usage: BeatEngine seconds sound@beat,beat,... [sound@beat,...]
+     */
+    public static void main(String[] args) throws InterruptedException {
+        long begin = System.nanoTime();
+        try(BeatEngine engine = new BeatEngine()) {
+            System.out.printf("engine started in %.1f ms%n", (System.nanoTime() - begin) / 1e6);
+            for(int i = 1; i < args.length; i++) {
+                String[] parts = args[i].split("@");
+                PcmSample sound = engine.loadSound(parts[0]);
+                for(String beat : parts[1].split(",")) {
+                    engine.getModel().addSoundToMatrix(Integer.parseInt(beat), sound);
+                }
+            }
+            engine.getTransport().start();
+            Thread.sleep((long) (Double.parseDouble(args.length > 0 ? args[0] : "4") * 1000));
+            System.out.println("skipped steps: " + engine.getTransport().getSkippedSteps());
+            System.out.println(engine.getMetrics().dump());
+        }
+    }
+}
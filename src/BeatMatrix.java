@@ -0,0 +1,321 @@
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Which sounds play on which steps. Each sound gets a small integer voice id, and the matrix keeps a bit mask of
+ * steps per voice plus a flat int[] of voice ids per step.
+ *
+ * Writers (the UI) are serialised and publish every change as a new immutable Snapshot. The playback thread reads
+ * the current snapshot with a single volatile read and walks a plain int[], so it never locks or allocates. A
+ * change copies the step array it touches and the table of references to the steps, which is one reference per
+ * step, so adding or removing a sound costs O(steps + sounds on that step): about 200 bytes for a 16-step pattern.
+ * The voice id arrays grow by doubling, so giving a new sound an id is amortised constant time.
+ *
+ * A sound's id is given back as soon as it is on no step, so the matrix holds no reference to sounds that are no
+ * longer used, and can't keep a sample loaded after its pads have been given other sounds. Ids that are given back
+ * are handed out again before new ones, so the arrays only grow to the most sounds ever on the matrix at once.
+ * Snapshots already published keep the table of sounds they were made with, so playback never sees a recycled id
+ * stand for a different sound.
+ */
+public class BeatMatrix {
+
+    /**
+     * An immutable view of the matrix at one moment.
+     */
+    public static final class Snapshot {
+        private final PcmSample[] sounds;
+        private final int[][] steps;
+
+        private Snapshot(PcmSample[] sounds, int[][] steps) {
+            this.sounds = sounds;
+            this.steps = steps;
+        }
+
+        /**
+         * Get the voices on a step.
+         * @param step The step, from 0 to getSteps() - 1.
+         * @return The voice ids on that step. Must not be modified.
+         */
+        public int[] voicesAt(int step) {
+            return steps[step];
+        }
+
+        /**
+         * Get the sound a voice id stands for.
+         * @param voice The voice id.
+         * @return The sample that voice plays.
+         */
+        public PcmSample sound(int voice) {
+            return sounds[voice];
+        }
+
+        /**
+         * Get the pattern length.
+         * @return The number of steps.
+         */
+        public int getSteps() {
+            return steps.length;
+        }
+    }
+
+    //Instance variables
+    private static final int[] NO_VOICES = new int[0];
+    private final int steps;
+    private final Map<PcmSample, Integer> ids = new IdentityHashMap<>();
+    private PcmSample[] sounds = new PcmSample[0];
+    private long[][] masks = new long[0][];
+    private int voices;
+    private int[] free = new int[0];
+    private int freeCount;
+    private volatile Snapshot current;
+
+    /**
+     * Instantiate an empty BeatMatrix.
+     * @param steps The number of steps in the pattern.
+     */
+    public BeatMatrix(int steps) {
+        this.steps = steps;
+        int[][] empty = new int[steps][];
+        Arrays.fill(empty, NO_VOICES);
+        current = new Snapshot(sounds, empty);
+    }
+
+    /**
+     * Get the current contents of the matrix. Lock-free and allocation-free; safe to call from the playback thread.
+     * @return The latest published snapshot.
+     */
+    public Snapshot snapshot() {
+        return current;
+    }
+
+    /**
+     * Get the pattern length.
+     * @return The number of steps.
+     */
+    public int getSteps() {
+        return steps;
+    }
+
+    /**
+     * Puts a sound on a step.
+     * @param step The step.
+     * @param sound The sound to add.
+     * @return False if the sound was already on that step.
+     */
+    public synchronized boolean add(int step, PcmSample sound) {
+        int voice = idOf(sound);
+        if(isSet(voice, step)) {
+            return false;
+        }
+        masks[voice][step >> 6] |= 1L << step;
+        int[] old = current.steps[step];
+        int[] updated = Arrays.copyOf(old, old.length + 1);
+        updated[old.length] = voice;
+        publish(step, updated);
+        return true;
+    }
+
+    /**
+     * Takes a sound off a step.
+     * @param step The step.
+     * @param sound The sound to remove.
+     * @return True if the sound was on that step.
+     */
+    public synchronized boolean remove(int step, PcmSample sound) {
+        Integer voice = ids.get(sound);
+        if(voice == null || !isSet(voice, step)) {
+            return false;
+        }
+        masks[voice][step >> 6] &= ~(1L << step);
+        int[] old = current.steps[step];
+        int[] updated = old.length == 1 ? NO_VOICES : new int[old.length - 1];
+        for(int i = 0, j = 0; i < old.length; i++) {
+            if(old[i] != voice) {
+                updated[j++] = old[i];
+            }
+        }
+        if(isEmpty(voice)) {
+            sounds = sounds.clone();
+            recycle(voice);
+        }
+        publish(step, updated);
+        return true;
+    }
+
+    /**
+     * Takes every sound off every step, and gives back every voice id.
+     */
+    public synchronized void clear() {
+        for(int voice = 0; voice < voices; voice++) {
+            Arrays.fill(masks[voice], 0);
+        }
+        recycleEmpty();
+        int[][] empty = new int[steps][];
+        Arrays.fill(empty, NO_VOICES);
+        current = new Snapshot(sounds, empty);
+    }
+
+    /**
+     * Replaces the whole matrix with a saved pattern, publishing it as a single snapshot so playback never sees
+     * half of it. Steps beyond this matrix's length are ignored.
+     * @param pattern The pattern.
+     * @param sounds The sound for each of the pattern's tracks. Tracks with a null sound are left out.
+     */
+    public synchronized void load(Pattern pattern, PcmSample[] sounds) {
+        for(int voice = 0; voice < voices; voice++) {
+            Arrays.fill(masks[voice], 0);
+        }
+        int words = Math.min(Pattern.words(pattern.getSteps()), Pattern.words(steps));
+        for(int track = 0; track < pattern.getTracks(); track++) {
+            if(sounds[track] == null) {
+                continue;
+            }
+            int voice = idOf(sounds[track]);
+            long[] mask = masks[voice];
+            for(int word = 0; word < words; word++) {
+                mask[word] |= pattern.getWord(track, word);
+            }
+        }
+        if(steps % 64 != 0) {
+            for(int voice = 0; voice < voices; voice++) {
+                masks[voice][masks[voice].length - 1] &= (1L << steps) - 1;
+            }
+        }
+        recycleEmpty();
+        current = new Snapshot(this.sounds, rebuild());
+    }
+
+    /**
+     * Moves every step of some sounds over to other sounds, publishing the result as a single snapshot. The
+     * sounds being replaced are all taken off before the replacements are put on, so sounds can swap places.
+     * @param from The sounds to take off.
+     * @param to The sound to put on each step that from[i] was on.
+     */
+    public synchronized void replace(PcmSample[] from, PcmSample[] to) {
+        long[][] moved = new long[from.length][];
+        for(int i = 0; i < from.length; i++) {
+            Integer voice = ids.get(from[i]);
+            if(voice != null) {
+                moved[i] = masks[voice].clone();
+                Arrays.fill(masks[voice], 0);
+            }
+        }
+        for(int i = 0; i < from.length; i++) {
+            if(moved[i] == null) {
+                continue;
+            }
+            int voice = idOf(to[i]);
+            long[] mask = masks[voice];
+            for(int word = 0; word < mask.length; word++) {
+                mask[word] |= moved[i][word];
+            }
+        }
+        recycleEmpty();
+        current = new Snapshot(sounds, rebuild());
+    }
+
+    /**
+     * Is a voice on a step?
+     * @param voice The voice id.
+     * @param step The step.
+     * @return True if it is.
+     */
+    public synchronized boolean isSet(int voice, int step) {
+        return (masks[voice][step >> 6] & (1L << step)) != 0;
+    }
+
+    /*
+     * Gets the voice id for a sound, giving it a recycled or new one if it has none. Only for a sound that is about
+     * to be put on a step, since an id that stays on no step is given back by the next change.
+     */
+    private int idOf(PcmSample sound) {
+        Integer id = ids.get(sound);
+        if(id != null) {
+            return id;
+        }
+        int next;
+        if(freeCount > 0) {
+            next = free[--freeCount];
+        } else {
+            next = voices++;
+            if(next == sounds.length) {
+                sounds = Arrays.copyOf(sounds, Math.max(8, next * 2));
+                masks = Arrays.copyOf(masks, sounds.length);
+            }
+            masks[next] = new long[(steps + 63) / 64];
+        }
+        ids.put(sound, next);
+        sounds[next] = sound;
+        current = new Snapshot(sounds, current.steps);
+        return next;
+    }
+
+    /*
+     * Is a voice on no step?
+     */
+    private boolean isEmpty(int voice) {
+        for(long word : masks[voice]) {
+            if(word != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * Gives back the ids of every sound on no step, leaving the published snapshot's table of sounds untouched.
+     */
+    private void recycleEmpty() {
+        PcmSample[] published = sounds;
+        for(int voice = 0; voice < voices; voice++) {
+            if(published[voice] != null && isEmpty(voice)) {
+                if(sounds == published) {
+                    sounds = published.clone();
+                }
+                recycle(voice);
+            }
+        }
+    }
+
+    /*
+     * Gives back a voice id, dropping the reference to its sound from the table of sounds being built. The table
+     * must already be a copy of the published one.
+     */
+    private void recycle(int voice) {
+        ids.remove(sounds[voice]);
+        sounds[voice] = null;
+        if(freeCount == free.length) {
+            free = Arrays.copyOf(free, Math.max(8, freeCount * 2));
+        }
+        free[freeCount++] = voice;
+    }
+
+    /*
+     * Builds every step's voice ids from the masks.
+     */
+    private int[][] rebuild() {
+        int[][] updated = new int[steps][];
+        int[] on = new int[voices];
+        for(int step = 0; step < steps; step++) {
+            int count = 0;
+            for(int voice = 0; voice < voices; voice++) {
+                if(isSet(voice, step)) {
+                    on[count++] = voice;
+                }
+            }
+            updated[step] = count == 0 ? NO_VOICES : Arrays.copyOf(on, count);
+        }
+        return updated;
+    }
+
+    /*
+     * Swaps in a new snapshot with one step replaced. The other steps' arrays are shared with the old snapshot; only
+     * the table of references to them is copied.
+     */
+    private void publish(int step, int[] voices) {
+        int[][] updated = current.steps.clone();
+        updated[step] = voices;
+        current = new Snapshot(sounds, updated);
+    }
+}
@@ -2,13 +2,17 @@ import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.Node;
 import javafx.scene.control.Button;
+import javafx.scene.control.ContextMenu;
+import javafx.scene.control.MenuItem;
 import javafx.scene.control.Toggle;
 import javafx.scene.control.ToggleButton;
+import javafx.scene.input.MouseButton;
+import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.*;
-import javafx.scene.media.Media;
-import javafx.scene.media.AudioClip;
+import javafx.stage.DirectoryChooser;
+import javafx.stage.FileChooser;
 
-import java.nio.file.Paths;
+import java.io.File;
 
 /**
  * Class that holds all of the buttons for the beat pad in a single pane.
@@ -111,10 +115,11 @@ public class BeatPadPane {
 
         return root;
     }
-    private AudioClip[] addSampleMedia(){
-        AudioClip[] music = new AudioClip[SAMPLE_BUTTON_COLS*SAMPLE_BUTTON_ROWS];
+    private PcmSample[] addSampleMedia(){
+        PcmSample[] music = new PcmSample[SAMPLE_BUTTON_COLS*SAMPLE_BUTTON_ROWS];
         for(int i=0; i<music.length; i++){
-            music[i] = new AudioClip(Paths.get("samples/"+i+".wav").toUri().toString());
+            music[i] = controller.loadSound("samples/"+i+".wav");
+            controller.routeSound(music[i], MixSettings.FIRST_SAMPLE + i);
         }
         return music;
     }
@@ -125,7 +130,7 @@ public class BeatPadPane {
         GridPane grid = new GridPane();
         grid.setHgap(BUTTON_HGAP);
         grid.setVgap(BUTTON_VGAP);
-        AudioClip[] music = addSampleMedia();
+        PcmSample[] music = addSampleMedia();
         int sampleLoop[]= new int[0];
         this.sampleButtons = new AudioButton[SAMPLE_BUTTON_ROWS][SAMPLE_BUTTON_COLS];
         for (int i = 0; i < sampleButtons.length; i++){
@@ -139,18 +144,14 @@ public class BeatPadPane {
                 sampleButtons[i][j] = new AudioButton(curButton, music[i*SAMPLE_BUTTON_COLS+j], false, sampleLoop);
                 grid.add(curButton, j, i);
                 final AudioButton currentAudioButton = sampleButtons[i][j];
-                curButton.setOnAction(event -> {
-                    Button b = (Button)event.getSource();
-                    if(!currentAudioButton.isActive())
-                    {
-                        currentAudioButton.setStatus(true);
-                        controller.triggerSamplePlayback(currentAudioButton.getSound());
-                    }
-                    else {
-                        currentAudioButton.setStatus(false);
-                        controller.triggerSamplePlayback(currentAudioButton.getSound());
+                // Play on the press rather than the release, and keep the button from firing again on release
+                curButton.addEventFilter(MouseEvent.MOUSE_PRESSED, event -> {
+                    if(event.getButton() == MouseButton.PRIMARY) {
+                        controller.hitPad(currentAudioButton, System.nanoTime());
+                        event.consume();
                     }
                 });
+                curButton.setOnAction(event -> controller.hitPad(currentAudioButton, System.nanoTime()));
             }
         }
         return grid;
@@ -159,11 +160,12 @@ public class BeatPadPane {
     /*
      * Helper method that loads all of the loops.
      */
-    private AudioClip[] addLoopMedia(){
-        AudioClip[] music = new AudioClip[LOOP_BUTTON_COLS*LOOP_BUTTON_ROWS];
+    private PcmSample[] addLoopMedia(){
+        PcmSample[] music = new PcmSample[LOOP_BUTTON_COLS*LOOP_BUTTON_ROWS];
         int i;
         for(i=0; i < 9;i++) {
-            music[i] = new AudioClip(Paths.get("loops/" + i + ".wav").toUri().toString());
+            music[i] = controller.loadSound("loops/" + i + ".wav");
+            controller.routeSound(music[i], MixSettings.FIRST_LOOP + i);
         }
         return music;
     }
@@ -177,7 +179,7 @@ public class BeatPadPane {
         grid.setVgap(BUTTON_VGAP);
         this.loopButtons = new AudioButton[LOOP_BUTTON_ROWS][LOOP_BUTTON_COLS];
 
-        AudioClip[] music = addLoopMedia();
+        PcmSample[] music = addLoopMedia();
         for (int i = 0; i < loopButtons.length; i++) {
             for (int j = 0; j < loopButtons.length; j++) {
                 final ToggleButton curButton = new ToggleButton();
@@ -188,6 +190,13 @@ public class BeatPadPane {
                 loopButtons[i][j] = new AudioButton(curButton, music[LOOP_BUTTON_COLS * i + j], false, beatLoops[LOOP_BUTTON_COLS * i + j]);
                 grid.add(curButton, j, i);
                 final AudioButton currentAudioButton = loopButtons[i][j];
+                // While recording, a loop pad is played as a hit instead of switching the loop
+                curButton.addEventFilter(MouseEvent.MOUSE_PRESSED, event -> {
+                    if(event.getButton() == MouseButton.PRIMARY && controller.isRecordArmed()) {
+                        controller.recordPad(currentAudioButton, System.nanoTime());
+                        event.consume();
+                    }
+                });
                 curButton.setOnAction(event -> {
                     if(!currentAudioButton.isActive())
                     {
@@ -199,9 +208,36 @@ public class BeatPadPane {
                         controller.removeSoundFromModel(currentAudioButton.getBeatsToPlayOn(), currentAudioButton.getSound());
                     }
                 });
+                curButton.setContextMenu(importMenu(curButton, currentAudioButton));
             }
         }
         return grid;
     }
 
+    /*
+     * Helper method that builds the right-click menu for importing the user's own sounds onto a loop pad.
+     */
+    private ContextMenu importMenu(ToggleButton button, AudioButton pad) {
+        MenuItem importSound = new MenuItem("import sound...");
+        importSound.setOnAction(event -> {
+            FileChooser chooser = new FileChooser();
+            chooser.setTitle("Import sound");
+            chooser.getExtensionFilters().add(
+                    new FileChooser.ExtensionFilter("Sound files", "*.wav", "*.aif", "*.aiff"));
+            File file = chooser.showOpenDialog(button.getScene().getWindow());
+            if(file != null) {
+                controller.importSound(pad, file);
+            }
+        });
+        MenuItem importFolder = new MenuItem("import folder onto pads...");
+        importFolder.setOnAction(event -> {
+            DirectoryChooser chooser = new DirectoryChooser();
+            chooser.setTitle("Import folder");
+            File directory = chooser.showDialog(button.getScene().getWindow());
+            if(directory != null) {
+                controller.importFolder(directory);
+            }
+        });
+        return new ContextMenu(importSound, importFolder);
+    }
 }
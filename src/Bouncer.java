@@ -0,0 +1,205 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Renders ("bounces") the beats programmed in a Model to a .wav file, as fast as the CPU allows instead of in real
+ * time. Uses the same beat matrix and volume as live playback, and needs no JavaFX stage, so it can also be run
+ * from the command line. Changes reach the model through its CommandQueue as they do when playing live; a bounce
+ * of a model nothing else plays applies them itself.
+ */
+public class Bouncer {
+
+    //Instance variables
+    private final Model model;
+    private final boolean applyCommands;
+
+    /**
+     * Holds how long a bounce took.
+     */
+    public static class Result {
+        private final long frames;
+        private final float sampleRate;
+        private final long nanos;
+
+        Result(long frames, float sampleRate, long nanos) {
+            this.frames = frames;
+            this.sampleRate = sampleRate;
+            this.nanos = nanos;
+        }
+
+        /**
+         * Get the length of the rendered audio.
+         * @return The length in seconds.
+         */
+        public double getAudioSeconds() {
+            return frames / (double) sampleRate;
+        }
+
+        /**
+         * Get how long rendering took.
+         * @return The wall-clock time in seconds.
+         */
+        public double getWallSeconds() {
+            return nanos / 1e9;
+        }
+
+        /**
+         * Get the render throughput.
+         * @return Seconds of audio rendered per wall-clock second.
+         */
+        public double getThroughput() {
+            return getAudioSeconds() / getWallSeconds();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("rendered %.1fs of audio in %.3fs (%.1fx real time)", getAudioSeconds(),
+                    getWallSeconds(), getThroughput());
+        }
+    }
+
+    /**
+     * Instantiate a Bouncer for a model that something else, e.g. a Transport, applies the queued commands of.
+     * @param model The model whose beats should be rendered.
+     */
+    public Bouncer(Model model) {
+        this(model, false);
+    }
+
+    /**
+     * Instantiate a Bouncer.
+     * @param model The model whose beats should be rendered.
+     * @param applyCommands True if the bouncer is the model's playback thread and should apply its queued commands
+     *                      before and during the render, false if something else does that.
+     */
+    public Bouncer(Model model, boolean applyCommands) {
+        this.model = model;
+        this.applyCommands = applyCommands;
+    }
+
+    /**
+     * Renders the model's beats to a file.
+     * @param file The .wav file to write.
+     * @param bars The number of measures to render.
+     * @return The render timings.
+     * @throws IOException If the file can't be written.
+     */
+    public Result bounce(File file, int bars) throws IOException {
+        PatternRenderer renderer = renderer();
+        long steps = (long) bars * Model.BEATS_IN_MEASURE;
+        return render(file, renderer, Math.round(steps * model.getTempo().stepFrames(renderer.getSampleRate())));
+    }
+
+    /**
+     * Renders a song to a file, from its first step to its last, with each section at its pattern's tempo and
+     * volume.
+     * @param file The .wav file to write.
+     * @param song The compiled song.
+     * @return The render timings.
+     * @throws IOException If the file can't be written.
+     */
+    public Result bounce(File file, Timeline song) throws IOException {
+        PatternRenderer renderer = renderer();
+        renderer.setSong(song);
+        return render(file, renderer, song.getFrames(renderer.getSampleRate()));
+    }
+
+    /*
+     * A renderer for the model, starting with every change posted so far applied if the bouncer applies them.
+     */
+    private PatternRenderer renderer() {
+        if(applyCommands) {
+            model.applyCommands();
+        }
+        return new PatternRenderer(model, applyCommands);
+    }
+
+    /*
+     * Pulls blocks from a renderer into a file until a number of frames have been written.
+     */
+    private Result render(File file, PatternRenderer renderer, long totalFrames) throws IOException {
+        long begin = System.nanoTime();
+        int blockFrames = renderer.getBlockFrames();
+        float[] block = new float[blockFrames * MixEngine.CHANNELS];
+        byte[] pcm = new byte[block.length * 2];
+
+        WavFileSink sink = new WavFileSink(file, false);
+        sink.open(MixEngine.outputFormat(renderer.getSampleRate()));
+        for(long frame = 0; frame < totalFrames; frame += blockFrames) {
+            renderer.render(block);
+            int frames = (int) Math.min(blockFrames, totalFrames - frame);
+            MixEngine.toPcm16(block, pcm, frames * MixEngine.CHANNELS);
+            sink.write(pcm, frames * MixEngine.CHANNELS * 2);
+        }
+        sink.close();
+        return new Result(totalFrames, renderer.getSampleRate(), System.nanoTime() - begin);
+    }
+
+    /**
+     * Bounces a pattern, or a song of saved patterns, from the command line, without starting the UI.
+     * Usage: Bouncer out.wav bars sound@beat,beat,... [sound@beat,...]
+     *    or: Bouncer out.wav song library name[*repeats][!muted,tracks] ...
+     * e.g. Bouncer out.wav 8 loops/0.wav@0,8 loops/3.wav@4,12 tones/2.wav@0,6,10
+     *      Bouncer out.wav song patterns.lib intro*2!1 verse*8 intro*2
+     * The tempo can be set with -Dbeatpad.bpm=120.
+     */
+    public static void main(String[] args) throws IOException {
+        if(args.length < 2) {
+            System.err.println("usage: Bouncer out.wav bars sound@beat,beat,... [sound@beat,...]");
+            System.err.println("   or: Bouncer out.wav song library name[*repeats][!muted,tracks] ...");
+            System.exit(1);
+        }
+        Model model = new Model(null);
+        CommandQueue commands = model.getCommands();
+        String bpm = System.getProperty("beatpad.bpm");
+        if(bpm != null) {
+            post(commands.setTempo(Tempo.DEFAULT.withBpm(Double.parseDouble(bpm))));
+        }
+        if(args[1].equals("song")) {
+            bounceSong(model, args);
+            return;
+        }
+        for(int i = 2; i < args.length; i++) {
+            String[] parts = args[i].split("@");
+            PcmSample sample = model.getSampleBank().acquire(new File(parts[0]).toPath().toUri().toString());
+            post(commands.addSound(Arrays.stream(parts[1].split(",")).mapToInt(Integer::parseInt).toArray(), sample));
+        }
+        System.out.println(new Bouncer(model, true).bounce(new File(args[0]), Integer.parseInt(args[1])));
+    }
+
+    /*
+     * Fails if a change from the command line didn't fit in the command queue.
+     */
+    private static void post(boolean posted) {
+        if(!posted) {
+            throw new IllegalStateException("too many changes for the command queue");
+        }
+    }
+
+    /*
+     * Builds a song from sections of a pattern library and bounces it.
+     */
+    private static void bounceSong(Model model, String[] args) throws IOException {
+        Arrangement arrangement = new Arrangement();
+        try(PatternLibrary library = new PatternLibrary(new File(args[2]).toPath())) {
+            for(int i = 3; i < args.length; i++) {
+                String[] mute = args[i].split("!");
+                String[] repeat = mute[0].split("\\*");
+                Pattern pattern = library.load(repeat[0]);
+                if(pattern == null) {
+                    throw new IOException("no pattern named " + repeat[0]);
+                }
+                int repeats = repeat.length > 1 ? Integer.parseInt(repeat[1]) : 1;
+                int[] muted = mute.length > 1
+                        ? Arrays.stream(mute[1].split(",")).mapToInt(Integer::parseInt).toArray() : new int[0];
+                arrangement.addSection(pattern, pattern.resolve(model.getSampleBank()), repeats, muted);
+            }
+        }
+        long begin = System.nanoTime();
+        Timeline song = arrangement.compile();
+        System.out.println("compiled " + song.getSteps() + " steps, " + song.getStoredEvents() + " of "
+                + song.getTotalEvents() + " events stored, in " + (System.nanoTime() - begin) / 1000 + "us");
+        System.out.println(new Bouncer(model, true).bounce(new File(args[0]), song));
+    }
+}
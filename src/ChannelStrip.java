@@ -0,0 +1,113 @@
+/**
+ * The settings of one track's insert chain and sends: a resonant low-pass filter, then gain and pan, then how much of
+ * the result is sent to the shared delay and reverb buses. Every setting can be changed from any thread while the
+ * track plays; the EffectsRack reads them once a block and ramps gain changes across the block so they don't
+ * click. A strip left at its defaults passes the track through untouched.
+ */
+public class ChannelStrip {
+
+    //Instance variables
+    public static final double OPEN = 20000;
+    private volatile double gain = 1;
+    private volatile double pan;
+    private volatile double cutoff = OPEN;
+    private volatile double resonance;
+    private volatile double delaySend;
+    private volatile double reverbSend;
+
+    /**
+     * Get the gain.
+     * @return The track's level, 1 for unity.
+     */
+    public double getGain() {
+        return gain;
+    }
+
+    /**
+     * Sets the gain.
+     * @param gain The track's level, from 0 to 4.
+     */
+    public void setGain(double gain) {
+        if(gain < 0 || gain > 4) {
+            throw new IllegalArgumentException("Bad gain " + gain);
+        }
+        this.gain = gain;
+    }
+
+    /**
+     * Get the pan.
+     * @return From -1 for left to 1 for right.
+     */
+    public double getPan() {
+        return pan;
+    }
+
+    /**
+     * Sets the pan, as a balance: the far side is turned down and the near side is left at full level.
+     * @param pan From -1 for left to 1 for right.
+     */
+    public void setPan(double pan) {
+        if(pan < -1 || pan > 1) {
+            throw new IllegalArgumentException("Bad pan " + pan);
+        }
+        this.pan = pan;
+    }
+
+    /**
+     * Get the filter cutoff.
+     * @return The frequency in Hz, OPEN or above if the filter is off.
+     */
+    public double getCutoff() {
+        return cutoff;
+    }
+
+    /**
+     * Get the filter resonance.
+     * @return From 0 to 1.
+     */
+    public double getResonance() {
+        return resonance;
+    }
+
+    /**
+     * Sets the low-pass filter.
+     * @param cutoff The frequency in Hz, from 20; OPEN or above turns the filter off.
+     * @param resonance From 0 to 1.
+     */
+    public void setFilter(double cutoff, double resonance) {
+        if(cutoff < 20 || resonance < 0 || resonance > 1) {
+            throw new IllegalArgumentException("Bad filter " + cutoff + "/" + resonance);
+        }
+        this.cutoff = cutoff;
+        this.resonance = resonance;
+    }
+
+    /**
+     * Get the delay send.
+     * @return The level sent to the delay bus, from 0 to 1.
+     */
+    public double getDelaySend() {
+        return delaySend;
+    }
+
+    /**
+     * Get the reverb send.
+     * @return The level sent to the reverb bus, from 0 to 1.
+     */
+    public double getReverbSend() {
+        return reverbSend;
+    }
+
+    /**
+     * Sets the sends, which are taken after the gain and pan.
+     * @param delay The level sent to the delay bus, from 0 to 1.
+     * @param reverb The level sent to the reverb bus, from 0 to 1.
+     */
+    public void setSends(double delay, double reverb) {
+        if(delay < 0 || delay > 1 || reverb < 0 || reverb > 1) {
+            throw new IllegalArgumentException("Bad sends " + delay + "/" + reverb);
+        }
+        this.delaySend = delay;
+        this.reverbSend = reverb;
+    }
+}
@@ -0,0 +1,153 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Carries every change from the UI to the engine (toggles, clear, volume, presets, tempo, saved patterns and key
+ * changes) without the UI ever touching the data the playback thread is using. Changes are posted into a bounded
+ * lock-free ring of preallocated EngineCommands, and the playback thread drains and applies them all at once at the
+ * next step or block boundary, so edits never block or tear playback. If the ring is full the change is dropped and
+ * counted.
+ */
+public class CommandQueue {
+
+    //Instance variables
+    public static final int CAPACITY = 256;
+    private final MpscRing<EngineCommand> ring = new MpscRing<>(CAPACITY, EngineCommand::new);
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * Posts putting a sound on some beats.
+     * @param beats The beats. The array is read on the playback thread, so must not be changed afterwards.
+     * @param sound The sound.
+     * @return False if the queue was full and the change was dropped.
+     */
+    public boolean addSound(int[] beats, PcmSample sound) {
+        return post(EngineCommand.Type.ADD, beats, sound, 0, null);
+    }
+
+    /**
+     * Posts taking a sound off some beats.
+     * @param beats The beats. The array is read on the playback thread, so must not be changed afterwards.
+     * @param sound The sound.
+     * @return False if the queue was full and the change was dropped.
+     */
+    public boolean removeSound(int[] beats, PcmSample sound) {
+        return post(EngineCommand.Type.REMOVE, beats, sound, 0, null);
+    }
+
+    /**
+     * Posts clearing every beat.
+     * @return False if the queue was full and the change was dropped.
+     */
+    public boolean clear() {
+        return post(EngineCommand.Type.CLEAR, null, null, 0, null);
+    }
+
+    /**
+     * Posts a volume change.
+     * @param volume The new volume, from 0 to 100.
+     * @return False if the queue was full and the change was dropped.
+     */
+    public boolean setVolume(double volume) {
+        return post(EngineCommand.Type.VOLUME, null, null, volume, null);
+    }
+
+    /**
+     * Posts a tempo change.
+     * @param tempo The new tempo.
+     * @return False if the queue was full and the change was dropped.
+     */
+    public boolean setTempo(Tempo tempo) {
+        return post(EngineCommand.Type.TEMPO, null, null, 0, tempo);
+    }
+
+    /**
+     * Posts loading a saved pattern, which replaces the beats, volume and tempo at one step boundary.
+     * @param pattern The pattern.
+     * @param sounds The sound for each of the pattern's tracks, as returned by Pattern.resolve.
+     * @return False if the queue was full and the change was dropped.
+     */
+    public boolean loadPattern(Pattern pattern, PcmSample[] sounds) {
+        long seq = ring.claim();
+        if(seq < 0) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        EngineCommand command = ring.slot(seq);
+        command.set(EngineCommand.Type.LOAD, null, null, 0, null);
+        command.pattern = pattern;
+        command.sounds = sounds;
+        ring.publish(seq);
+        return true;
+    }
+
+    /**
+     * Posts swapping sounds for others on every beat they are on, all at one step boundary.
+     * @param from The sounds to take off.
+     * @param to The sound to put on wherever from[i] was. The arrays are read on the playback thread, so must not be
+     *           changed afterwards.
+     * @return False if the queue was full and the change was dropped.
+     */
+    public boolean replaceSounds(PcmSample[] from, PcmSample[] to) {
+        long seq = ring.claim();
+        if(seq < 0) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        EngineCommand command = ring.slot(seq);
+        command.set(EngineCommand.Type.REPLACE, null, null, 0, null);
+        command.sounds = from;
+        command.replacements = to;
+        ring.publish(seq);
+        return true;
+    }
+
+    /**
+     * Posts giving a reference to a sound back to the model's SampleBank. The playback thread releases it after
+     * applying the commands posted before it, so a sound taken off the beats isn't closed while a step could still
+     * play it.
+     * @param sound The sound, acquired from the model's bank.
+     * @return False if the queue was full and the change was dropped.
+     */
+    public boolean releaseSound(PcmSample sound) {
+        return post(EngineCommand.Type.RELEASE, null, sound, 0, null);
+    }
+
+    /**
+     * Applies every waiting command, oldest first. Only to be called by the playback thread.
+     * @param handler Applies one command.
+     * @return The number of commands applied.
+     */
+    public int drain(MpscRing.Handler<EngineCommand> handler) {
+        return ring.drain(handler);
+    }
+
+    /**
+     * Get the number of commands waiting.
+     * @return The queue depth.
+     */
+    public int getDepth() {
+        return ring.size();
+    }
+
+    /**
+     * Get the number of changes dropped because the queue was full.
+     * @return The count.
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /*
+     * Claims a slot, fills it in and publishes it.
+     */
+    private boolean post(EngineCommand.Type type, int[] beats, PcmSample sound, double value, Tempo tempo) {
+        long seq = ring.claim();
+        if(seq < 0) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        ring.slot(seq).set(type, beats, sound, value, tempo);
+        ring.publish(seq);
+        return true;
+    }
+}
@@ -1,52 +1,171 @@
-import javafx.scene.media.AudioClip;
+import javafx.animation.AnimationTimer;
 import javafx.application.Platform;
 
-import java.util.concurrent.TimeUnit;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /***
  * A controller in the model-view-controller design pattern. Takes in information from the view and updates both the
- * model and the view.
- * Also contains the main loop that controls the timing of the music.
+ * model and the view. The music itself is run by a headless BeatEngine; the controller starts and stops its
+ * transport, and the view follows it by reading the transport's position once per display frame. Changes to the
+ * music are posted to the model's CommandQueue rather than made directly, so the UI thread never touches what the
+ * playback thread is playing.
  */
 public class Controller {
 
     //Instance variables
     private ModelInterface model;
-    private static final int TIME_BETWEEN_BEATS = 250;
-    public static final int BEATS_IN_MEASURE = 16;
+    public static final int BEATS_IN_MEASURE = Model.BEATS_IN_MEASURE;
+    private BeatEngine engine;
     private MainPane view;
+    private CommandQueue commands;
+    private Tempo tempo;
+    private double volume = 80;
+    private PatternLibrary patterns;
+    private SampleImporter importer;
+    private AnimationTimer playhead;
+    private boolean shutDown;
 
     /**
-     * Instantiates a Controller with a reference to a model and a MainPane.
-     * @param model The ModelInterface representing the music to play.
+     * Instantiates a Controller with a reference to an engine and a MainPane.
+     * @param engine The BeatEngine that holds and plays the music.
      * @param mp The view that the user interacts with.
      */
-    public Controller(ModelInterface model, MainPane mp) {
-        this.model = model;
+    public Controller(BeatEngine engine, MainPane mp) {
+        this.engine = engine;
+        this.model = engine.getModel();
         this.view = mp;
+        this.commands = model.getCommands();
+        this.tempo = model.getTempo();
+        engine.getModel().getMixSettings().routeSynth(MixSettings.MELODY);
+    }
+
+    /**
+     * Loads a sound for a button to play.
+     * @param path The path of the sound file, e.g. "loops/0.wav".
+     * @return The handle of the loaded sound.
+     */
+    public PcmSample loadSound(String path) {
+        return engine.loadSound(path);
+    }
+
+    /**
+     * Imports a sound file onto a loop pad in the background. The pad changes sound once the import is done; if it
+     * is turned on, the new sound takes over its beats.
+     * @param pad The loop pad.
+     * @param file The WAV or AIFF file.
+     */
+    public void importSound(AudioButton pad, File file) {
+        getImporter().importFile(file.toPath()).whenComplete((sound, error) -> {
+            if(error != null) {
+                System.err.println("can't import " + file + ": " + error.getMessage());
+            } else {
+                Platform.runLater(() -> setPadSound(pad, sound));
+            }
+        });
+    }
+
+    /**
+     * Imports every sound file in a folder in the background, in parallel, and puts the first ones onto the loop
+     * pads in order, releasing the rest. The pattern keeps playing and the UI stays responsive however many files
+     * there are.
+     * @param directory The folder.
+     */
+    public void importFolder(File directory) {
+        List<Path> files;
+        try {
+            files = SampleImporter.soundFiles(directory.toPath());
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        getImporter().importFiles(files).thenAccept(sounds -> {
+            Platform.runLater(() -> {
+                AudioButton[][] pads = view.getBeatPadPane().getLoopButtons();
+                int next = 0;
+                for(AudioButton[] row : pads) {
+                    for(AudioButton pad : row) {
+                        if(next < sounds.size()) {
+                            setPadSound(pad, sounds.get(next++));
+                        }
+                    }
+                }
+                // Sounds beyond the last pad aren't used, so give their references back. They never reached the
+                // model, so unlike the pads' old sounds they needn't wait for the transport
+                for(PcmSample unused : sounds.subList(next, sounds.size())) {
+                    engine.getSampleBank().release(unused);
+                }
+            });
+        });
+    }
+
+    /**
+     * Puts a sound on one of the mixer's tracks, so it plays through that track's effects.
+     * @param sound The sound.
+     * @param track The track, e.g. MixSettings.FIRST_LOOP + 2 for the third loop pad.
+     */
+    public void routeSound(PcmSample sound, int track) {
+        getMixSettings().route(sound, track);
+    }
+
+    /**
+     * Get the mix settings: each track's gain, pan, filter and sends, and the delay and reverb buses. They can be
+     * changed while the music plays.
+     * @return The model's mix settings.
+     */
+    public MixSettings getMixSettings() {
+        return engine.getModel().getMixSettings();
+    }
+
+    /**
+     * Get the settings of the built-in synth, which can be changed while it plays.
+     * @return The shared patch.
+     */
+    public SynthPatch getSynthPatch() {
+        return SynthPatch.shared();
+    }
+
+    /**
+     * Gives each row of melody buttons a new note. Turned on buttons keep playing on their beats with the new
+     * note, changed over at one step boundary.
+     * @param rows The melody buttons, by row then beat.
+     * @param notes The new note for each row.
+     */
+    public void retuneMelody(AudioButton[][] rows, PcmSample[] notes) {
+        PcmSample[] from = new PcmSample[rows.length];
+        for(int row = 0; row < rows.length; row++) {
+            from[row] = rows[row][0].getSound();
+            for(AudioButton button : rows[row]) {
+                button.setSound(notes[row]);
+            }
+        }
+        checkPosted(commands.replaceSounds(from, notes.clone()));
     }
 
     /**
      * Adds a sound to the currently playing music.
      * @param beatToPlayOn The beats that the sound will trigger on, from 0 to Controller.BEATS_IN_MEASURE inclusive.
-     * @param sound An AudioClip that holds the sound to play.
+     * @param sound The sound to play.
      */
-    public void addSoundToModel(int[] beatToPlayOn, AudioClip sound) {
-        for(int beat : beatToPlayOn){
-            model.addAudioClipToMatrix(beat, sound);
-        }
+    public void addSoundToModel(int[] beatToPlayOn, PcmSample sound) {
+        checkPosted(commands.addSound(beatToPlayOn, sound));
     }
 
     /**
      * Removes a sound from the currently playing music.
      * @param beatWasPlayedOn The beats that the sound was triggered on, from 0 to Controller.BEATS_IN_MEASURE inclusive.
-     * @param sound The AudioClip representing the sound to remove. Must be .equal() to the AudioClip that was added in
-     *              order to successfully remove.
+     * @param sound The sound to remove. Must be the same handle that was added in order to successfully remove.
      */
-    public void removeSoundFromModel(int[] beatWasPlayedOn, AudioClip sound) {
-        for(int beat : beatWasPlayedOn){
-            model.removeAudioClipFromMatrix(beat, sound);
-        }
+    public void removeSoundFromModel(int[] beatWasPlayedOn, PcmSample sound) {
+        checkPosted(commands.removeSound(beatWasPlayedOn, sound));
     }
 
     /**
@@ -72,13 +191,66 @@ public class Controller {
      * Play a sample right now.
      * @param sound The sound to play.
      */
-    public void triggerSamplePlayback(AudioClip sound) { model.playSample(sound); }
+    public void triggerSamplePlayback(PcmSample sound) { model.playSample(sound); }
+
+    /**
+     * Plays a sample pad that was just hit. The sound is triggered first, straight from the engine's pad input,
+     * and the pad is flashed afterwards so drawing it can't delay the sound. The pad isn't turned on or off.
+     * @param pad The pad.
+     * @param pressedNanos The System.nanoTime() when the key or mouse button went down.
+     */
+    public void hitPad(AudioButton pad, long pressedNanos) {
+        engine.getPads().hit(pad.getSound(), pressedNanos);
+        Platform.runLater(pad::flash);
+    }
+
+    /**
+     * Plays a loop pad as a one-shot hit while recording, so it is recorded rather than switching the loop on or
+     * off.
+     * @param pad The loop pad.
+     * @param pressedNanos The System.nanoTime() when the key or mouse button went down.
+     */
+    public void recordPad(AudioButton pad, long pressedNanos) {
+        engine.getPads().hit(pad.getSound(), pressedNanos);
+    }
+
+    /**
+     * Arms or disarms recording pad hits into the pattern.
+     * @param armed True to record.
+     */
+    public void setRecordArmed(boolean armed) {
+        engine.getPads().getRecorder().setArmed(armed);
+    }
+
+    /**
+     * Is recording armed?
+     * @return True if pad hits are being recorded.
+     */
+    public boolean isRecordArmed() {
+        return engine.getPads().getRecorder().isArmed();
+    }
+
+    /**
+     * Sets how strongly recorded hits are pulled onto the next step.
+     * @param strength From 0 to 1.
+     */
+    public void setRecordStrength(double strength) {
+        engine.getPads().getRecorder().setStrength(strength);
+    }
+
+    /**
+     * Sets whether pad hits are moved to the next sixteenth note.
+     * @param quantise True to quantise hits.
+     */
+    public void setQuantise(boolean quantise) {
+        engine.getPads().setQuantise(quantise);
+    }
 
     /**
      * Clear all the sounds from the model-- stop playing music.
      */
     public void removeAllSoundsFromModel(){
-        model.clearMatrix();
+        checkPosted(commands.clear());
     }
 
     /**
@@ -86,31 +258,308 @@ public class Controller {
      * @param newVolume The new volume to play at.
      */
     public void updateVolume(double newVolume) {
-        model.updateVolume(newVolume);
+        volume = newVolume;
+        checkPosted(commands.setVolume(newVolume));
+    }
+
+    /**
+     * Changes the tempo while the music keeps playing. Takes effect from the next beat.
+     * @param bpm The new tempo in beats per minute.
+     */
+    public void updateTempo(double bpm) {
+        postTempo(tempo.withBpm(bpm));
     }
 
     /**
-     * The loop that controls when music is played. Updates the counter in the side bar, and triggers the model to play
-     * the music at the given beat.
-     * @throws InterruptedException
+     * Changes how many beats of the matrix make up one beat of the tempo, e.g. 4 to step in 16th notes.
+     * @param stepsPerBeat The new step resolution.
      */
-    public void mainLoop() throws InterruptedException {
-        int beat = 0;
+    public void updateStepsPerBeat(int stepsPerBeat) {
+        postTempo(tempo.withStepsPerBeat(stepsPerBeat));
+    }
+
+    /**
+     * Get the tempo.
+     * @return The current tempo.
+     */
+    public Tempo getTempo() {
+        return tempo;
+    }
+
+    /**
+     * Saves the loops and melody notes that are turned on, with the volume and tempo, to the pattern library. The
+     * library is kept in patterns.lib, or wherever -Dbeatpad.patterns points.
+     * @param name The name to save under.
+     */
+    public void savePattern(String name) {
+        Map<PcmSample, long[]> tracks = new LinkedHashMap<>();
+        collectPattern(view.getBeatPadPane().getLoopButtons(), tracks);
+        collectPattern(view.getMelodyMakerPane().getButtons(), tracks);
+        collectRecorded(engine.getModel().getBeatMatrix().snapshot(), tracks);
+        String[] names = new String[tracks.size()];
+        String[] hashes = new String[tracks.size()];
+        long[][] masks = new long[tracks.size()][];
+        int track = 0;
+        for(Map.Entry<PcmSample, long[]> entry : tracks.entrySet()) {
+            names[track] = entry.getKey().getName();
+            hashes[track] = entry.getKey().getHash();
+            masks[track++] = entry.getValue();
+        }
+        try {
+            getPatterns(true).save(name, new Pattern(BEATS_IN_MEASURE, tempo, volume, names, hashes, masks));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
 
-        while(view.isOpen()){
+    /**
+     * Loads a pattern from the library. The model gets the whole pattern at one step boundary, and the loop and
+     * melody buttons, volume and tempo are set to match it together.
+     * @param name The name the pattern was saved under.
+     * @return False if there is no pattern by that name.
+     */
+    public boolean loadPattern(String name) {
+        Pattern pattern;
+        try {
+            PatternLibrary library = getPatterns(false);
+            pattern = library == null ? null : library.load(name);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+        if(pattern == null) {
+            return false;
+        }
+        PcmSample[] sounds = pattern.resolve(engine.getSampleBank());
+        if(!commands.loadPattern(pattern, sounds)) {
+            checkPosted(false);
+            return false;
+        }
+        tempo = pattern.getTempo();
+        volume = pattern.getVolume();
+        Map<PcmSample, Integer> tracks = new IdentityHashMap<>();
+        for(int track = 0; track < sounds.length; track++) {
+            if(sounds[track] != null) {
+                tracks.put(sounds[track], track);
+            }
+        }
+        showPattern(view.getBeatPadPane().getLoopButtons(), pattern, tracks);
+        showPattern(view.getMelodyMakerPane().getButtons(), pattern, tracks);
+        view.getSideBarPane().showSettings(volume, tempo.getBpm());
+        return true;
+    }
+
+    /**
+     * Get the names of the saved patterns. Doesn't create the library if nothing has been saved yet.
+     * @return The names, or an empty list if there is no library or it can't be opened.
+     */
+    public List<String> getPatternNames() {
+        try {
+            PatternLibrary library = getPatterns(false);
+            return library == null ? Collections.emptyList() : library.names();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Get the number of changes that were lost because the command queue was full.
+     * @return The count.
+     */
+    public long getDroppedCommands() {
+        return commands.getDropped();
+    }
+
+    /**
+     * Renders the current beats to a .wav file on a background thread, so the UI and live playback keep going. If
+     * the transport is stopped, the changes still waiting in the command queue are applied first.
+     * @param file The file to write.
+     * @param bars The number of measures to render.
+     * @return Completes on the bounce thread with how long the bounce took, or exceptionally if it failed.
+     */
+    public CompletableFuture<Bouncer.Result> bounceToFile(File file, int bars) {
+        CompletableFuture<Bouncer.Result> done = new CompletableFuture<>();
+        engine.getTransport().applyCommands();
+        Thread bounce = new Thread(() -> {
             try {
-                model.playBeat(beat);
-                if(beat%4 == 0) {
-                    final int currBeat = beat;
-                    Platform.runLater(() -> view.getSideBarPane().updateCounter(currBeat));
+                done.complete(model.bounce(file, bars));
+            } catch (IOException | RuntimeException e) {
+                done.completeExceptionally(e);
+            }
+        }, "bounce");
+        bounce.setDaemon(true);
+        bounce.start();
+        return done;
+    }
+
+    /**
+     * Starts the music. Each beat is played by the engine's transport. Once per display frame the beat being heard
+     * is read from the transport and, if it has changed, the counter and the melody maker playhead are moved, so
+     * the cost of drawing does not grow with the tempo, and any changes posted while the transport is stopped are
+     * applied. Must be called on the JavaFX thread. Run with -Dbeatpad.timing=true to print the step lateness and
+     * skipped steps once per measure.
+     */
+    public void startPlayback() {
+        Transport transport = engine.getTransport();
+        if(Boolean.getBoolean("beatpad.timing")) {
+            transport.addListener((beat, deadline) -> {
+                if(beat == 0) {
+                    System.out.println("timing: " + engine.getMetrics().getStepLateness() + ", skipped "
+                            + transport.getSkippedSteps());
+                }
+            });
+        }
+        playhead = new AnimationTimer() {
+            private int shown = -1;
+
+            @Override
+            public void handle(long now) {
+                transport.applyCommands();
+                int beat = transport.getAudibleStep(System.nanoTime());
+                if(beat != shown) {
+                    shown = beat;
+                    view.getSideBarPane().updateCounter(beat);
+                    view.getMelodyMakerPane().movePlayhead(beat);
                 }
-                beat++;
-                beat = beat % BEATS_IN_MEASURE;
-                TimeUnit.MILLISECONDS.sleep(TIME_BETWEEN_BEATS);
-            } catch (NullPointerException e){
-                break;
             }
+        };
+        transport.start();
+        playhead.start();
+    }
+
+    /**
+     * Stops the music and releases the audio output. Called when the application exits; calling it again does
+     * nothing.
+     */
+    public void shutdown() {
+        if(shutDown) {
+            return;
+        }
+        shutDown = true;
+        if(playhead != null) {
+            playhead.stop();
+        }
+        if(importer != null) {
+            importer.close();
+        }
+        engine.close();
+        if(patterns != null) {
+            try {
+                patterns.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            patterns = null;
         }
     }
 
+    /*
+     * Posts a tempo change, remembering it so the next change builds on it even before it has been applied.
+     */
+    private void postTempo(Tempo newTempo) {
+        if(commands.setTempo(newTempo)) {
+            tempo = newTempo;
+        } else {
+            checkPosted(false);
+        }
+    }
+
+    /*
+     * Reports a change that was dropped because the command queue was full.
+     */
+    private void checkPosted(boolean posted) {
+        if(!posted) {
+            System.err.println("command queue full, " + commands.getDropped() + " changes dropped");
+        }
+    }
+
+    /*
+     * Gives a pad a new sound, moving its beats over to the new sound if the pad is turned on, and releases the
+     * pad's reference to the old sound. The release is posted behind the move, so the transport gives the reference
+     * back only once the old sound is off the beats; if it is dropped, the old sound just stays loaded. Voices
+     * already playing the old sound keep their own handle to it.
+     */
+    private void setPadSound(AudioButton pad, PcmSample sound) {
+        PcmSample old = pad.getSound();
+        routeSound(sound, getMixSettings().trackOf(old));
+        if(pad.isActive()) {
+            removeSoundFromModel(pad.getBeatsToPlayOn(), old);
+            addSoundToModel(pad.getBeatsToPlayOn(), sound);
+        }
+        pad.setSound(sound);
+        if(old != null) {
+            checkPosted(commands.releaseSound(old));
+        }
+    }
+
+    /*
+     * Starts the importer the first time it is needed. Processed sounds are cached in the directory named by
+     * -Dbeatpad.cache, or in "cache".
+     */
+    private SampleImporter getImporter() {
+        if(importer == null) {
+            Path cache = Path.of(System.getProperty("beatpad.cache", "cache"));
+            importer = new SampleImporter(engine.getSampleBank(), cache);
+        }
+        return importer;
+    }
+
+    /*
+     * Opens the pattern library the first time it is needed. A new library is a file of about a megabyte, so it is
+     * only created when a pattern is saved; until then this returns null unless create is true.
+     */
+    private PatternLibrary getPatterns(boolean create) throws IOException {
+        if(patterns == null) {
+            Path path = Path.of(System.getProperty("beatpad.patterns", "patterns.lib"));
+            if(!create && !Files.exists(path)) {
+                return null;
+            }
+            patterns = new PatternLibrary(path);
+        }
+        return patterns;
+    }
+
+    /*
+     * Adds the beats of every button that is turned on to the track for its sound.
+     */
+    private static void collectPattern(AudioButton[][] buttons, Map<PcmSample, long[]> tracks) {
+        for(AudioButton[] row : buttons) {
+            for(AudioButton button : row) {
+                if(button.isActive()) {
+                    long[] mask = tracks.computeIfAbsent(button.getSound(), sound -> new long[1]);
+                    for(int beat : button.getBeatsToPlayOn()) {
+                        mask[0] |= 1L << beat;
+                    }
+                }
+            }
+        }
+    }
+
+    /*
+     * Adds what is in the matrix, which includes hits recorded from the pads that no button shows.
+     */
+    private static void collectRecorded(BeatMatrix.Snapshot matrix, Map<PcmSample, long[]> tracks) {
+        for(int beat = 0; beat < matrix.getSteps(); beat++) {
+            for(int voice : matrix.voicesAt(beat)) {
+                tracks.computeIfAbsent(matrix.sound(voice), sound -> new long[1])[0] |= 1L << beat;
+            }
+        }
+    }
+
+    /*
+     * Turns on exactly the buttons whose sound plays on all of their beats in a pattern.
+     */
+    private static void showPattern(AudioButton[][] buttons, Pattern pattern, Map<PcmSample, Integer> tracks) {
+        for(AudioButton[] row : buttons) {
+            for(AudioButton button : row) {
+                Integer track = tracks.get(button.getSound());
+                boolean on = track != null;
+                for(int beat : button.getBeatsToPlayOn()) {
+                    on = on && pattern.isSet(track, beat);
+                }
+                button.setStatus(on);
+            }
+        }
+    }
 }
@@ -0,0 +1,237 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Feeds StreamingSamples from disk to the voices playing them. There is a fixed set of streams, each a ring buffer
+ * allocated once, shared by every engine in the process. A render thread claims a stream when a voice starts and
+ * gives it back when the voice ends; a single background I/O thread keeps each open stream's ring filled ahead of
+ * its voice with positional file reads, so the render thread only ever copies from memory.
+ *
+ * If a voice gets ahead of its ring, the missing frames are copied straight from the mapped file on the render
+ * thread instead of being played as silence, and the underrun is counted. Voices that start when every stream is
+ * in use play that way from start to finish.
+ */
+public class DiskStreamer {
+
+    /**
+     * One ring buffer. Its state moves FREE to OPEN on the render thread, OPEN to CLOSING on the render thread and
+     * CLOSING to FREE on the I/O thread, so a stream is never reused while the I/O thread may still be filling it.
+     */
+    public static final class Stream {
+        private static final int FREE = 0;
+        private static final int CLAIMED = 1;
+        private static final int OPEN = 2;
+        private static final int CLOSING = 3;
+
+        private final AtomicInteger state = new AtomicInteger(FREE);
+        private final ByteBuffer bytes;
+        private final ShortBuffer ring;
+        private StreamingSample sample;
+        private volatile long written;
+        private volatile long read;
+
+        private Stream(int frames) {
+            bytes = ByteBuffer.allocateDirect(frames * MixEngine.CHANNELS * 2).order(ByteOrder.nativeOrder());
+            ring = bytes.asShortBuffer();
+        }
+    }
+
+    //Instance variables
+    public static final int DEFAULT_STREAMS = 32;
+    public static final int RING_FRAMES = 1 << 14;
+    private static final int CHUNK_FRAMES = 4096;
+    private static final long POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+    private static DiskStreamer shared;
+    private final Stream[] streams;
+    private final int ringFrames;
+    private final Thread thread;
+    private final AtomicLong underruns = new AtomicLong();
+    private final AtomicLong unstreamed = new AtomicLong();
+
+    /**
+     * Instantiate a DiskStreamer and start its I/O thread.
+     * @param streams The most voices that can stream at once.
+     * @param ringFrames The size of each stream's ring buffer, a power of two.
+     */
+    public DiskStreamer(int streams, int ringFrames) {
+        if(Integer.bitCount(ringFrames) != 1) {
+            throw new IllegalArgumentException("ring size must be a power of two: " + ringFrames);
+        }
+        this.ringFrames = ringFrames;
+        this.streams = new Stream[streams];
+        for(int i = 0; i < streams; i++) {
+            this.streams[i] = new Stream(ringFrames);
+        }
+        thread = new Thread(this::run, "disk-stream");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MAX_PRIORITY - 1);
+        thread.start();
+    }
+
+    /**
+     * Get the streamer shared by every engine, starting it the first time.
+     * @return The shared streamer.
+     */
+    public static synchronized DiskStreamer shared() {
+        if(shared == null) {
+            shared = new DiskStreamer(DEFAULT_STREAMS, RING_FRAMES);
+        }
+        return shared;
+    }
+
+    /**
+     * Get the streamer shared by every engine, without starting it.
+     * @return The shared streamer, or null if nothing has streamed yet.
+     */
+    public static synchronized DiskStreamer sharedIfStarted() {
+        return shared;
+    }
+
+    /**
+     * Claims a stream for a voice that is starting, and starts filling it from the end of the sound's attack.
+     * Lock-free and allocation-free.
+     * @param sample The sound.
+     * @return The stream, or null if every stream is in use.
+     */
+    public Stream open(StreamingSample sample) {
+        for(Stream stream : streams) {
+            if(stream.state.get() == Stream.FREE && stream.state.compareAndSet(Stream.FREE, Stream.CLAIMED)) {
+                stream.sample = sample;
+                stream.read = sample.getAttackFrames();
+                stream.written = sample.getAttackFrames();
+                stream.state.set(Stream.OPEN);
+                LockSupport.unpark(thread);
+                return stream;
+            }
+        }
+        unstreamed.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Copies the next frames of a voice's sound into a buffer. Frames must be asked for in order, starting at the
+     * end of the attack.
+     * @param stream The voice's stream, or null if it did not get one.
+     * @param sample The sound.
+     * @param frame The first frame wanted.
+     * @param frames The number of frames wanted.
+     * @param dst Where to put them, as interleaved stereo from index 0.
+     */
+    public void read(Stream stream, StreamingSample sample, long frame, int frames, ShortBuffer dst) {
+        int ready = 0;
+        if(stream != null) {
+            ready = (int) Math.max(0, Math.min(frames, stream.written - frame));
+            int mask = ringFrames - 1;
+            for(int f = 0; f < ready; f++) {
+                int at = (int) ((frame + f) & mask) * MixEngine.CHANNELS;
+                dst.put(f * MixEngine.CHANNELS, stream.ring.get(at));
+                dst.put(f * MixEngine.CHANNELS + 1, stream.ring.get(at + 1));
+            }
+            stream.read = frame + frames;
+            if(stream.written - stream.read < ringFrames / 2) {
+                LockSupport.unpark(thread);
+            }
+        }
+        if(ready < frames) {
+            if(stream != null) {
+                underruns.incrementAndGet();
+            }
+            sample.copy(frame + ready, frames - ready, dst, ready);
+        }
+    }
+
+    /**
+     * Gives a stream back when its voice ends.
+     * @param stream The stream.
+     */
+    public void close(Stream stream) {
+        stream.state.set(Stream.CLOSING);
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * Get the number of times a voice got ahead of its stream.
+     * @return The underrun count.
+     */
+    public long getUnderruns() {
+        return underruns.get();
+    }
+
+    /**
+     * Get the number of voices that could not get a stream because they were all in use.
+     * @return The count.
+     */
+    public long getUnstreamed() {
+        return unstreamed.get();
+    }
+
+    /**
+     * Get the number of streams in use.
+     * @return The count.
+     */
+    public int getOpen() {
+        int open = 0;
+        for(Stream stream : streams) {
+            if(stream.state.get() != Stream.FREE) {
+                open++;
+            }
+        }
+        return open;
+    }
+
+    /*
+     * The I/O thread: tops up every open stream, frees closed ones, and sleeps when there is nothing to do.
+     */
+    private void run() {
+        ByteBuffer[] views = new ByteBuffer[streams.length];
+        for(int i = 0; i < streams.length; i++) {
+            views[i] = streams[i].bytes.duplicate();
+        }
+        while(true) {
+            boolean busy = false;
+            for(int i = 0; i < streams.length; i++) {
+                Stream stream = streams[i];
+                int state = stream.state.get();
+                if(state == Stream.CLOSING) {
+                    stream.sample = null;
+                    stream.state.set(Stream.FREE);
+                } else if(state == Stream.OPEN) {
+                    busy |= fill(stream, views[i]);
+                }
+            }
+            if(!busy) {
+                LockSupport.parkNanos(this, POLL_NANOS);
+            }
+        }
+    }
+
+    /*
+     * Reads the next chunk of a stream's sound into its ring, if there is room.
+     */
+    private boolean fill(Stream stream, ByteBuffer view) {
+        StreamingSample sample = stream.sample;
+        long from = Math.max(stream.written, stream.read);
+        long to = Math.min(stream.read + ringFrames, sample.getFrames());
+        if(from >= to) {
+            return false;
+        }
+        int at = (int) (from & (ringFrames - 1));
+        int frames = (int) Math.min(Math.min(to - from, CHUNK_FRAMES), ringFrames - at);
+        view.limit((at + frames) * MixEngine.CHANNELS * 2).position(at * MixEngine.CHANNELS * 2);
+        try {
+            int read = sample.read(view, from) / (MixEngine.CHANNELS * 2);
+            stream.written = from + read;
+            return read > 0;
+        } catch (IOException e) {
+            System.err.println("can't stream " + sample.getName() + ": " + e.getMessage());
+            stream.written = from + frames;
+            return false;
+        }
+    }
+}
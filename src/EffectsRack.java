@@ -0,0 +1,211 @@
+import java.util.Arrays;
+
+/**
+ * Processes a MixSettings for one MixEngine, a block at a time. Voices on a track are mixed into that track's bus
+ * instead of the master; then each track runs through its insert chain (filter, gain and pan) into the master and
+ * its sends, and the delay and reverb buses run on what was sent to them. Everything is allocated when the rack is
+ * made, so processing allocates nothing.
+ *
+ * The work done is per track and per bus, not per voice: however many hits a track has, it is filtered and panned
+ * once a block. A track with no voices is skipped once its filter has rung out, stages left at their defaults are
+ * skipped, and the delay and reverb only run while they have input or a tail. Only used from the render thread.
+ */
+public class EffectsRack {
+
+    //Instance variables
+    private static final int TAIL_BLOCKS = 2;
+    private final MixSettings settings;
+    private final float sampleRate;
+    private final int blockFrames;
+    private final float[][] buses = new float[MixSettings.TRACKS][];
+    private final boolean[] touched = new boolean[MixSettings.TRACKS];
+    private final int[] idle = new int[MixSettings.TRACKS];
+    private final float[] low = new float[MixSettings.TRACKS * 2];
+    private final float[] band = new float[MixSettings.TRACKS * 2];
+    private final float[] lastLeft = new float[MixSettings.TRACKS];
+    private final float[] lastRight = new float[MixSettings.TRACKS];
+    private final float[] delayBus;
+    private final float[] reverbBus;
+    private final StereoDelay delay;
+    private final Reverb reverb;
+    private final MixKernels kernels = MixKernels.get();
+    private boolean delayInput;
+    private boolean reverbInput;
+    private long lastNanos;
+    private int lastStages;
+
+    /**
+     * Instantiate an EffectsRack.
+     * @param settings The settings to process.
+     * @param sampleRate The engine's sample rate.
+     * @param blockFrames The engine's block size.
+     */
+    public EffectsRack(MixSettings settings, float sampleRate, int blockFrames) {
+        this.settings = settings;
+        this.sampleRate = sampleRate;
+        this.blockFrames = blockFrames;
+        for(int track = 0; track < MixSettings.TRACKS; track++) {
+            buses[track] = new float[blockFrames * MixEngine.CHANNELS];
+            idle[track] = TAIL_BLOCKS;
+        }
+        Arrays.fill(lastLeft, 1);
+        Arrays.fill(lastRight, 1);
+        delayBus = new float[blockFrames * MixEngine.CHANNELS];
+        reverbBus = new float[blockFrames * MixEngine.CHANNELS];
+        delay = new StereoDelay(sampleRate, MixSettings.MAX_DELAY);
+        reverb = new Reverb(sampleRate);
+    }
+
+    /**
+     * Get the settings.
+     * @return The settings this rack processes.
+     */
+    public MixSettings getSettings() {
+        return settings;
+    }
+
+    /**
+     * Gets the bus voices on a track are mixed into for the current block, clearing it the first time it is asked
+     * for in a block.
+     * @param track The track.
+     * @return The bus, as interleaved stereo.
+     */
+    public float[] bus(int track) {
+        if(!touched[track]) {
+            Arrays.fill(buses[track], 0);
+            touched[track] = true;
+        }
+        return buses[track];
+    }
+
+    /**
+     * Runs every active track and bus for the block and adds them to the master. Call once a block, after the
+     * voices have been mixed.
+     * @param out The master block, as interleaved stereo, already holding the voices not on any track.
+     */
+    public void process(float[] out) {
+        long began = System.nanoTime();
+        int stages = 0;
+        for(int track = 0; track < MixSettings.TRACKS; track++) {
+            if(touched[track]) {
+                idle[track] = 0;
+            } else if(idle[track] < TAIL_BLOCKS) {
+                bus(track);
+                idle[track]++;
+            } else {
+                continue;
+            }
+            stages += processTrack(track, out);
+            touched[track] = false;
+        }
+        if(delayInput || delay.isRinging()) {
+            delay.process(delayInput ? delayBus : null, out, blockFrames, settings.getDelayTime(),
+                    settings.getDelayFeedback(), settings.getDelayLevel());
+            stages++;
+        }
+        if(reverbInput || reverb.isRinging()) {
+            reverb.process(reverbInput ? reverbBus : null, out, blockFrames, settings.getReverbSize(),
+                    settings.getReverbDamping(), settings.getReverbLevel());
+            stages++;
+        }
+        delayInput = false;
+        reverbInput = false;
+        lastStages = stages;
+        lastNanos = System.nanoTime() - began;
+    }
+
+    /**
+     * Get the cost of the last block.
+     * @return The nanoseconds process took.
+     */
+    public long getLastNanos() {
+        return lastNanos;
+    }
+
+    /**
+     * Get how much processing the last block needed.
+     * @return The number of tracks mixed plus the number of filters, gain stages, sends and buses that did work.
+     */
+    public int getLastStages() {
+        return lastStages;
+    }
+
+    /*
+     * Runs one track's inserts, adds it to the master and feeds its sends. Returns the number of stages that ran.
+     */
+    private int processTrack(int track, float[] out) {
+        ChannelStrip strip = settings.getStrip(track);
+        float[] bus = buses[track];
+        int samples = blockFrames * MixEngine.CHANNELS;
+        int stages = 1;
+        double cutoff = strip.getCutoff();
+        if(cutoff < ChannelStrip.OPEN && cutoff < 0.45 * sampleRate) {
+            filter(track, bus, cutoff, strip.getResonance());
+            stages++;
+        } else {
+            low[track * 2] = low[track * 2 + 1] = band[track * 2] = band[track * 2 + 1] = 0;
+        }
+        double gain = strip.getGain();
+        double pan = strip.getPan();
+        float left = (float) (gain * Math.min(1, 1 - pan));
+        float right = (float) (gain * Math.min(1, 1 + pan));
+        float fromLeft = lastLeft[track];
+        float fromRight = lastRight[track];
+        if(left != 1 || right != 1 || fromLeft != 1 || fromRight != 1) {
+            // Ramp from the last block's gains so changes don't click
+            float stepLeft = (left - fromLeft) / blockFrames;
+            float stepRight = (right - fromRight) / blockFrames;
+            kernels.rampStereo(bus, blockFrames, fromLeft, stepLeft, fromRight, stepRight);
+            lastLeft[track] = left;
+            lastRight[track] = right;
+            stages++;
+        }
+        kernels.accumulate(out, 0, bus, 0, samples, 1);
+        float delaySend = (float) strip.getDelaySend();
+        if(delaySend > 0) {
+            if(!delayInput) {
+                Arrays.fill(delayBus, 0);
+                delayInput = true;
+            }
+            kernels.accumulate(delayBus, 0, bus, 0, samples, delaySend);
+            stages++;
+        }
+        float reverbSend = (float) strip.getReverbSend();
+        if(reverbSend > 0) {
+            if(!reverbInput) {
+                Arrays.fill(reverbBus, 0);
+                reverbInput = true;
+            }
+            kernels.accumulate(reverbBus, 0, bus, 0, samples, reverbSend);
+            stages++;
+        }
+        return stages;
+    }
+
+    /*
+     * Runs a bus through its track's resonant low-pass, a trapezoidal state-variable filter like SynthVoice's, with
+     * the coefficients worked out once for the block.
+     */
+    private void filter(int track, float[] bus, double cutoff, double resonance) {
+        float g = (float) Math.tan(Math.PI * cutoff / sampleRate);
+        float k = (float) (2 - 1.9 * resonance);
+        float a1 = 1 / (1 + g * (g + k));
+        float a2 = g * a1;
+        float a3 = g * a2;
+        int samples = blockFrames * MixEngine.CHANNELS;
+        for(int side = 0; side < 2; side++) {
+            float lo = low[track * 2 + side];
+            float bd = band[track * 2 + side];
+            for(int i = side; i < samples; i += 2) {
+                float v3 = bus[i] - lo;
+                float v1 = a1 * bd + a2 * v3;
+                float v2 = lo + a2 * bd + a3 * v3;
+                bd = 2 * v1 - bd;
+                lo = 2 * v2 - lo;
+                bus[i] = v2;
+            }
+            low[track * 2 + side] = lo;
+            band[track * 2 + side] = bd;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/**
+ * A change to a Model, passed from the UI thread to the playback thread through a CommandQueue. Commands are
+ * preallocated slots in a ring and are reused, so posting one allocates nothing.
+ */
+public class EngineCommand {
+
+    /** What a command does */
+    public enum Type {
+        /** Put sound on every beat in beats */
+        ADD,
+        /** Take sound off every beat in beats */
+        REMOVE,
+        /** Take every sound off every beat */
+        CLEAR,
+        /** Set the volume to value, from 0 to 100 */
+        VOLUME,
+        /** Change to tempo */
+        TEMPO,
+        /** Replace the beats, volume and tempo with pattern, played by sounds */
+        LOAD,
+        /** Move every beat of each of sounds to the matching sound in replacements */
+        REPLACE,
+        /** Give the model's SampleBank reference to sound back, once the commands before it are applied */
+        RELEASE
+    }
+
+    //Instance variables
+    Type type;
+    int[] beats;
+    PcmSample sound;
+    double value;
+    Tempo tempo;
+    Pattern pattern;
+    PcmSample[] sounds;
+    PcmSample[] replacements;
+
+    /*
+     * Fills in the slot. Only called by CommandQueue.
+     */
+    void set(Type type, int[] beats, PcmSample sound, double value, Tempo tempo) {
+        this.type = type;
+        this.beats = beats;
+        this.sound = sound;
+        this.value = value;
+        this.tempo = tempo;
+    }
+}
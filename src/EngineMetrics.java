@@ -0,0 +1,307 @@
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Timing health of one live engine: how late steps are dispatched, how long from a trigger until the sound is due
+ * out of the speakers, how long each block takes to mix and then to be heard, how many voices play, how deep the
+ * command queue gets, and how often the output runs dry. The Transport and MixEngine record into lock-free
+ * Histograms as they run, allocating nothing; counts that are kept elsewhere are read from where they live when
+ * asked for.
+ *
+ * The metrics can be registered as an MBean, under beatpad:type=EngineMetrics, and dumped as text at a fixed period
+ * for headless runs.
+ */
+public class EngineMetrics implements EngineMetricsMBean, AutoCloseable {
+
+    //Instance variables
+    private static final AtomicInteger engines = new AtomicInteger();
+    private final Histogram stepLateness = new Histogram("step lateness", "ns");
+    private final Histogram triggerLatency = new Histogram("trigger latency", "ns");
+    private final Histogram renderTime = new Histogram("render time", "ns");
+    private final Histogram effectsTime = new Histogram("effects time", "ns");
+    private final Histogram outputLatency = new Histogram("output latency", "ns");
+    private final Histogram voices = new Histogram("active voices", "voices");
+    private final Histogram queueDepth = new Histogram("command queue depth", "commands");
+    private final MixEngine engine;
+    private final CommandQueue commands;
+    private ObjectName name;
+    private Thread dumper;
+
+    /**
+     * Instantiate EngineMetrics for an engine, and start recording into them.
+     * @param engine The engine that mixes the audio.
+     * @param commands The queue that edits reach the engine through.
+     */
+    public EngineMetrics(MixEngine engine, CommandQueue commands) {
+        this.engine = engine;
+        this.commands = commands;
+        engine.setMetrics(this);
+    }
+
+    /**
+     * Get the step lateness histogram, recorded by the Transport's StepScheduler.
+     * @return Nanoseconds from when each step was due to be dispatched to when it was.
+     */
+    public Histogram getStepLateness() {
+        return stepLateness;
+    }
+
+    /**
+     * Get the trigger latency histogram, recorded by the MixEngine.
+     * @return Nanoseconds from each trigger to the time its first frame is due to be heard.
+     */
+    public Histogram getTriggerLatency() {
+        return triggerLatency;
+    }
+
+    /**
+     * Get the render time histogram, recorded by the MixEngine.
+     * @return Nanoseconds taken to mix each block.
+     */
+    public Histogram getRenderTime() {
+        return renderTime;
+    }
+
+    /**
+     * Get the effects time histogram, recorded by the MixEngine.
+     * @return Nanoseconds taken to run the tracks' effects and the effects buses in each block.
+     */
+    public Histogram getEffectsTime() {
+        return effectsTime;
+    }
+
+    /**
+     * Get the output latency histogram, recorded by the RenderThread.
+     * @return Nanoseconds from starting to mix each block to its last frame being heard.
+     */
+    public Histogram getOutputLatency() {
+        return outputLatency;
+    }
+
+    /**
+     * Get the active voice histogram, recorded by the MixEngine.
+     * @return The number of voices playing in each block.
+     */
+    public Histogram getVoices() {
+        return voices;
+    }
+
+    /**
+     * Get the command queue depth histogram, recorded by the Transport.
+     * @return The number of commands waiting at each step.
+     */
+    public Histogram getQueueDepth() {
+        return queueDepth;
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server, under a name unique to this engine.
+     * @return The name registered.
+     * @throws JMException If the MBean can't be registered.
+     */
+    public synchronized ObjectName register() throws JMException {
+        if(name == null) {
+            ObjectName candidate =
+                    new ObjectName("beatpad:type=EngineMetrics,name=engine-" + engines.incrementAndGet());
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, candidate);
+            name = candidate;
+        }
+        return name;
+    }
+
+    /**
+     * Prints a dump of the metrics at a fixed period, on a daemon thread, until closed.
+     * @param period The time between dumps.
+     * @param unit The unit of period.
+     * @param out Where to print.
+     */
+    public synchronized void startDump(long period, TimeUnit unit, PrintStream out) {
+        if(dumper != null) {
+            return;
+        }
+        long millis = unit.toMillis(period);
+        dumper = new Thread(() -> {
+            try {
+                while(true) {
+                    Thread.sleep(millis);
+                    out.println(dump());
+                }
+            } catch (InterruptedException e) {
+                // Closed
+            }
+        }, "metrics-dump");
+        dumper.setDaemon(true);
+        dumper.start();
+    }
+
+    /**
+     * Stops dumping, unregisters the MBean and stops recording.
+     */
+    @Override
+    public synchronized void close() {
+        if(dumper != null) {
+            dumper.interrupt();
+            dumper = null;
+        }
+        if(name != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+            } catch (JMException e) {
+                e.printStackTrace();
+            }
+            name = null;
+        }
+        engine.setMetrics(null);
+    }
+
+    @Override
+    public long getSteps() {
+        return stepLateness.getCount();
+    }
+
+    @Override
+    public double getStepLatenessMeanMicros() {
+        return stepLateness.getMean() / 1000;
+    }
+
+    @Override
+    public long getStepLatenessP99Micros() {
+        return stepLateness.getPercentile(0.99) / 1000;
+    }
+
+    @Override
+    public long getStepLatenessMaxMicros() {
+        return stepLateness.getMax() / 1000;
+    }
+
+    @Override
+    public double getTriggerLatencyMeanMicros() {
+        return triggerLatency.getMean() / 1000;
+    }
+
+    @Override
+    public long getTriggerLatencyP99Micros() {
+        return triggerLatency.getPercentile(0.99) / 1000;
+    }
+
+    @Override
+    public double getRenderTimeMeanMicros() {
+        return renderTime.getMean() / 1000;
+    }
+
+    @Override
+    public long getRenderTimeP99Micros() {
+        return renderTime.getPercentile(0.99) / 1000;
+    }
+
+    @Override
+    public long getRenderTimeMaxMicros() {
+        return renderTime.getMax() / 1000;
+    }
+
+    @Override
+    public double getEffectsTimeMeanMicros() {
+        return effectsTime.getMean() / 1000;
+    }
+
+    @Override
+    public long getEffectsTimeP99Micros() {
+        return effectsTime.getPercentile(0.99) / 1000;
+    }
+
+    @Override
+    public int getActiveEffects() {
+        EffectsRack effects = engine.getEffects();
+        return effects == null ? 0 : effects.getLastStages();
+    }
+
+    @Override
+    public double getOutputLatencyMeanMicros() {
+        return outputLatency.getMean() / 1000;
+    }
+
+    @Override
+    public long getOutputLatencyP99Micros() {
+        return outputLatency.getPercentile(0.99) / 1000;
+    }
+
+    @Override
+    public int getBufferFrames() {
+        RenderThread renderThread = engine.getRenderThread();
+        return renderThread == null ? 0 : renderThread.getBufferBlocks() * engine.getBlockFrames();
+    }
+
+    @Override
+    public double getRenderLoad() {
+        return renderTime.getMean() / (engine.getBlockFrames() * 1e9 / engine.getSampleRate());
+    }
+
+    @Override
+    public int getActiveVoices() {
+        return engine.getVoices().getPlaying();
+    }
+
+    @Override
+    public long getMaxActiveVoices() {
+        return voices.getMax();
+    }
+
+    @Override
+    public int getCommandQueueDepth() {
+        return commands.getDepth();
+    }
+
+    @Override
+    public long getMaxCommandQueueDepth() {
+        return queueDepth.getMax();
+    }
+
+    @Override
+    public long getUnderruns() {
+        return engine.getUnderruns();
+    }
+
+    @Override
+    public long getStreamUnderruns() {
+        DiskStreamer streamer = DiskStreamer.sharedIfStarted();
+        return streamer == null ? 0 : streamer.getUnderruns();
+    }
+
+    @Override
+    public long getDroppedTriggers() {
+        return engine.getDroppedTriggers();
+    }
+
+    @Override
+    public long getDroppedCommands() {
+        return commands.getDropped();
+    }
+
+    @Override
+    public void reset() {
+        stepLateness.reset();
+        triggerLatency.reset();
+        renderTime.reset();
+        effectsTime.reset();
+        outputLatency.reset();
+        voices.reset();
+        queueDepth.reset();
+    }
+
+    @Override
+    public String dump() {
+        StringBuilder text = new StringBuilder("engine metrics:");
+        for(Histogram histogram : new Histogram[]{stepLateness, triggerLatency, renderTime, effectsTime,
+                outputLatency, voices, queueDepth}) {
+            text.append("\n  ").append(histogram);
+        }
+        text.append(String.format("%n  render load %.1f%%, buffer %d frames, underruns %d, stream underruns %d, "
+                        + "dropped triggers %d, dropped commands %d", getRenderLoad() * 100, getBufferFrames(),
+                getUnderruns(), getStreamUnderruns(), getDroppedTriggers(), getDroppedCommands()));
+        return text.toString();
+    }
+}
@@ -0,0 +1,84 @@
+/**
+ * The JMX view of an EngineMetrics, readable from jconsole, VisualVM or any JMX client. Times are in microseconds
+ * and percentiles are accurate to within an eighth of their value.
+ */
+public interface EngineMetricsMBean {
+
+    /** Steps dispatched since the last reset */
+    long getSteps();
+
+    /** Mean time a step was dispatched after it was due to be */
+    double getStepLatenessMeanMicros();
+
+    /** 99th percentile of step lateness */
+    long getStepLatenessP99Micros();
+
+    /** Worst step lateness */
+    long getStepLatenessMaxMicros();
+
+    /** Mean time from a sound being triggered to it being due out of the speakers */
+    double getTriggerLatencyMeanMicros();
+
+    /** 99th percentile of trigger-to-output latency */
+    long getTriggerLatencyP99Micros();
+
+    /** Mean time taken to mix one block */
+    double getRenderTimeMeanMicros();
+
+    /** 99th percentile of the time taken to mix one block */
+    long getRenderTimeP99Micros();
+
+    /** Worst time taken to mix one block */
+    long getRenderTimeMaxMicros();
+
+    /** Mean time taken by the tracks' effects and the effects buses in one block, included in the render time */
+    double getEffectsTimeMeanMicros();
+
+    /** 99th percentile of the time taken by effects in one block */
+    long getEffectsTimeP99Micros();
+
+    /** Tracks, inserts, sends and buses that did work in the last block */
+    int getActiveEffects();
+
+    /** Mean time from starting to mix a block to its last frame being heard */
+    double getOutputLatencyMeanMicros();
+
+    /** 99th percentile of output latency */
+    long getOutputLatencyP99Micros();
+
+    /** Audio kept queued in the output now, in frames */
+    int getBufferFrames();
+
+    /** Mean fraction of each block's real-time budget spent mixing it */
+    double getRenderLoad();
+
+    /** Voices playing now */
+    int getActiveVoices();
+
+    /** Most voices playing in any one block */
+    long getMaxActiveVoices();
+
+    /** Commands waiting for the playback thread now */
+    int getCommandQueueDepth();
+
+    /** Most commands found waiting at a step */
+    long getMaxCommandQueueDepth();
+
+    /** Times the audio output ran dry */
+    long getUnderruns();
+
+    /** Times a voice playing from disk ran ahead of its stream */
+    long getStreamUnderruns();
+
+    /** Triggers lost because the render thread was too far behind */
+    long getDroppedTriggers();
+
+    /** Edits lost because the command queue was full */
+    long getDroppedCommands();
+
+    /** Forget the histograms recorded so far; counters keep counting */
+    void reset();
+
+    /** Every metric as text */
+    String dump();
+}
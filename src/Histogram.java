@@ -0,0 +1,157 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A log-linear histogram of non-negative longs, such as nanoseconds or voice counts. Each power of two is split
+ * into SUB_BUCKETS equal buckets, so any value is placed within 1/SUB_BUCKETS of itself from 1 up to Long.MAX_VALUE
+ * with under 500 buckets. Recording is a few atomic adds on arrays allocated up front, so it is lock-free and
+ * allocation-free, and any number of threads can record while another reads.
+ *
+ * Reads are not a consistent snapshot: a percentile taken while values are being recorded may be off by the values
+ * recorded during the read, which is fine for monitoring.
+ */
+public class Histogram {
+
+    //Instance variables
+    private static final int SUB_BITS = 3;
+    public static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+    private final String name;
+    private final String unit;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Instantiate an empty Histogram.
+     * @param name What is measured, for reports.
+     * @param unit The unit of the values, for reports, e.g. "ns".
+     */
+    public Histogram(String name, String unit) {
+        this.name = name;
+        this.unit = unit;
+    }
+
+    /**
+     * Records a value. Lock-free and allocation-free.
+     * @param value The value. Negative values are recorded as 0.
+     */
+    public void record(long value) {
+        long v = Math.max(0, value);
+        counts.incrementAndGet(bucket(v));
+        count.incrementAndGet();
+        sum.addAndGet(v);
+        long seen;
+        while(v > (seen = max.get()) && !max.compareAndSet(seen, v)) {
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Get the name.
+     * @return What is measured.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get the unit.
+     * @return The unit of the values.
+     */
+    public String getUnit() {
+        return unit;
+    }
+
+    /**
+     * Get the number of values recorded.
+     * @return The count.
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Get the largest value recorded.
+     * @return The maximum, or 0 if nothing has been recorded.
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Get the average value.
+     * @return The mean, or 0 if nothing has been recorded.
+     */
+    public double getMean() {
+        long n = count.get();
+        return n == 0 ? 0 : sum.get() / (double) n;
+    }
+
+    /**
+     * Gets the value that a fraction of the recorded values are at or below.
+     * @param fraction The fraction, e.g. 0.99 for the 99th percentile.
+     * @return The upper edge of the bucket holding that value, never more than the maximum, or 0 if nothing has
+     *         been recorded.
+     */
+    public long getPercentile(double fraction) {
+        long n = count.get();
+        if(n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * n));
+        long seen = 0;
+        for(int b = 0; b < BUCKETS; b++) {
+            seen += counts.get(b);
+            if(seen >= rank) {
+                return Math.min(upperEdge(b), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Forgets everything recorded so far. Values recorded at the same time may be partly kept.
+     */
+    public void reset() {
+        for(int b = 0; b < BUCKETS; b++) {
+            counts.set(b, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s n=%d mean=%.1f p50=%d p99=%d p999=%d max=%d %s", name, getCount(), getMean(),
+                getPercentile(0.5), getPercentile(0.99), getPercentile(0.999), getMax(), unit);
+    }
+
+    /*
+     * The bucket a value falls in. Values below SUB_BUCKETS get a bucket each; above that, the bucket is the power
+     * of two and the next SUB_BITS bits below the top one.
+     */
+    private static int bucket(long value) {
+        if(value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /*
+     * The largest value that falls in a bucket.
+     */
+    private static long upperEdge(int bucket) {
+        if(bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        long sub = bucket % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BITS);
+        return (1L << exponent) + (sub + 1) * width - 1;
+    }
+}
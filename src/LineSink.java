@@ -0,0 +1,78 @@
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An AudioSink that plays audio through a javax.sound.sampled SourceDataLine, i.e. the sound card.
+ */
+public class LineSink implements AudioSink {
+
+    //Instance variables
+    private static final int BUFFER_BLOCKS = 4;
+    private final AtomicLong underruns = new AtomicLong();
+    private SourceDataLine line;
+    private int frameSize;
+    private boolean started;
+
+    private LineSink(SourceDataLine line) {
+        this.line = line;
+    }
+
+    /**
+     * Finds a line on the default mixer that can play the engine's output format.
+     * @return A LineSink wrapping that line.
+     * @throws LineUnavailableException If there is no sound card to play through.
+     */
+    public static LineSink open() throws LineUnavailableException {
+        DataLine.Info info = new DataLine.Info(SourceDataLine.class, MixEngine.outputFormat(MixEngine.SAMPLE_RATE));
+        if(!AudioSystem.isLineSupported(info)) {
+            throw new LineUnavailableException("No line supports " + info);
+        }
+        return new LineSink((SourceDataLine) AudioSystem.getLine(info));
+    }
+
+    @Override
+    public void open(AudioFormat format) {
+        open(format, BUFFER_BLOCKS * MixEngine.BLOCK_FRAMES);
+    }
+
+    @Override
+    public void open(AudioFormat format, int bufferFrames) {
+        frameSize = format.getFrameSize();
+        try {
+            line.open(format, bufferFrames * frameSize);
+        } catch (LineUnavailableException e) {
+            throw new IllegalStateException(e);
+        }
+        line.start();
+        started = false;
+    }
+
+    @Override
+    public void write(byte[] data, int len) {
+        if(started && line.available() >= line.getBufferSize()) {
+            underruns.incrementAndGet();
+        }
+        started = true;
+        line.write(data, 0, len);
+    }
+
+    @Override
+    public long getUnderruns() {
+        return underruns.get();
+    }
+
+    @Override
+    public int getQueuedFrames() {
+        return (line.getBufferSize() - line.available()) / frameSize;
+    }
+
+    @Override
+    public void close() {
+        line.drain();
+        line.close();
+    }
+}
@@ -18,11 +18,18 @@ import java.util.Map;
 public class MainPane extends Application{
 
     //Instance variables
+    private static final String[][] SAMPLE_KEYS = {{"q", "w"},
+                                                   {"a", "s"},
+                                                   {"z", "x"}};
+    private static final String[][] LOOP_KEYS = {{"7","8","9"},
+                                                 {"4","5","6"},
+                                                 {"1","2","3"}};
     private Controller controller;
     private BeatPadPane beatPadPane;
     private SideBarPane sideBar;
     private MelodyMakerPane melodyMaker;
     private boolean isOpen;
+    private BeatEngine engine;
 
     /**
      * Override the start method of the application class to set scene
@@ -32,8 +39,8 @@ public class MainPane extends Application{
     @Override
     public void start(Stage primaryStage) throws Exception {
         isOpen = false;
-        ModelInterface m = new Model();
-        this.controller = new Controller(m, this);
+        this.engine = new BeatEngine();
+        this.controller = new Controller(engine, this);
         // Borderpane root will contain all other panes
 
         BorderPane root = new BorderPane();
@@ -57,13 +64,23 @@ public class MainPane extends Application{
         root.setRight(sideBar.getRoot());
         root.setCenter(centerPane);
 
-        // Initialize map, to be used for keyboard shortcuts to push buttons on beatpad
-        Map<String, ButtonBase> buttonMap = getShortcutMap(beatPadPane.getSampleButtons(), beatPadPane.getLoopButtons());
+        // Initialize maps, to be used for keyboard shortcuts to hit sample pads and push loop buttons on beatpad
+        Map<String, AudioButton> padMap = getPadMap(beatPadPane.getSampleButtons(), SAMPLE_KEYS);
+        Map<String, ButtonBase> buttonMap = getShortcutMap(beatPadPane.getLoopButtons());
+        Map<String, AudioButton> loopMap = getPadMap(beatPadPane.getLoopButtons(), LOOP_KEYS);
 
-        // Listener to trigger button presses based on keyboard input
+        // Listener to play sample pads straight away, and push loop buttons, based on keyboard input
         root.setOnKeyPressed(event -> {
+            long pressed = System.nanoTime();
+            AudioButton pad = padMap.get(event.getText());
+            if(pad != null) {
+                controller.hitPad(pad, pressed);
+                return;
+            }
             ButtonBase b = buttonMap.get(event.getText());
-            if(b != null) {
+            if(b != null && controller.isRecordArmed()) {
+                controller.recordPad(loopMap.get(event.getText()), pressed);
+            } else if(b != null) {
                 b.fire();
             }
         });
@@ -77,48 +94,54 @@ public class MainPane extends Application{
         primaryStage.setOnCloseRequest(event -> isOpen = false);
 
         isOpen = true;
-        Thread mainLoop = new Thread() {
-            public void run(){
-                try {
-                    controller.mainLoop();
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-            }
-        };
-        mainLoop.start();
+        controller.startPlayback();
 
     }
 
+    /**
+     * Stops the music when the application exits.
+     */
+    @Override
+    public void stop() {
+        if(controller != null) {
+            controller.shutdown();
+        }
+    }
+
     /*
-     * Function that returns a hash-map of keyboard buttons (in their string representations")
-     * mapping to associated buttons in a beatpad and melodymaker, respectively.
-     * Takes in as input Button[][] samplebuttons and ToggleButton[][] loopbuttons.
+     * Function that returns a hash-map of keyboard keys (in their string representations)
+     * mapping to the pads they play. Takes in as input AudioButton[][] pads and the keys laid out the same way.
      */
-    private Map<String, ButtonBase> getShortcutMap(AudioButton[][] sampleButtons, AudioButton[][] loopButtons){
+    private Map<String, AudioButton> getPadMap(AudioButton[][] pads, String[][] keys){
 
         // Initialize a hashmap
-        Map<String, ButtonBase> toReturn = new HashMap<>();
+        Map<String, AudioButton> toReturn = new HashMap<>();
 
-        // Keyboard keys to map
-        String[][] sampleKeys = {{"q", "w"},
-                                    {"a", "s"},
-                                    {"z", "x"}};
-        String[][] loopKeys = {{"7","8","9"},
-                                  {"4","5","6"},
-                                  {"1","2","3"}};
-
-        // Loop through sample buttons and map keyboard keys to samplebuttons accordingly.
-        for(int i = 0; i < sampleButtons.length; i++){
-            for(int j = 0; j < sampleButtons[i].length; j++){
-                toReturn.put(sampleKeys[i][j], sampleButtons[i][j].getBtn());
+        // Loop through the pads and map keyboard keys to them accordingly.
+        for(int i = 0; i < pads.length; i++){
+            for(int j = 0; j < pads[i].length; j++){
+                toReturn.put(keys[i][j], pads[i][j]);
             }
         }
 
+        // Return hashmap once mapping has finished
+        return toReturn;
+    }
+
+    /*
+     * Function that returns a hash-map of keyboard buttons (in their string representations")
+     * mapping to associated loop buttons in a beatpad.
+     * Takes in as input ToggleButton[][] loopbuttons.
+     */
+    private Map<String, ButtonBase> getShortcutMap(AudioButton[][] loopButtons){
+
+        // Initialize a hashmap
+        Map<String, ButtonBase> toReturn = new HashMap<>();
+
         // Loop through loop buttons and map keyboard keys to loopbuttons accordingly.
         for(int i = 0; i < loopButtons.length; i++){
             for(int j = 0; j < loopButtons[i].length; j++){
-                toReturn.put(loopKeys[i][j], loopButtons[i][j].getBtn());
+                toReturn.put(LOOP_KEYS[i][j], loopButtons[i][j].getBtn());
             }
         }
 
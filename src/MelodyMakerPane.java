@@ -1,25 +1,32 @@
 import javafx.geometry.Insets;
 import javafx.scene.control.*;
 import javafx.scene.layout.GridPane;
+import javafx.scene.layout.HBox;
 import javafx.scene.layout.Pane;
-import javafx.scene.media.Media;
-import javafx.scene.media.AudioClip;
-
-import java.nio.file.Paths;
+import javafx.scene.shape.Rectangle;
 
 import static javafx.application.Application.launch;
 
 /**
- * Class that holds all of the buttons for the melody maker in a single pane.
+ * Class that holds all of the buttons for the melody maker in a single pane. Every note is either pitched from one
+ * reference tone or played by the built-in synth, and the rows follow the key and scale picked under the grid,
+ * from the key centre upwards. The synth's settings can be changed with the sliders under the grid as it plays.
  **/
 public class MelodyMakerPane {
 
     //Instance variables
     private static final int NUM_NOTES = 8;
     private static final int NUM_TIME = 16;
+    private static final String REFERENCE_TONE = "tones/7.wav";
     private Pane root;
     private Controller controller;
     private AudioButton button[][]= new AudioButton[NUM_NOTES][NUM_TIME];
+    private Rectangle playhead;
+    private Label[] rowLabels = new Label[NUM_NOTES];
+    private PcmSample reference;
+    private int key = 0;
+    private Scale scale = Scale.MAJOR;
+    private Wavetable waveform;
 
 
     /**
@@ -38,19 +45,83 @@ public class MelodyMakerPane {
     }
 
     /**
-     * Adds the pre-stored media files to an AudioClip array which can then be used to play the music.
-     * @return the array of AudioClip with all the sounds
+     * Get the melody buttons.
+     * @return The buttons, by note then beat.
      */
+    public AudioButton[][] getButtons() {
+        return button;
+    }
 
-    public AudioClip[] addMedia(){
-        AudioClip[] music = new AudioClip[NUM_NOTES];
+    /**
+     * Gets the notes of the current key and scale, top row first: the reference tone pitched to each note, or the
+     * synth's notes if a waveform has been picked.
+     * @return the array of sounds with all the notes
+     */
+    public PcmSample[] addMedia(){
+        if(reference == null) {
+            reference = controller.loadSound(REFERENCE_TONE);
+            controller.routeSound(reference, MixSettings.MELODY);
+        }
+        PcmSample[] music = new PcmSample[NUM_NOTES];
         int i;
         for(i=0; i< NUM_NOTES;i++) {
-             music[i] = new AudioClip(Paths.get("tones/" + i + ".wav").toUri().toString());
+            //Keys above F# start below the reference so the notes stay near its pitch
+            int semitones = scale.semitones(key, NUM_NOTES - 1 - i) - (key > 6 ? 12 : 0);
+            music[i] = waveform == null ? PitchedSample.of(reference, semitones) : SynthNote.of(60 + semitones);
         }
         return music;
     }
 
+    /**
+     * Changes the key and scale. Every row is given its new note and label, and notes that are turned on move to
+     * the new pitches while the music plays.
+     * @param key The key centre, from 0 for C to 11 for B.
+     * @param scale The scale.
+     */
+    public void setKey(int key, Scale scale) {
+        this.key = key;
+        this.scale = scale;
+        controller.retuneMelody(button, addMedia());
+        for(int i = 0; i < NUM_NOTES; i++) {
+            rowLabels[i].setText(scale.noteName(key, NUM_NOTES - 1 - i));
+        }
+    }
+
+    /**
+     * Changes what plays the notes. Switching between the tone and the synth moves notes that are turned on over
+     * to the new sound while the music plays; switching between waveforms only changes the synth's patch.
+     * @param waveform The synth waveform, or null for the sampled tone.
+     */
+    public void setWaveform(Wavetable waveform) {
+        boolean retune = (waveform == null) != (this.waveform == null);
+        this.waveform = waveform;
+        if(waveform != null) {
+            controller.getSynthPatch().setWaveform(waveform);
+        }
+        if(retune) {
+            controller.retuneMelody(button, addMedia());
+        }
+    }
+
+    /**
+     * Moves the playhead over a column of the grid. The playhead is not laid out by the grid, so moving it does not
+     * cause a layout pass.
+     * @param beat the beat to show, or -1 to hide the playhead
+     */
+    public void movePlayhead(int beat) {
+        if(beat < 0 || beat >= NUM_TIME) {
+            playhead.setVisible(false);
+            return;
+        }
+        ButtonBase top = button[0][beat].getBtn();
+        ButtonBase bottom = button[NUM_NOTES - 1][beat].getBtn();
+        playhead.setLayoutX(top.getLayoutX());
+        playhead.setLayoutY(top.getLayoutY());
+        playhead.setWidth(top.getWidth());
+        playhead.setHeight(bottom.getLayoutY() + bottom.getHeight() - top.getLayoutY());
+        playhead.setVisible(true);
+    }
+
     /**
      * Deselct all the buttons when the user chooses to clear all
      * @return nothing
@@ -67,19 +138,19 @@ public class MelodyMakerPane {
      */
     private GridPane buildMelodyMaker() {
         GridPane grid = new GridPane();
-        String[] notes = {"C", "B", "A", "G", "F", "E", "D", "C"};
         grid.setHgap(10);
         grid.setVgap(10);
         grid.setPadding(new Insets(20, 10, 0, 10)); //margins around the whole grid
         int beatsToPlayOn[][] = new int [16][1];
         //Initialize all the sounds
-        AudioClip[] music = addMedia();
+        PcmSample[] music = addMedia();
         for (int i=0;i<NUM_NOTES;i++) {
             for (int j = 0; j < NUM_TIME; j++) {
                 //Adding the scale labels on 0th column
                 if(j == 0)
                 {
-                    Label label= new Label(notes[i]);
+                    Label label= new Label(scale.noteName(key, NUM_NOTES - 1 - i));
+                    rowLabels[i] = label;
                     label.getStyleClass().add("melody-label");
                     grid.setConstraints(label,j, i);
                     grid.getChildren().add(label);
@@ -122,6 +193,85 @@ public class MelodyMakerPane {
                 });
             }
         }
+        grid.add(buildKeyPicker(), 0, 10, NUM_TIME + 1, 1);
+        grid.add(buildSynthControls(), 0, 11, NUM_TIME + 1, 1);
+        //The playhead sits over the buttons but lets clicks through to them
+        playhead = new Rectangle();
+        playhead.getStyleClass().add("playhead");
+        playhead.setManaged(false);
+        playhead.setMouseTransparent(true);
+        playhead.setVisible(false);
+        grid.getChildren().add(playhead);
         return grid;
     }
+
+    /**
+     * Helper Method that makes the key and scale choosers shown under the grid.
+     */
+    private HBox buildKeyPicker() {
+        ComboBox<String> keys = new ComboBox<>();
+        keys.getItems().addAll(Scale.KEYS);
+        keys.getSelectionModel().select(key);
+        ComboBox<Scale> scales = new ComboBox<>();
+        scales.getItems().addAll(Scale.values());
+        scales.getSelectionModel().select(scale);
+        keys.setOnAction(event -> setKey(keys.getSelectionModel().getSelectedIndex(), scales.getValue()));
+        scales.setOnAction(event -> setKey(keys.getSelectionModel().getSelectedIndex(), scales.getValue()));
+        ComboBox<String> sounds = new ComboBox<>();
+        sounds.getItems().add("tone");
+        for(Wavetable w : Wavetable.values()) {
+            sounds.getItems().add(w.toString());
+        }
+        sounds.getSelectionModel().select(0);
+        sounds.setOnAction(event -> {
+            int choice = sounds.getSelectionModel().getSelectedIndex();
+            setWaveform(choice <= 0 ? null : Wavetable.values()[choice - 1]);
+        });
+        Label label = new Label("key");
+        label.getStyleClass().add("melody-label");
+        Label soundLabel = new Label("sound");
+        soundLabel.getStyleClass().add("melody-label");
+        HBox picker = new HBox(10, label, keys, scales, soundLabel, sounds);
+        picker.setPadding(new Insets(10, 0, 0, 0));
+        return picker;
+    }
+
+    /**
+     * Helper Method that makes the synth sliders. Each one changes the shared patch directly, which playing notes
+     * pick up within a few milliseconds.
+     */
+    private HBox buildSynthControls() {
+        SynthPatch patch = controller.getSynthPatch();
+        Slider cutoff = synthSlider(Math.log(50), Math.log(12000), Math.log(patch.getCutoff()));
+        Slider resonance = synthSlider(0, 1, patch.getResonance());
+        Slider attack = synthSlider(0, 0.5, patch.getAttack());
+        Slider release = synthSlider(0, 1, patch.getRelease());
+        cutoff.valueProperty().addListener((observable, oldValue, newValue) -> patch.setFilter(
+                Math.exp(newValue.doubleValue()), patch.getResonance(), patch.getEnvelopeAmount()));
+        resonance.valueProperty().addListener((observable, oldValue, newValue) -> patch.setFilter(
+                patch.getCutoff(), newValue.doubleValue(), patch.getEnvelopeAmount()));
+        attack.valueProperty().addListener((observable, oldValue, newValue) -> patch.setEnvelope(
+                newValue.doubleValue(), patch.getDecay(), patch.getSustain()));
+        release.valueProperty().addListener((observable, oldValue, newValue) -> patch.setRelease(
+                newValue.doubleValue()));
+        HBox controls = new HBox(10);
+        String[] names = {"cutoff", "resonance", "attack", "release"};
+        Slider[] sliders = {cutoff, resonance, attack, release};
+        for(int i = 0; i < names.length; i++) {
+            Label label = new Label(names[i]);
+            label.getStyleClass().add("melody-label");
+            controls.getChildren().addAll(label, sliders[i]);
+        }
+        controls.setPadding(new Insets(10, 0, 0, 0));
+        return controls;
+    }
+
+    /*
+     * A small slider for one synth setting.
+     */
+    private static Slider synthSlider(double min, double max, double value) {
+        Slider slider = new Slider(min, max, value);
+        slider.setPrefWidth(90);
+        return slider;
+    }
 }
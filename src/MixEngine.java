@@ -0,0 +1,289 @@
+import javax.sound.sampled.AudioFormat;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A software mixer. Every voice that is playing is summed into one block of audio at a time; played live, each
+ * block is written to a single AudioSink by a RenderThread. Voices are started on an exact frame, so any number of
+ * sounds triggered for the same frame start together.
+ *
+ * Triggers are passed to the render thread through a ring of preallocated slots and played by a preallocated
+ * VoicePool, so triggering a sound allocates nothing and the number of voices mixed is bounded.
+ */
+public class MixEngine {
+
+    //Instance variables
+    public static final float SAMPLE_RATE = 44100f;
+    public static final int CHANNELS = 2;
+    public static final int BLOCK_FRAMES = 256;
+    public static final int TRIGGER_QUEUE = 1024;
+
+    private final float sampleRate;
+    private final int blockFrames;
+    private final MpscRing<Trigger> triggers = new MpscRing<>(TRIGGER_QUEUE, Trigger::new);
+    private final MpscRing.Handler<Trigger> startVoice = this::startVoice;
+    private final VoicePool voices;
+    private final AtomicLong droppedTriggers = new AtomicLong();
+    private volatile long blockStart;
+    private volatile long clockOffset;
+    private double smoothedOffset = Double.NaN;
+    private final long epoch = System.nanoTime();
+    private volatile EngineMetrics metrics;
+    private volatile EffectsRack effects;
+    private volatile RenderThread renderThread;
+
+    /**
+     * Instantiate a MixEngine at the default sample rate and block size.
+     */
+    public MixEngine() {
+        this(SAMPLE_RATE, BLOCK_FRAMES);
+    }
+
+    /**
+     * Instantiate a MixEngine.
+     * @param sampleRate The output sample rate.
+     * @param blockFrames The number of frames mixed at a time.
+     */
+    public MixEngine(float sampleRate, int blockFrames) {
+        this.sampleRate = sampleRate;
+        this.blockFrames = blockFrames;
+        this.voices = new VoicePool(sampleRate, VoicePool.DEFAULT_MAX_VOICES * 4, VoicePool.DEFAULT_FADE_FRAMES);
+    }
+
+    /**
+     * The format of the audio the engine writes to its sink.
+     * @param sampleRate The sample rate of the engine.
+     * @return 16-bit signed little-endian stereo PCM.
+     */
+    public static AudioFormat outputFormat(float sampleRate) {
+        return new AudioFormat(sampleRate, 16, CHANNELS, true, false);
+    }
+
+    /**
+     * Opens the sink and starts mixing to it on a RenderThread, with the buffer size set by the system properties
+     * RenderThread reads.
+     * @param sink Where to send the mixed audio.
+     */
+    public void start(AudioSink sink) throws IOException {
+        renderThread = new RenderThread(this, sink);
+        renderThread.start();
+    }
+
+    /**
+     * Stops the render thread and closes the sink.
+     */
+    public void stop() {
+        if(renderThread != null) {
+            renderThread.stop();
+        }
+    }
+
+    /**
+     * Get the render thread, to change its buffer size or read its latency.
+     * @return The thread playing the engine live, or null if the engine has not been started.
+     */
+    public RenderThread getRenderThread() {
+        return renderThread;
+    }
+
+    /**
+     * Starts a sample playing. Safe to call from any thread, and allocates nothing.
+     * @param sample The sample to play.
+     * @param gain The volume to play it at, from 0 to 1.
+     * @param frame The frame to start on. Use nextFrame() to start as soon as possible. If the frame has already
+     *              been mixed, the sample starts part way through so it stays lined up with that frame.
+     * @param cut True to fade out any voices already playing this sample, like restarting an AudioClip.
+     */
+    public void trigger(PcmSample sample, float gain, long frame, boolean cut) {
+        long seq = triggers.claim();
+        if(seq < 0) {
+            droppedTriggers.incrementAndGet();
+            return;
+        }
+        Trigger t = triggers.slot(seq);
+        t.posted = metrics == null ? 0 : System.nanoTime();
+        t.sample = sample;
+        t.gain = gain;
+        t.frame = frame;
+        t.cut = cut;
+        triggers.publish(seq);
+    }
+
+    /**
+     * Get the voice pool, to change its polyphony limits and steal policy.
+     * @return The pool of voices this engine plays with.
+     */
+    public VoicePool getVoices() {
+        return voices;
+    }
+
+    /**
+     * Get the number of triggers thrown away because the render thread had fallen too far behind to take them.
+     * @return The count.
+     */
+    public long getDroppedTriggers() {
+        return droppedTriggers.get();
+    }
+
+    /**
+     * Gets the first frame of the next block to be mixed. Voices triggered on this frame will be in the next block.
+     * @return The frame position.
+     */
+    public long nextFrame() {
+        return blockStart;
+    }
+
+    /**
+     * Converts a System.nanoTime() into the frame that will be playing at that time. The mapping follows the
+     * sink's actual rate, so it does not drift away from the audio over long runs.
+     * @param nanos The time to convert.
+     * @return The frame position at that time.
+     */
+    public long frameAt(long nanos) {
+        return (long) ((nanos - epoch) * (sampleRate / 1e9)) + clockOffset;
+    }
+
+    /**
+     * Converts a frame position into the System.nanoTime() it will be heard at, the inverse of frameAt.
+     * @param frame The frame position.
+     * @return The time that frame will be playing.
+     */
+    public long nanosAt(long frame) {
+        return epoch + (long) ((frame - clockOffset) * (1e9 / sampleRate));
+    }
+
+    /**
+     * Get the number of times the sink ran out of audio.
+     * @return The render thread's underrun count, or 0 if the engine has not been started.
+     */
+    public long getUnderruns() {
+        RenderThread renderThread = this.renderThread;
+        return renderThread == null ? 0 : renderThread.getUnderruns();
+    }
+
+    /**
+     * Sets the track layout and effects the engine mixes with. The engine gets its own EffectsRack, so the same
+     * settings can be played by several engines at once.
+     * @param settings The settings, or null to mix every voice straight into the output.
+     */
+    public void setMixSettings(MixSettings settings) {
+        effects = settings == null ? null : new EffectsRack(settings, sampleRate, blockFrames);
+    }
+
+    /**
+     * Get the effects rack.
+     * @return The rack processing the engine's tracks, or null if there are no mix settings.
+     */
+    public EffectsRack getEffects() {
+        return effects;
+    }
+
+    /**
+     * Sets where the engine records its timing and load. Recording allocates nothing.
+     * @param metrics The metrics to record into, or null to stop recording.
+     */
+    public void setMetrics(EngineMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Get the metrics.
+     * @return Where the engine records its timing and load, or null if it doesn't.
+     */
+    public EngineMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Get the sample rate.
+     * @return The number of frames per second.
+     */
+    public float getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Get the block size.
+     * @return The number of frames mixed at a time.
+     */
+    public int getBlockFrames() {
+        return blockFrames;
+    }
+
+    /**
+     * Mixes the next block of audio. Only to be called by one thread, the render thread when the engine has been
+     * started, or the caller when rendering offline.
+     * @param out Where to put the block, as interleaved stereo floats. Must hold at least getBlockFrames() frames.
+     */
+    public void render(float[] out) {
+        EngineMetrics metrics = this.metrics;
+        long began = metrics == null ? 0 : System.nanoTime();
+        EffectsRack effects = this.effects;
+        long start = blockStart;
+        long end = start + blockFrames;
+        triggers.drain(startVoice);
+        Arrays.fill(out, 0, blockFrames * CHANNELS, 0f);
+        voices.mix(out, effects, start, end);
+        if(effects != null) {
+            effects.process(out);
+        }
+        blockStart = end;
+        if(metrics != null) {
+            metrics.getRenderTime().record(System.nanoTime() - began);
+            metrics.getVoices().record(voices.getPlaying());
+            if(effects != null) {
+                metrics.getEffectsTime().record(effects.getLastNanos());
+            }
+        }
+    }
+
+    /**
+     * Converts floats to 16-bit little-endian PCM, clipping anything out of range.
+     * @param in Samples from -1 to 1.
+     * @param out Where to write the bytes, two per sample.
+     * @param samples The number of samples to convert.
+     */
+    public static void toPcm16(float[] in, byte[] out, int samples) {
+        MixKernels.get().toPcm16(in, out, samples);
+    }
+
+    /**
+     * Updates the frame/nanoTime mapping used by frameAt. Each time the sink accepts a block, the render thread
+     * measures the offset between the frame being heard and the wall clock, which is folded into a slow moving
+     * average that smooths out scheduling jitter while still following any drift in the sound card's clock.
+     * @param frame The frame being heard.
+     * @param nanos The time it is being heard at.
+     */
+    void trackClock(long frame, long nanos) {
+        double offset = frame - (nanos - epoch) * (sampleRate / 1e9);
+        smoothedOffset = Double.isNaN(smoothedOffset) ? offset : smoothedOffset + (offset - smoothedOffset) / 64;
+        clockOffset = Math.round(smoothedOffset);
+    }
+
+    /*
+     * Hands a drained trigger to the voice pool, on the sound's track, and records how long after the trigger its
+     * first frame will be heard.
+     */
+    private void startVoice(Trigger t) {
+        EffectsRack effects = this.effects;
+        int track = effects == null ? -1 : effects.getSettings().trackOf(t.sample);
+        voices.start(t.sample, t.gain, t.frame, t.cut, blockStart, track);
+        t.sample = null;
+        EngineMetrics metrics = this.metrics;
+        if(metrics != null && t.posted != 0) {
+            metrics.getTriggerLatency().record(nanosAt(Math.max(t.frame, blockStart)) - t.posted);
+        }
+    }
+
+    /*
+     * A request to start a voice, passed from the triggering thread to the render thread.
+     */
+    private static class Trigger {
+        private PcmSample sample;
+        private float gain;
+        private long frame;
+        private boolean cut;
+        private long posted;
+    }
+}
@@ -0,0 +1,148 @@
+/**
+ * The inner loops of mixing: adding voices and buses into a block, gain ramps, and converting the block to 16-bit
+ * PCM. This class is the plain Java version. When the jdk.incubator.vector module is present (run with
+ * --add-modules jdk.incubator.vector) and VectorKernels from src-vector is on the class path, get returns it, which
+ * does the same work a whole SIMD register at a time; otherwise, or with -Dbeatpad.kernels=scalar, it returns this.
+ * Both do the same float operations in the same order, so they produce identical output. Nothing in src refers to
+ * VectorKernels, so src compiles without the incubator module.
+ */
+public class MixKernels {
+
+    //Instance variables
+    private static final MixKernels scalar = new MixKernels();
+    private static final MixKernels selected = load();
+
+    /**
+     * Instantiate the scalar kernels. Use get or scalar.
+     */
+    protected MixKernels() {
+    }
+
+    /**
+     * Get the fastest kernels available.
+     * @return The vector kernels if the Vector API is available, or the scalar ones.
+     */
+    public static MixKernels get() {
+        return selected;
+    }
+
+    /**
+     * Get the scalar kernels, e.g. to compare against.
+     * @return The plain Java kernels.
+     */
+    public static MixKernels scalar() {
+        return scalar;
+    }
+
+    /**
+     * Get the name of the kernels, for reports.
+     * @return "scalar", or the vector shape used.
+     */
+    public String getName() {
+        return "scalar";
+    }
+
+    /**
+     * Adds 16-bit samples to a block, scaled.
+     * @param out The block.
+     * @param o The index in out of the first sample to add to.
+     * @param in The samples.
+     * @param i The index in in of the first sample.
+     * @param samples The number of samples.
+     * @param scale The gain, including the 1/32768 that turns 16-bit samples into floats.
+     * @return The largest absolute 16-bit sample added.
+     */
+    public int accumulate(float[] out, int o, short[] in, int i, int samples, float scale) {
+        int peak = 0;
+        for(int n = 0; n < samples; n++) {
+            int sample = in[i + n];
+            out[o + n] += sample * scale;
+            peak = Math.max(peak, Math.abs(sample));
+        }
+        return peak;
+    }
+
+    /**
+     * Adds float samples to a block, scaled.
+     * @param out The block.
+     * @param o The index in out of the first sample to add to.
+     * @param in The samples.
+     * @param i The index in in of the first sample.
+     * @param samples The number of samples.
+     * @param gain The gain.
+     */
+    public void accumulate(float[] out, int o, float[] in, int i, int samples, float gain) {
+        for(int n = 0; n < samples; n++) {
+            out[o + n] += in[i + n] * gain;
+        }
+    }
+
+    /**
+     * Adds mono samples to both sides of an interleaved stereo block, scaled.
+     * @param out The stereo block.
+     * @param o The index in out of the first sample to add to.
+     * @param mono The mono samples.
+     * @param i The index in mono of the first sample.
+     * @param frames The number of frames.
+     * @param gain The gain.
+     * @return The largest absolute mono sample added.
+     */
+    public float accumulateMono(float[] out, int o, float[] mono, int i, int frames, float gain) {
+        float peak = 0;
+        for(int n = 0; n < frames; n++) {
+            float sample = mono[i + n];
+            out[o + 2 * n] += sample * gain;
+            out[o + 2 * n + 1] += sample * gain;
+            peak = Math.max(peak, Math.abs(sample));
+        }
+        return peak;
+    }
+
+    /**
+     * Multiplies an interleaved stereo block by a gain on each side that changes linearly from frame to frame.
+     * Frame f is multiplied by fromLeft + stepLeft * f on the left and fromRight + stepRight * f on the right.
+     * @param block The block.
+     * @param frames The number of frames, starting at the beginning of the block.
+     * @param fromLeft The left gain at frame 0.
+     * @param stepLeft How much the left gain changes each frame.
+     * @param fromRight The right gain at frame 0.
+     * @param stepRight How much the right gain changes each frame.
+     */
+    public void rampStereo(float[] block, int frames, float fromLeft, float stepLeft, float fromRight,
+                           float stepRight) {
+        for(int f = 0; f < frames; f++) {
+            block[2 * f] *= fromLeft + stepLeft * f;
+            block[2 * f + 1] *= fromRight + stepRight * f;
+        }
+    }
+
+    /**
+     * Converts floats to 16-bit little-endian PCM, clipping anything out of range.
+     * @param in Samples from -1 to 1.
+     * @param out Where to write the bytes, two per sample.
+     * @param samples The number of samples to convert.
+     */
+    public void toPcm16(float[] in, byte[] out, int samples) {
+        for(int i = 0; i < samples; i++) {
+            float s = in[i] * 32767f;
+            int v = s > 32767f ? 32767 : s < -32768f ? -32768 : (int) s;
+            out[2 * i] = (byte) v;
+            out[2 * i + 1] = (byte) (v >> 8);
+        }
+    }
+
+    /*
+     * Loads the vector kernels if the module is there and they haven't been turned off.
+     */
+    private static MixKernels load() {
+        if(!"scalar".equals(System.getProperty("beatpad.kernels"))
+                && ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                return (MixKernels) Class.forName("VectorKernels").getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                System.err.println("vector kernels unavailable, using scalar: " + e);
+            }
+        }
+        return scalar;
+    }
+}
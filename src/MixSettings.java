@@ -0,0 +1,207 @@
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * How the mix is laid out: which track each sound plays on, each track's ChannelStrip, and the settings of the
+ * shared delay and reverb buses. One MixSettings is shared by every engine that plays a model, live or offline, and
+ * each engine processes it with its own EffectsRack. Sounds that are not routed to a track go straight to the
+ * master, untouched.
+ *
+ * The routing is published as an immutable map, replaced whole on every change like a BeatMatrix snapshot, so the
+ * render thread looks sounds up without locking. A pitched sound plays on its reference's track, and synth notes
+ * all play on one track. Sounds can also be set to cut themselves off, so a new hit fades out the last one instead
+ * of ringing over it.
+ */
+public class MixSettings {
+
+    //Instance variables
+    public static final int LOOP_TRACKS = 9;
+    public static final int SAMPLE_TRACKS = 6;
+    public static final int FIRST_LOOP = 0;
+    public static final int FIRST_SAMPLE = FIRST_LOOP + LOOP_TRACKS;
+    public static final int MELODY = FIRST_SAMPLE + SAMPLE_TRACKS;
+    public static final int TRACKS = MELODY + 1;
+    public static final double MAX_DELAY = 2;
+    private final ChannelStrip[] strips = new ChannelStrip[TRACKS];
+    private volatile Map<PcmSample, Integer> routes = new IdentityHashMap<>();
+    private volatile Set<PcmSample> cuts = Collections.newSetFromMap(new IdentityHashMap<>());
+    private volatile int synthTrack = -1;
+    private volatile double delayTime = 0.375;
+    private volatile double delayFeedback = 0.4;
+    private volatile double delayLevel = 0.5;
+    private volatile double reverbSize = 0.6;
+    private volatile double reverbDamping = 0.4;
+    private volatile double reverbLevel = 0.4;
+
+    /**
+     * Instantiate MixSettings with every strip at its defaults and nothing routed.
+     */
+    public MixSettings() {
+        for(int track = 0; track < TRACKS; track++) {
+            strips[track] = new ChannelStrip();
+        }
+    }
+
+    /**
+     * Get a track's strip.
+     * @param track The track, from 0 to TRACKS - 1.
+     * @return The settings of its insert chain and sends.
+     */
+    public ChannelStrip getStrip(int track) {
+        return strips[track];
+    }
+
+    /**
+     * Puts a sound on a track.
+     * @param sound The sound.
+     * @param track The track, or -1 to send it straight to the master.
+     */
+    public synchronized void route(PcmSample sound, int track) {
+        if(track < -1 || track >= TRACKS) {
+            throw new IllegalArgumentException("Bad track " + track);
+        }
+        Map<PcmSample, Integer> updated = new IdentityHashMap<>(routes);
+        if(track < 0) {
+            updated.remove(sound);
+        } else {
+            updated.put(sound, track);
+        }
+        routes = updated;
+    }
+
+    /**
+     * Puts every synth note on a track.
+     * @param track The track, or -1 to send them straight to the master.
+     */
+    public void routeSynth(int track) {
+        if(track < -1 || track >= TRACKS) {
+            throw new IllegalArgumentException("Bad track " + track);
+        }
+        synthTrack = track;
+    }
+
+    /**
+     * Finds the track a sound plays on. Lock-free and allocation-free.
+     * @param sound The sound.
+     * @return The track, or -1 if it goes straight to the master.
+     */
+    public int trackOf(PcmSample sound) {
+        if(sound instanceof SynthNote) {
+            return synthTrack;
+        }
+        if(sound instanceof PitchedSample) {
+            sound = ((PitchedSample) sound).getReference();
+        }
+        Integer track = routes.get(sound);
+        return track == null ? -1 : track;
+    }
+
+    /**
+     * Sets whether a sound cuts itself off. By default hits of a sound ring over each other, up to the VoicePool's
+     * per-sound limit; a sound that cuts itself off fades out its earlier hits, like restarting an AudioClip.
+     * @param sound The sound.
+     * @param cut True to cut off earlier hits, false to let them ring.
+     */
+    public synchronized void setCut(PcmSample sound, boolean cut) {
+        Set<PcmSample> updated = Collections.newSetFromMap(new IdentityHashMap<>());
+        updated.addAll(cuts);
+        if(cut) {
+            updated.add(sound);
+        } else {
+            updated.remove(sound);
+        }
+        cuts = updated;
+    }
+
+    /**
+     * Finds whether a sound cuts itself off. Lock-free and allocation-free.
+     * @param sound The sound.
+     * @return True if a new hit should fade out the ones still playing.
+     */
+    public boolean cuts(PcmSample sound) {
+        if(sound instanceof PitchedSample) {
+            sound = ((PitchedSample) sound).getReference();
+        }
+        return cuts.contains(sound);
+    }
+
+    /**
+     * Get the delay time.
+     * @return The seconds between echoes.
+     */
+    public double getDelayTime() {
+        return delayTime;
+    }
+
+    /**
+     * Get the delay feedback.
+     * @return How much of each echo is fed back, from 0 to 0.95.
+     */
+    public double getDelayFeedback() {
+        return delayFeedback;
+    }
+
+    /**
+     * Get the delay return level.
+     * @return How loud the echoes are in the master, from 0 to 1.
+     */
+    public double getDelayLevel() {
+        return delayLevel;
+    }
+
+    /**
+     * Sets the delay bus.
+     * @param time The seconds between echoes, up to MAX_DELAY.
+     * @param feedback How much of each echo is fed back, from 0 to 0.95.
+     * @param level How loud the echoes are in the master, from 0 to 1.
+     */
+    public void setDelay(double time, double feedback, double level) {
+        if(time <= 0 || time > MAX_DELAY || feedback < 0 || feedback > 0.95 || level < 0 || level > 1) {
+            throw new IllegalArgumentException("Bad delay " + time + "/" + feedback + "/" + level);
+        }
+        this.delayTime = time;
+        this.delayFeedback = feedback;
+        this.delayLevel = level;
+    }
+
+    /**
+     * Get the reverb size.
+     * @return From 0 for a small room to 1 for a hall.
+     */
+    public double getReverbSize() {
+        return reverbSize;
+    }
+
+    /**
+     * Get the reverb damping.
+     * @return How quickly high frequencies die away, from 0 to 1.
+     */
+    public double getReverbDamping() {
+        return reverbDamping;
+    }
+
+    /**
+     * Get the reverb return level.
+     * @return How loud the reverb is in the master, from 0 to 1.
+     */
+    public double getReverbLevel() {
+        return reverbLevel;
+    }
+
+    /**
+     * Sets the reverb bus.
+     * @param size From 0 for a small room to 1 for a hall.
+     * @param damping How quickly high frequencies die away, from 0 to 1.
+     * @param level How loud the reverb is in the master, from 0 to 1.
+     */
+    public void setReverb(double size, double damping, double level) {
+        if(size < 0 || size > 1 || damping < 0 || damping > 1 || level < 0 || level > 1) {
+            throw new IllegalArgumentException("Bad reverb " + size + "/" + damping + "/" + level);
+        }
+        this.reverbSize = size;
+        this.reverbDamping = damping;
+        this.reverbLevel = level;
+    }
+}
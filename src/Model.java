@@ -1,72 +1,261 @@
-import javafx.scene.media.AudioClip;
-import javafx.scene.media.AudioClip;
-
-import java.util.Collection;
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.concurrent.ConcurrentSkipListSet;
-
-import static java.lang.String.valueOf;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 
 /**
- * The implementation of the ModelInterface.
+ * The implementation of the ModelInterface. Holds the beat matrix, and plays sounds from a SampleBank of decoded
+ * PCM through a MixEngine, so all the sounds on a beat start on the same sample frame. Has no JavaFX dependencies.
+ * Changes from the UI arrive through a CommandQueue and are applied by the playback thread between steps.
  * Created by nachtm on 3/8/17.
  */
 public class Model implements ModelInterface{
 
     //Instance variables
-    private Map<Integer, Collection<AudioClip>> beatMatrix;
-    private double volume;
+    public static final int BEATS_IN_MEASURE = 16;
+    private BeatMatrix beatMatrix;
+    private volatile double volume;
+    private volatile Tempo tempo = Tempo.DEFAULT;
+    private final CommandQueue commands = new CommandQueue();
+    private final MpscRing.Handler<EngineCommand> applyCommand = this::apply;
+    private SampleBank bank;
+    private MixEngine engine;
+    private final MixSettings mixSettings = new MixSettings();
+
+    /**
+     * Instantiate a model with its own SampleBank.
+     * @param sink Where the mixed audio should be sent, or null for a model that is only used for offline
+     *             rendering and never plays live.
+     */
+    public Model(AudioSink sink){
+        this(sink, new SampleBank(MixEngine.SAMPLE_RATE));
+    }
 
     /**
      * Instantiate a model.
+     * @param sink Where the mixed audio should be sent, or null for a model that is only used for offline
+     *             rendering and never plays live.
+     * @param bank The bank to load sounds into. Can be shared between models.
      */
-    public Model(){
-        beatMatrix = new HashMap<>();
+    public Model(AudioSink sink, SampleBank bank){
+        beatMatrix = new BeatMatrix(BEATS_IN_MEASURE);
         volume = 0.8;
-        for(int i=0; i < Controller.BEATS_IN_MEASURE; i++){
-            beatMatrix.put(i, new ConcurrentSkipListSet<>(Comparator.comparingInt(Object::hashCode)));
+        engine = new MixEngine(bank.getSampleRate(), MixEngine.BLOCK_FRAMES);
+        engine.setMixSettings(mixSettings);
+        this.bank = bank;
+        if(sink != null) {
+            try {
+                engine.start(sink);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
         }
     }
 
     @Override
-    public void addAudioClipToMatrix(int beat, AudioClip m) {
-        beatMatrix.get(beat).add(m);
+    public void addSoundToMatrix(int beat, PcmSample sample) {
+        beatMatrix.add(beat, sample);
     }
 
     @Override
-    public boolean removeAudioClipFromMatrix(int beat, AudioClip m) {
-        return beatMatrix.get(beat).remove(m);
+    public boolean removeSoundFromMatrix(int beat, PcmSample sample) {
+        return beatMatrix.remove(beat, sample);
     }
 
     @Override
-    public void playSample(AudioClip sound) {
-        if(sound.isPlaying()) {
-            sound.stop();
-        }
-        sound.play();
+    public void playSample(PcmSample sound) {
+        engine.trigger(sound, (float) volume, engine.nextFrame(), mixSettings.cuts(sound));
+    }
+
+    @Override
+    public void playSample(PcmSample sound, long deadlineNanos) {
+        engine.trigger(sound, (float) volume, Math.max(engine.frameAt(deadlineNanos), engine.nextFrame()),
+                mixSettings.cuts(sound));
     }
 
     @Override
     public void clearMatrix() {
-        for(Collection l : beatMatrix.values()){
-            l.clear();
-        }
+        beatMatrix.clear();
     }
 
     @Override
     public void playBeat(int beat) {
-        Collection<AudioClip> beatToPlay = beatMatrix.get(beat);
-        for(AudioClip sound : beatToPlay){
-            sound.stop();
-            sound.setVolume(volume);
-            sound.play();
-        }
+        triggerBeat(beat, engine, engine.nextFrame());
+    }
+
+    @Override
+    public void playBeat(int beat, long deadlineNanos) {
+        triggerBeat(beat, engine, Math.max(engine.frameAt(deadlineNanos), engine.nextFrame()));
+    }
+
+    @Override
+    public void playEvents(Timeline.Cursor song, long step, long deadlineNanos) {
+        triggerEvents(song, step, engine, Math.max(engine.frameAt(deadlineNanos), engine.nextFrame()));
     }
 
     @Override
     public void updateVolume(double newVolume) {
         volume = newVolume/100;
     }
+
+    @Override
+    public void updateTempo(Tempo tempo) {
+        this.tempo = tempo;
+    }
+
+    @Override
+    public void loadPattern(Pattern pattern, PcmSample[] sounds) {
+        beatMatrix.load(pattern, sounds);
+        updateVolume(pattern.getVolume());
+        updateTempo(pattern.getTempo());
+    }
+
+    @Override
+    public void replaceSounds(PcmSample[] from, PcmSample[] to) {
+        beatMatrix.replace(from, to);
+    }
+
+    @Override
+    public Tempo getTempo() {
+        return tempo;
+    }
+
+    @Override
+    public CommandQueue getCommands() {
+        return commands;
+    }
+
+    @Override
+    public void applyCommands() {
+        commands.drain(applyCommand);
+    }
+
+    @Override
+    public Bouncer.Result bounce(File file, int bars) throws IOException {
+        return new Bouncer(this).bounce(file, bars);
+    }
+
+    @Override
+    public void close() {
+        engine.stop();
+    }
+
+    /*
+     * Applies one command from the queue.
+     */
+    private void apply(EngineCommand command) {
+        switch(command.type) {
+            case ADD:
+                for(int beat : command.beats) {
+                    addSoundToMatrix(beat, command.sound);
+                }
+                break;
+            case REMOVE:
+                for(int beat : command.beats) {
+                    removeSoundFromMatrix(beat, command.sound);
+                }
+                break;
+            case CLEAR:
+                clearMatrix();
+                break;
+            case VOLUME:
+                updateVolume(command.value);
+                break;
+            case TEMPO:
+                updateTempo(command.tempo);
+                break;
+            case LOAD:
+                loadPattern(command.pattern, command.sounds);
+                break;
+            case REPLACE:
+                replaceSounds(command.sounds, command.replacements);
+                break;
+            case RELEASE:
+                bank.release(command.sound);
+                break;
+        }
+        command.sound = null;
+        command.beats = null;
+        command.tempo = null;
+        command.pattern = null;
+        command.sounds = null;
+        command.replacements = null;
+    }
+
+    /**
+     * Starts every sound on a beat at the same frame.
+     * @param beat The beat to play.
+     * @param target The engine to play it on; the live engine, or one that is rendering offline.
+     * @param frame The frame to start the sounds on.
+     */
+    public void triggerBeat(int beat, MixEngine target, long frame) {
+        BeatMatrix.Snapshot matrix = beatMatrix.snapshot();
+        for(int voice : matrix.voicesAt(beat)){
+            PcmSample sound = matrix.sound(voice);
+            target.trigger(sound, (float) volume, frame, mixSettings.cuts(sound));
+        }
+    }
+
+    /**
+     * Starts every sound a song has on a step at the same frame, moving the cursor past them. Events on earlier
+     * steps that were skipped are dropped.
+     * @param song The song's cursor.
+     * @param step The step, counted from the start of the song.
+     * @param target The engine to play it on; the live engine, or one that is rendering offline.
+     * @param frame The frame to start the sounds on.
+     */
+    public void triggerEvents(Timeline.Cursor song, long step, MixEngine target, long frame) {
+        while(song.nextStep() < step) {
+            song.advance();
+        }
+        while(song.nextStep() == step) {
+            PcmSample sound = song.nextSound();
+            target.trigger(sound, (float) volume, frame, mixSettings.cuts(sound));
+            song.advance();
+        }
+    }
+
+    /**
+     * Get the beat matrix.
+     * @return The matrix of which sounds play on which beats.
+     */
+    public BeatMatrix getBeatMatrix() {
+        return beatMatrix;
+    }
+
+    @Override
+    public SampleBank getSampleBank() {
+        return bank;
+    }
+
+    /**
+     * Get the live engine's voices, to set polyphony limits and the steal policy.
+     * @return The voice pool used for live playback.
+     */
+    public VoicePool getVoices() {
+        return engine.getVoices();
+    }
+
+    /**
+     * Get the mix settings, shared by the live engine and offline renders.
+     * @return Which track each sound plays on, and the tracks' and buses' effects.
+     */
+    public MixSettings getMixSettings() {
+        return mixSettings;
+    }
+
+    /**
+     * Get the engine the model plays through.
+     * @return The live MixEngine.
+     */
+    public MixEngine getMixEngine() {
+        return engine;
+    }
+
+    /**
+     * Get the sample rate the model plays at.
+     * @return The number of frames per second.
+     */
+    public float getSampleRate() {
+        return engine.getSampleRate();
+    }
 }
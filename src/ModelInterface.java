@@ -1,17 +1,21 @@
-import javafx.scene.media.AudioClip;
+import java.io.File;
+import java.io.IOException;
 
 
-/** Interface for Model class*/
+/** Interface for Model class. Pure Java, so the engine runs without JavaFX; sounds are PcmSample handles. */
 public interface ModelInterface {
 
     /** Add a particular sound to play matrix */
-    void addAudioClipToMatrix(int beat, AudioClip m);
+    void addSoundToMatrix(int beat, PcmSample m);
 
     /** Remove a particular sound to play matrix */
-    boolean removeAudioClipFromMatrix(int beat, AudioClip m);
+    boolean removeSoundFromMatrix(int beat, PcmSample m);
 
-    /** Play a sample clip m */
-    void playSample(AudioClip m);
+    /** Play a sample m right now */
+    void playSample(PcmSample m);
+
+    /** Play a sample m so it is heard at a System.nanoTime() deadline, or as soon as possible if that has passed */
+    void playSample(PcmSample m, long deadlineNanos);
 
     /** Clear all sounds from the matrix */
     void clearMatrix();
@@ -19,7 +23,40 @@ public interface ModelInterface {
     /** Play a sound at a particular beat */
     void playBeat(int beat);
 
-    /** As the volume slider changes, change the volume the model is playing audio clips at */
+    /** Play the sounds at a particular beat so they are heard at a System.nanoTime() deadline */
+    void playBeat(int beat, long deadlineNanos);
+
+    /** Play a song's events on a step, from its start, so they are heard at a System.nanoTime() deadline */
+    void playEvents(Timeline.Cursor song, long step, long deadlineNanos);
+
+    /** As the volume slider changes, change the volume the model is playing sounds at */
     void updateVolume(double newVolume);
 
+    /** Replace the beats, volume and tempo with a saved pattern */
+    void loadPattern(Pattern pattern, PcmSample[] sounds);
+
+    /** Move every beat of some sounds to other sounds at once, e.g. when the melody changes key */
+    void replaceSounds(PcmSample[] from, PcmSample[] to);
+
+    /** Change the tempo, used when rendering the beats offline */
+    void updateTempo(Tempo tempo);
+
+    /** Get the tempo */
+    Tempo getTempo();
+
+    /** Get the queue that changes from the UI are posted to */
+    CommandQueue getCommands();
+
+    /** Apply every change waiting in the command queue. Only called by the playback thread */
+    void applyCommands();
+
+    /** Render a number of bars of the current beats to a .wav file, as fast as possible */
+    Bouncer.Result bounce(File file, int bars) throws IOException;
+
+    /** Get the bank the model's sounds are loaded into */
+    SampleBank getSampleBank();
+
+    /** Stop playing and release the audio output */
+    void close();
+
 }
@@ -0,0 +1,119 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+
+/**
+ * A bounded, lock-free queue from any number of producer threads to one consumer thread, built on a ring of
+ * preallocated slot objects so that nothing is allocated per message. A producer claims a slot, fills it in, and
+ * publishes it; the consumer drains published slots in order and hands them back for reuse.
+ *
+ * Each slot carries a sequence number saying whose turn it is (the scheme from Dmitry Vyukov's bounded queue), so
+ * producers only contend on a single compare-and-set of the tail.
+ * @param <T> The slot type. Slots are mutable and reused; the consumer must copy out anything it keeps.
+ */
+public class MpscRing<T> {
+
+    /** Processes drained slots */
+    public interface Handler<T> {
+        /**
+         * Called on the consumer thread for each published slot, oldest first.
+         * @param slot The slot. Only valid until this call returns.
+         */
+        void handle(T slot);
+    }
+
+    //Instance variables
+    private final Object[] slots;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private long head;
+
+    /**
+     * Instantiate an empty MpscRing.
+     * @param capacity The number of slots, rounded up to a power of two.
+     * @param factory Makes the slot objects, once each, up front.
+     */
+    public MpscRing(int capacity, Supplier<T> factory) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        slots = new Object[size];
+        sequences = new AtomicLongArray(size);
+        mask = size - 1;
+        for(int i = 0; i < size; i++) {
+            slots[i] = factory.get();
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Claims the next free slot. Must be followed by publish with the same sequence.
+     * @return The sequence of the claimed slot, or -1 if the ring is full.
+     */
+    public long claim() {
+        while(true) {
+            long pos = tail.get();
+            long diff = sequences.get((int) pos & mask) - pos;
+            if(diff == 0) {
+                if(tail.compareAndSet(pos, pos + 1)) {
+                    return pos;
+                }
+            } else if(diff < 0) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Gets a claimed slot to fill in.
+     * @param sequence A sequence returned by claim.
+     * @return The slot object.
+     */
+    @SuppressWarnings("unchecked")
+    public T slot(long sequence) {
+        return (T) slots[(int) sequence & mask];
+    }
+
+    /**
+     * Makes a filled-in slot visible to the consumer.
+     * @param sequence A sequence returned by claim.
+     */
+    public void publish(long sequence) {
+        sequences.set((int) sequence & mask, sequence + 1);
+    }
+
+    /**
+     * Hands every published slot to a handler, in order, and frees the slots. Only one thread may drain.
+     * @param handler Processes each slot.
+     * @return The number of slots drained.
+     */
+    @SuppressWarnings("unchecked")
+    public int drain(Handler<T> handler) {
+        int drained = 0;
+        while(true) {
+            int index = (int) head & mask;
+            if(sequences.get(index) != head + 1) {
+                return drained;
+            }
+            handler.handle((T) slots[index]);
+            sequences.set(index, head + slots.length);
+            head++;
+            drained++;
+        }
+    }
+
+    /**
+     * Get roughly how many slots are waiting to be drained.
+     * @return The number of claimed slots not yet drained.
+     */
+    public int size() {
+        return (int) Math.max(0, tail.get() - head);
+    }
+
+    /**
+     * Get the ring's size.
+     * @return The number of slots.
+     */
+    public int capacity() {
+        return slots.length;
+    }
+}
@@ -0,0 +1,101 @@
+import javax.sound.sampled.AudioFormat;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An AudioSink that throws the audio away, but still only accepts it at real-time speed so the engine keeps time
+ * exactly as it would with a sound card. Used when running headless. Opened with a buffer, it queues that many
+ * frames ahead of what would be playing before write blocks; otherwise write blocks until the audio would have been
+ * played.
+ *
+ * A block written more than a block's length after the audio before it would have finished counts as an underrun,
+ * and the clock restarts from the late block, as a sound card's would.
+ */
+public class NullSink implements AudioSink {
+
+    //Instance variables
+    private final boolean realTime;
+    private final AtomicLong underruns = new AtomicLong();
+    private long nanosPerFrame100;
+    private int frameSize;
+    private int bufferFrames;
+    private volatile long startNanos;
+    private volatile long framesWritten;
+
+    /**
+     * Instantiate a NullSink that is paced in real time.
+     */
+    public NullSink() {
+        this(true);
+    }
+
+    /**
+     * Instantiate a NullSink.
+     * @param realTime True to make write block until the audio would have been played, false to return immediately.
+     */
+    public NullSink(boolean realTime) {
+        this.realTime = realTime;
+    }
+
+    @Override
+    public void open(AudioFormat format) {
+        open(format, 0);
+    }
+
+    @Override
+    public void open(AudioFormat format, int bufferFrames) {
+        this.bufferFrames = bufferFrames;
+        frameSize = format.getFrameSize();
+        nanosPerFrame100 = (long) (100_000_000_000L / format.getFrameRate());
+        startNanos = System.nanoTime();
+        framesWritten = 0;
+    }
+
+    @Override
+    public void write(byte[] data, int len) {
+        int frames = len / frameSize;
+        if(realTime && framesWritten > 0) {
+            long late = System.nanoTime() - (startNanos + framesWritten * nanosPerFrame100 / 100);
+            if(late > frames * nanosPerFrame100 / 100) {
+                underruns.incrementAndGet();
+                startNanos += late;
+            }
+        }
+        framesWritten += frames;
+        if(realTime) {
+            pace(startNanos + (framesWritten - bufferFrames) * nanosPerFrame100 / 100);
+        }
+    }
+
+    @Override
+    public long getUnderruns() {
+        return underruns.get();
+    }
+
+    @Override
+    public int getQueuedFrames() {
+        if(!realTime) {
+            return -1;
+        }
+        long played = (System.nanoTime() - startNanos) * 100 / nanosPerFrame100;
+        return (int) Math.max(0, framesWritten - played);
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /*
+     * Sleeps until the given System.nanoTime() deadline.
+     */
+    static void pace(long deadline) {
+        long remaining;
+        while((remaining = deadline - System.nanoTime()) > 0) {
+            try {
+                Thread.sleep(remaining / 1_000_000, (int) (remaining % 1_000_000));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
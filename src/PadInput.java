@@ -0,0 +1,108 @@
+/**
+ * The fast path from a pad or key to the engine. A hit is stamped with System.nanoTime() by whoever saw the input
+ * event and goes straight to the MixEngine's trigger ring, before the view is touched, so nothing on the UI thread
+ * sits between the input and the sound.
+ *
+ * Each hit is heard as soon as it can be: on the first frame of the next block the render thread mixes, at the time
+ * the engine's clock says that frame comes out of the sink, behind the audio already queued there. How long a hit
+ * waits for that block depends on where in the block period it lands, so the wait varies by up to a block. Hits
+ * are only held back to a steadier time when the wait would vary by more than the allowed jitter: each is then
+ * heard no sooner than the render thread's output latency bound, less the jitter, after it was stamped. The bound
+ * is the longest any hit waits for a block, so with no jitter allowed every hit waits the same time. With quantise
+ * on, hits are instead moved to the next sixteenth note on the transport's grid, so they land
+ * exactly with the beats the transport plays. Every hit is also offered to a PatternRecorder, which records it into
+ * the pattern when armed.
+ */
+public class PadInput {
+
+    //Instance variables
+    private final ModelInterface model;
+    private final Transport transport;
+    private final PatternRecorder recorder;
+    private final MixEngine engine;
+    private volatile long maxJitterNanos;
+    private volatile boolean quantise;
+
+    /**
+     * Instantiate a PadInput.
+     * @param model The model to play the sounds through.
+     * @param transport The transport whose grid hits are quantised to.
+     * @param engine The engine the model plays through, for its clock and output latency. The allowed jitter starts
+     *               at one of its blocks.
+     * @param recorder The recorder hits are offered to.
+     */
+    public PadInput(ModelInterface model, Transport transport, MixEngine engine, PatternRecorder recorder) {
+        this.model = model;
+        this.transport = transport;
+        this.recorder = recorder;
+        this.engine = engine;
+        this.maxJitterNanos = (long) (engine.getBlockFrames() * 1e9 / engine.getSampleRate());
+    }
+
+    /**
+     * Plays a pad. Lock-free and allocation-free, so it can be called straight from an input handler. A hit that
+     * comes too late for its time, e.g. one stamped long before it got here, plays on the next frame that can still
+     * be mixed.
+     * @param sound The pad's sound.
+     * @param pressedNanos The System.nanoTime() of the input event.
+     * @return The System.nanoTime() the sound is due to be heard at.
+     */
+    public long hit(PcmSample sound, long pressedNanos) {
+        long due = engine.nanosAt(engine.nextFrame());
+        RenderThread render = engine.getRenderThread();
+        if(render != null) {
+            due = Math.max(due, pressedNanos + render.getLatencyBoundNanos() - maxJitterNanos);
+        }
+        if(quantise) {
+            due = transport.nextSixteenth(due);
+        }
+        model.playSample(sound, due);
+        recorder.capture(sound, due);
+        return due;
+    }
+
+    /**
+     * Get the recorder.
+     * @return The recorder every hit is offered to.
+     */
+    public PatternRecorder getRecorder() {
+        return recorder;
+    }
+
+    /**
+     * Sets how much the key-to-sound latency may vary from hit to hit. Hits that would wait less than the output
+     * latency bound less this are held back to it.
+     * @param nanos The jitter allowed. 0 makes every hit wait the latency bound; a block or more plays every hit on
+     *              the next block unless the latency has just dropped below its recent peak.
+     */
+    public void setMaxJitter(long nanos) {
+        if(nanos < 0) {
+            throw new IllegalArgumentException("Bad jitter " + nanos);
+        }
+        this.maxJitterNanos = nanos;
+    }
+
+    /**
+     * Get the jitter allowed.
+     * @return The most the key-to-sound latency may vary from hit to hit, in nanoseconds.
+     */
+    public long getMaxJitter() {
+        return maxJitterNanos;
+    }
+
+    /**
+     * Sets whether hits are moved to the next sixteenth note.
+     * @param quantise True to quantise, false to play hits as they come.
+     */
+    public void setQuantise(boolean quantise) {
+        this.quantise = quantise;
+    }
+
+    /**
+     * Are hits quantised?
+     * @return True if hits are moved to the next sixteenth note.
+     */
+    public boolean isQuantise() {
+        return quantise;
+    }
+}
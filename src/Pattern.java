@@ -0,0 +1,148 @@
+import java.util.Arrays;
+
+/**
+ * A saved beat: which sounds play on which steps, plus the tempo and volume. Sounds are referred to by name and
+ * content hash rather than held directly, so a pattern can be stored and later resolved against whatever
+ * SampleBank is loaded. Each track's steps are kept as bit words, one bit per step. Immutable.
+ */
+public class Pattern {
+
+    //Instance variables
+    private final int steps;
+    private final Tempo tempo;
+    private final double volume;
+    private final String[] names;
+    private final String[] hashes;
+    private final long[][] masks;
+
+    /**
+     * Instantiate a Pattern.
+     * @param steps The number of steps.
+     * @param tempo The tempo.
+     * @param volume The volume, from 0 to 100.
+     * @param names The name of each track's sound, usually the URI it was loaded from.
+     * @param hashes The content hash of each track's sound.
+     * @param masks The steps each track plays on, as (steps + 63) / 64 bit words per track. Copied.
+     */
+    public Pattern(int steps, Tempo tempo, double volume, String[] names, String[] hashes, long[][] masks) {
+        if(names.length != hashes.length || names.length != masks.length) {
+            throw new IllegalArgumentException("track arrays differ in length");
+        }
+        this.steps = steps;
+        this.tempo = tempo;
+        this.volume = volume;
+        this.names = names.clone();
+        this.hashes = hashes.clone();
+        this.masks = new long[masks.length][];
+        for(int track = 0; track < masks.length; track++) {
+            this.masks[track] = Arrays.copyOf(masks[track], words(steps));
+        }
+    }
+
+    /**
+     * Get the pattern length.
+     * @return The number of steps.
+     */
+    public int getSteps() {
+        return steps;
+    }
+
+    /**
+     * Get the tempo.
+     * @return The tempo the pattern was saved at.
+     */
+    public Tempo getTempo() {
+        return tempo;
+    }
+
+    /**
+     * Get the volume.
+     * @return The volume, from 0 to 100.
+     */
+    public double getVolume() {
+        return volume;
+    }
+
+    /**
+     * Get the number of tracks.
+     * @return The number of sounds in the pattern.
+     */
+    public int getTracks() {
+        return names.length;
+    }
+
+    /**
+     * Get the name of a track's sound.
+     * @param track The track.
+     * @return The name, usually the URI the sound was loaded from.
+     */
+    public String getName(int track) {
+        return names[track];
+    }
+
+    /**
+     * Get the content hash of a track's sound.
+     * @param track The track.
+     * @return The hex SHA-256 of the sound's file.
+     */
+    public String getHash(int track) {
+        return hashes[track];
+    }
+
+    /**
+     * Get a bit word of a track's steps.
+     * @param track The track.
+     * @param word The word, from 0 to (getSteps() + 63) / 64 - 1.
+     * @return Bit i is set if the track plays on step word * 64 + i.
+     */
+    public long getWord(int track, int word) {
+        return masks[track][word];
+    }
+
+    /**
+     * Does a track play on a step?
+     * @param track The track.
+     * @param step The step.
+     * @return True if it does.
+     */
+    public boolean isSet(int track, int step) {
+        return (masks[track][step >> 6] & (1L << step)) != 0;
+    }
+
+    /**
+     * Finds the sound for every track in a bank, loading it from its name if no sound with the same contents is
+     * already loaded. Notes of a PitchedSample are made again from their reference sound, and SynthNotes from
+     * their names.
+     * @param bank The bank to look in.
+     * @return The sound for each track, or null for tracks whose sound can't be found.
+     */
+    public PcmSample[] resolve(SampleBank bank) {
+        PcmSample[] sounds = new PcmSample[names.length];
+        for(int track = 0; track < names.length; track++) {
+            sounds[track] = SynthNote.resolve(names[track]);
+            if(sounds[track] != null) {
+                continue;
+            }
+            PcmSample sound = bank.findByHash(hashes[track]);
+            if(sound == null) {
+                try {
+                    sound = bank.acquire(PitchedSample.referenceName(names[track]));
+                } catch (RuntimeException e) {
+                    System.err.println("pattern sound missing: " + names[track]);
+                    continue;
+                }
+            }
+            sounds[track] = PitchedSample.resolve(names[track], sound);
+        }
+        return sounds;
+    }
+
+    /**
+     * Get the number of bit words needed for some steps.
+     * @param steps The number of steps.
+     * @return The number of 64-bit words.
+     */
+    static int words(int steps) {
+        return (steps + 63) / 64;
+    }
+}
@@ -0,0 +1,133 @@
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads and writes Patterns in a compact, versioned binary format. A pattern is a fixed header followed by one
+ * record per track:
+ *
+ * <pre>
+ * int    magic "BPAT"
+ * short  version
+ * short  steps
+ * double bpm
+ * short  steps per beat
+ * short  reserved, 0
+ * float  volume
+ * short  tracks
+ * per track:
+ *   byte[32]  SHA-256 of the sound's file
+ *   short     length of the name, then the name in UTF-8
+ *   long[]    (steps + 63) / 64 bit words, bit i of word w set if the track plays on step w * 64 + i
+ * </pre>
+ *
+ * All numbers are big-endian. A 16-step pattern with 8 tracks named by short URIs fits in well under a kilobyte.
+ */
+public final class PatternCodec {
+
+    //Instance variables
+    public static final int MAGIC = 0x42504154;
+    public static final short VERSION = 1;
+    private static final int HEADER_BYTES = 26;
+    private static final int HASH_BYTES = 32;
+
+    private PatternCodec() {
+    }
+
+    /**
+     * Get the size of a pattern once encoded.
+     * @param pattern The pattern.
+     * @return The number of bytes encode will write.
+     */
+    public static int encodedSize(Pattern pattern) {
+        int size = HEADER_BYTES;
+        for(int track = 0; track < pattern.getTracks(); track++) {
+            size += HASH_BYTES + 2 + utf8(pattern.getName(track)).length + Pattern.words(pattern.getSteps()) * 8;
+        }
+        return size;
+    }
+
+    /**
+     * Writes a pattern at the buffer's position, advancing it.
+     * @param pattern The pattern.
+     * @param out Where to write. Must have encodedSize(pattern) bytes remaining.
+     */
+    public static void encode(Pattern pattern, ByteBuffer out) {
+        out.putInt(MAGIC);
+        out.putShort(VERSION);
+        out.putShort((short) pattern.getSteps());
+        out.putDouble(pattern.getTempo().getBpm());
+        out.putShort((short) pattern.getTempo().getStepsPerBeat());
+        out.putShort((short) 0);
+        out.putFloat((float) pattern.getVolume());
+        out.putShort((short) pattern.getTracks());
+        int words = Pattern.words(pattern.getSteps());
+        for(int track = 0; track < pattern.getTracks(); track++) {
+            String hash = pattern.getHash(track);
+            for(int i = 0; i < HASH_BYTES; i++) {
+                out.put((byte) Integer.parseInt(hash, i * 2, i * 2 + 2, 16));
+            }
+            byte[] name = utf8(pattern.getName(track));
+            out.putShort((short) name.length);
+            out.put(name);
+            for(int word = 0; word < words; word++) {
+                out.putLong(pattern.getWord(track, word));
+            }
+        }
+    }
+
+    /**
+     * Reads a pattern from the buffer's position, advancing it.
+     * @param in Where to read.
+     * @return The pattern.
+     * @throws IOException If the bytes are not a pattern, are truncated or are from a newer version.
+     */
+    public static Pattern decode(ByteBuffer in) throws IOException {
+        try {
+            if(in.getInt() != MAGIC) {
+                throw new IOException("not a pattern");
+            }
+            short version = in.getShort();
+            if(version > VERSION) {
+                throw new IOException("unsupported pattern version " + version);
+            }
+            int steps = in.getShort();
+            double bpm = in.getDouble();
+            int stepsPerBeat = in.getShort();
+            in.getShort();
+            float volume = in.getFloat();
+            int tracks = in.getShort();
+            int words = Pattern.words(steps);
+            String[] names = new String[tracks];
+            String[] hashes = new String[tracks];
+            long[][] masks = new long[tracks][words];
+            StringBuilder hex = new StringBuilder(HASH_BYTES * 2);
+            for(int track = 0; track < tracks; track++) {
+                hex.setLength(0);
+                for(int i = 0; i < HASH_BYTES; i++) {
+                    int b = in.get() & 0xff;
+                    hex.append(Character.forDigit(b >> 4, 16));
+                    hex.append(Character.forDigit(b & 0xf, 16));
+                }
+                hashes[track] = hex.toString();
+                byte[] name = new byte[in.getShort() & 0xffff];
+                in.get(name);
+                names[track] = new String(name, StandardCharsets.UTF_8);
+                for(int word = 0; word < words; word++) {
+                    masks[track][word] = in.getLong();
+                }
+            }
+            return new Pattern(steps, new Tempo(bpm, stepsPerBeat), volume, names, hashes, masks);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("truncated pattern", e);
+        }
+    }
+
+    /*
+     * Encodes a string as UTF-8.
+     */
+    private static byte[] utf8(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,286 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Saved patterns, kept by name in a single memory-mapped file. The file starts with a header and an open
+ * addressing hash index of fixed-size slots, followed by the records, each a name and a pattern in PatternCodec
+ * format. Finding a pattern hashes its name, probes the index in the mapped file and decodes just that one record,
+ * so it takes microseconds however many patterns are saved and nothing is parsed when the library is opened.
+ *
+ * <pre>
+ * header: int magic "BPLB", int version, int slots, int count, long end, long reserved
+ * slot:   long record offset (0 if empty), int record length, int name hash
+ * record: short name length, name in UTF-8, pattern
+ * </pre>
+ *
+ * Saving a name again appends a new record and points the index at it. The index doubles, rewriting the file,
+ * when it becomes half full.
+ */
+public class PatternLibrary implements AutoCloseable {
+
+    //Instance variables
+    public static final int MAGIC = 0x42504c42;
+    public static final int VERSION = 1;
+    public static final int DEFAULT_SLOTS = 1 << 16;
+    private static final int HEADER_BYTES = 32;
+    private static final int SLOT_BYTES = 16;
+    private final Path path;
+    private FileChannel channel;
+    private MappedByteBuffer map;
+    private int slots;
+    private int count;
+    private long end;
+
+    /**
+     * Opens a library, creating an empty one if the file does not exist.
+     * @param path The library file.
+     * @throws IOException If the file can't be opened or is not a library.
+     */
+    public PatternLibrary(Path path) throws IOException {
+        this(path, DEFAULT_SLOTS);
+    }
+
+    /**
+     * Opens a library, creating an empty one if the file does not exist.
+     * @param path The library file.
+     * @param slots The index size for a new library, a power of two. Holds up to half that many patterns before
+     *              the index has to grow.
+     * @throws IOException If the file can't be opened or is not a library.
+     */
+    public PatternLibrary(Path path, int slots) throws IOException {
+        if(Integer.bitCount(slots) != 1) {
+            throw new IllegalArgumentException("slots must be a power of two: " + slots);
+        }
+        this.path = path;
+        open(slots);
+    }
+
+    /**
+     * Finds a pattern by name.
+     * @param name The name it was saved under.
+     * @return The pattern, or null if there is none by that name.
+     * @throws IOException If the record is corrupt.
+     */
+    public synchronized Pattern load(String name) throws IOException {
+        byte[] key = utf8(name);
+        int slot = find(key, hash(key));
+        long offset = map.getLong(slotAt(slot));
+        if(offset == 0) {
+            return null;
+        }
+        ByteBuffer record = map.duplicate();
+        record.position((int) offset + 2 + key.length);
+        return PatternCodec.decode(record);
+    }
+
+    /**
+     * Saves a pattern under a name, replacing any pattern already saved under it.
+     * @param name The name.
+     * @param pattern The pattern.
+     * @throws IOException If the file can't be grown.
+     */
+    public synchronized void save(String name, Pattern pattern) throws IOException {
+        if(2 * (count + 1) > slots) {
+            rehash(slots * 2);
+        }
+        byte[] key = utf8(name);
+        int hash = hash(key);
+        int length = 2 + key.length + PatternCodec.encodedSize(pattern);
+        reserve(end + length);
+        ByteBuffer record = map.duplicate();
+        record.position((int) end);
+        record.putShort((short) key.length);
+        record.put(key);
+        PatternCodec.encode(pattern, record);
+
+        int slot = find(key, hash);
+        int at = slotAt(slot);
+        if(map.getLong(at) == 0) {
+            count++;
+        }
+        map.putLong(at, end);
+        map.putInt(at + 8, length);
+        map.putInt(at + 12, hash);
+        end += length;
+        writeHeader();
+    }
+
+    /**
+     * Get the names of every saved pattern.
+     * @return The names, in index order.
+     */
+    public synchronized List<String> names() {
+        List<String> names = new ArrayList<>(count);
+        for(int slot = 0; slot < slots; slot++) {
+            long offset = map.getLong(slotAt(slot));
+            if(offset != 0) {
+                names.add(nameAt(offset));
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Get the number of saved patterns.
+     * @return The count.
+     */
+    public synchronized int size() {
+        return count;
+    }
+
+    /**
+     * Flushes the library to disk and closes it.
+     * @throws IOException If the file can't be closed.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        map.force();
+        channel.close();
+    }
+
+    /*
+     * Maps the file, writing an empty header and index first if it is new.
+     */
+    private void open(int newSlots) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        if(channel.size() == 0) {
+            slots = newSlots;
+            count = 0;
+            end = HEADER_BYTES + (long) slots * SLOT_BYTES;
+            map = channel.map(FileChannel.MapMode.READ_WRITE, 0, end);
+            writeHeader();
+            return;
+        }
+        map = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        if(map.getInt(0) != MAGIC) {
+            channel.close();
+            throw new IOException(path + " is not a pattern library");
+        }
+        if(map.getInt(4) > VERSION) {
+            channel.close();
+            throw new IOException("unsupported pattern library version " + map.getInt(4));
+        }
+        slots = map.getInt(8);
+        count = map.getInt(12);
+        end = map.getLong(16);
+    }
+
+    /*
+     * Finds the slot holding a name, or the empty slot it would go in.
+     */
+    private int find(byte[] key, int hash) {
+        int mask = slots - 1;
+        for(int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int at = slotAt(slot);
+            long offset = map.getLong(at);
+            if(offset == 0 || (map.getInt(at + 12) == hash && nameEquals(offset, key))) {
+                return slot;
+            }
+        }
+    }
+
+    /*
+     * Compares the name of the record at an offset with a key, without decoding it.
+     */
+    private boolean nameEquals(long offset, byte[] key) {
+        int at = (int) offset;
+        if((map.getShort(at) & 0xffff) != key.length) {
+            return false;
+        }
+        for(int i = 0; i < key.length; i++) {
+            if(map.get(at + 2 + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * Reads the name of the record at an offset.
+     */
+    private String nameAt(long offset) {
+        byte[] name = new byte[map.getShort((int) offset) & 0xffff];
+        map.get((int) offset + 2, name);
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    /*
+     * Makes sure the mapping covers the file up to a size, growing both by at least half.
+     */
+    private void reserve(long size) throws IOException {
+        if(size <= map.capacity()) {
+            return;
+        }
+        long grown = Math.max(size, map.capacity() + map.capacity() / 2);
+        if(grown > Integer.MAX_VALUE) {
+            throw new IOException("pattern library full");
+        }
+        map = channel.map(FileChannel.MapMode.READ_WRITE, 0, grown);
+    }
+
+    /*
+     * Rewrites the library with a bigger index, keeping only the latest record for each name.
+     */
+    private void rehash(int newSlots) throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        Files.deleteIfExists(temp);
+        try(PatternLibrary bigger = new PatternLibrary(temp, newSlots)) {
+            for(int slot = 0; slot < slots; slot++) {
+                long offset = map.getLong(slotAt(slot));
+                if(offset != 0) {
+                    String name = nameAt(offset);
+                    bigger.save(name, load(name));
+                }
+            }
+        }
+        close();
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+        open(newSlots);
+    }
+
+    /*
+     * Writes the header fields.
+     */
+    private void writeHeader() {
+        map.putInt(0, MAGIC);
+        map.putInt(4, VERSION);
+        map.putInt(8, slots);
+        map.putInt(12, count);
+        map.putLong(16, end);
+    }
+
+    /*
+     * Get the file offset of an index slot.
+     */
+    private static int slotAt(int slot) {
+        return HEADER_BYTES + slot * SLOT_BYTES;
+    }
+
+    /*
+     * Hashes a name, spreading the bits so the low ones pick the slot.
+     */
+    private static int hash(byte[] key) {
+        int hash = 0x811c9dc5;
+        for(byte b : key) {
+            hash = (hash ^ (b & 0xff)) * 0x01000193;
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    /*
+     * Encodes a string as UTF-8.
+     */
+    private static byte[] utf8(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,181 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records pad hits into the pattern while it plays. When armed, each hit is placed on the transport's grid from the
+ * time it is heard and overdubbed onto that step of the matrix through the CommandQueue, so it is merged in at a
+ * step boundary and playback never pauses. Capturing a hit is lock-free and allocation-free; hits are passed to the
+ * transport thread through a ring of preallocated slots.
+ *
+ * The matrix only holds whole steps, so quantise strength sets how early a hit can be and still be pulled forward
+ * onto the step after it: at 1 every hit goes to the nearest step, at 0 every hit goes to the step it was played
+ * in. A hit pulled forward onto the step that is about to play is held back until that step has gone by, so the
+ * matrix doesn't play it again straight after it was heard live.
+ */
+public class PatternRecorder implements Transport.Listener {
+
+    //Instance variables
+    public static final int PENDING = 256;
+    private final Transport transport;
+    private final CommandQueue commands;
+    private final int steps;
+    private final int[][] beats;
+    private final MpscRing<Hit> pending = new MpscRing<>(PENDING, Hit::new);
+    private final MpscRing.Handler<Hit> take = this::take;
+    private final PcmSample[] heldSounds = new PcmSample[PENDING];
+    private final int[] heldSteps = new int[PENDING];
+    private final AtomicLong recorded = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private int held;
+    private int upcoming;
+    private volatile boolean armed;
+    private volatile double strength = 1;
+
+    /**
+     * Instantiate a disarmed PatternRecorder. It must be added to the transport as a listener.
+     * @param transport The transport whose grid hits are placed on.
+     * @param commands The queue the recorded steps are posted to.
+     * @param steps The number of steps in the matrix.
+     */
+    public PatternRecorder(Transport transport, CommandQueue commands, int steps) {
+        this.transport = transport;
+        this.commands = commands;
+        this.steps = steps;
+        this.beats = new int[steps][];
+        for(int step = 0; step < steps; step++) {
+            beats[step] = new int[]{step};
+        }
+    }
+
+    /**
+     * Records a hit if armed. Lock-free and allocation-free.
+     * @param sound The sound that was hit.
+     * @param heardNanos The System.nanoTime() the hit is heard at.
+     * @return The step it was recorded on, or -1 if it wasn't recorded because the recorder is disarmed, the
+     *         transport hasn't played yet, or too many hits are waiting.
+     */
+    public int capture(PcmSample sound, long heardNanos) {
+        if(!armed) {
+            return -1;
+        }
+        double position = transport.stepAt(heardNanos);
+        if(position < 0) {
+            return -1;
+        }
+        int step = (int) (position + strength / 2) % steps;
+        long seq = pending.claim();
+        if(seq < 0) {
+            dropped.incrementAndGet();
+            return -1;
+        }
+        Hit hit = pending.slot(seq);
+        hit.sound = sound;
+        hit.step = step;
+        pending.publish(seq);
+        return step;
+    }
+
+    /**
+     * Posts the hits captured since the last step, holding back any for the step after this one.
+     * @param step The step just sent to the model.
+     * @param deadlineNanos When it will be heard.
+     */
+    @Override
+    public void onStep(int step, long deadlineNanos) {
+        upcoming = (step + 1) % steps;
+        int kept = 0;
+        for(int i = 0; i < held; i++) {
+            if(heldSteps[i] == upcoming) {
+                heldSteps[kept] = heldSteps[i];
+                heldSounds[kept++] = heldSounds[i];
+            } else {
+                post(heldSteps[i], heldSounds[i]);
+            }
+        }
+        for(int i = kept; i < held; i++) {
+            heldSounds[i] = null;
+        }
+        held = kept;
+        pending.drain(take);
+    }
+
+    /**
+     * Arms or disarms recording.
+     * @param armed True to record hits.
+     */
+    public void setArmed(boolean armed) {
+        this.armed = armed;
+    }
+
+    /**
+     * Is the recorder armed?
+     * @return True if hits are being recorded.
+     */
+    public boolean isArmed() {
+        return armed;
+    }
+
+    /**
+     * Sets how strongly hits are pulled onto the next step.
+     * @param strength From 0, every hit on the step it was played in, to 1, every hit on the nearest step.
+     */
+    public void setStrength(double strength) {
+        this.strength = Math.max(0, Math.min(1, strength));
+    }
+
+    /**
+     * Get the quantise strength.
+     * @return From 0 to 1.
+     */
+    public double getStrength() {
+        return strength;
+    }
+
+    /**
+     * Get the number of hits posted to the pattern.
+     * @return The count, including hits that landed where the sound already was.
+     */
+    public long getRecorded() {
+        return recorded.get();
+    }
+
+    /**
+     * Get the number of hits lost because the transport had fallen too far behind to take them, or the command
+     * queue was full.
+     * @return The count.
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /*
+     * Posts a drained hit, or holds it if it is for the step about to be played.
+     */
+    private void take(Hit hit) {
+        if(hit.step == upcoming && held < heldSteps.length) {
+            heldSteps[held] = hit.step;
+            heldSounds[held++] = hit.sound;
+        } else {
+            post(hit.step, hit.sound);
+        }
+        hit.sound = null;
+    }
+
+    /*
+     * Overdubs a sound onto a step.
+     */
+    private void post(int step, PcmSample sound) {
+        if(commands.addSound(beats[step], sound)) {
+            recorded.incrementAndGet();
+        } else {
+            dropped.incrementAndGet();
+        }
+    }
+
+    /*
+     * A captured hit, passed from the input thread to the transport thread.
+     */
+    private static class Hit {
+        private PcmSample sound;
+        private int step;
+    }
+}
@@ -0,0 +1,154 @@
+/**
+ * Plays a Model's beat matrix by the sample clock rather than the wall clock: every call to render mixes one
+ * block, first triggering any steps whose exact frame falls inside it. Used wherever audio is produced by pulling
+ * blocks instead of by a live Transport, i.e. offline bounces and server sessions.
+ *
+ * The model's tempo is checked at every step boundary, so tempo changes take effect from the next step. A renderer
+ * can also act as the model's playback thread, applying its queued commands before each block, and can play a
+ * song's Timeline instead of looping the matrix, giving the model each section's tempo and volume as it starts.
+ */
+public class PatternRenderer {
+
+    //Instance variables
+    private final Model model;
+    private final MixEngine engine;
+    private final int stepsPerLoop;
+    private final boolean applyCommands;
+    private final long startFrame;
+    private Tempo tempo;
+    private double stepFrames;
+    private double anchorFrame;
+    private long anchorStep;
+    private long step;
+    private long nextStepFrame;
+    private volatile Timeline song;
+    private Timeline playing;
+    private Timeline.Cursor cursor;
+    private int section;
+    private long songStart;
+
+    /**
+     * Instantiate a PatternRenderer on an engine of its own, starting at step 0, frame 0. Use this when the model's
+     * own engine may be playing live.
+     * @param model The model whose beats should be played.
+     * @param applyCommands True if this renderer is the model's playback thread and should apply its queued
+     *                      commands, false if something else (e.g. a Transport) does that.
+     */
+    public PatternRenderer(Model model, boolean applyCommands) {
+        this(model, new MixEngine(model.getSampleRate(), MixEngine.BLOCK_FRAMES), applyCommands);
+    }
+
+    /**
+     * Instantiate a PatternRenderer that mixes on a given engine, starting at step 0 from the engine's next frame.
+     * A model that never plays live, such as a server session's, can be rendered on its own engine this way, so it
+     * needs no second one.
+     * @param model The model whose beats should be played.
+     * @param engine The engine to mix on. Must not be playing live, since the renderer pulls its blocks.
+     * @param applyCommands True if this renderer is the model's playback thread and should apply its queued
+     *                      commands, false if something else (e.g. a Transport) does that.
+     */
+    public PatternRenderer(Model model, MixEngine engine, boolean applyCommands) {
+        this.model = model;
+        this.applyCommands = applyCommands;
+        this.engine = engine;
+        engine.setMixSettings(model.getMixSettings());
+        this.stepsPerLoop = model.getBeatMatrix().getSteps();
+        this.tempo = model.getTempo();
+        this.stepFrames = tempo.stepFrames(engine.getSampleRate());
+        this.startFrame = engine.nextFrame();
+        this.anchorFrame = startFrame;
+        this.nextStepFrame = startFrame;
+    }
+
+    /**
+     * Mixes the next block, triggering the steps that start in it.
+     * @param out Where to put the block, as interleaved stereo floats. Must hold getBlockFrames() frames.
+     */
+    public void render(float[] out) {
+        if(applyCommands) {
+            model.applyCommands();
+        }
+        long blockEnd = engine.nextFrame() + engine.getBlockFrames();
+        while(nextStepFrame < blockEnd) {
+            Timeline next = song;
+            if(next != playing) {
+                playing = next;
+                cursor = next == null ? null : next.cursor();
+                section = -1;
+                songStart = step;
+            }
+            if(cursor != null) {
+                enterSection(step - songStart);
+                model.triggerEvents(cursor, step - songStart, engine, nextStepFrame);
+            } else {
+                model.triggerBeat((int) (step % stepsPerLoop), engine, nextStepFrame);
+            }
+            step++;
+            Tempo current = model.getTempo();
+            if(current != tempo) {
+                anchorFrame += (step - 1 - anchorStep) * stepFrames;
+                anchorStep = step - 1;
+                tempo = current;
+                stepFrames = current.stepFrames(engine.getSampleRate());
+            }
+            // Computed from the anchor each time so rounding never accumulates
+            nextStepFrame = Math.round(anchorFrame + (step - anchorStep) * stepFrames);
+        }
+        engine.render(out);
+    }
+
+    /**
+     * Plays a song from its start at the next step instead of looping the matrix. Each section sets the model's
+     * tempo and volume to its pattern's as it starts.
+     * @param newSong The compiled song, or null to go back to looping the matrix.
+     */
+    public void setSong(Timeline newSong) {
+        song = newSong;
+    }
+
+    /**
+     * Get the position.
+     * @return The number of frames rendered so far.
+     */
+    public long getFrame() {
+        return engine.nextFrame() - startFrame;
+    }
+
+    /**
+     * Get the number of steps triggered so far.
+     * @return The step count, which does not wrap around at the end of the loop.
+     */
+    public long getStep() {
+        return step;
+    }
+
+    /**
+     * Get the block size.
+     * @return The number of frames per call to render.
+     */
+    public int getBlockFrames() {
+        return engine.getBlockFrames();
+    }
+
+    /**
+     * Get the sample rate.
+     * @return The number of frames per second.
+     */
+    public float getSampleRate() {
+        return engine.getSampleRate();
+    }
+
+    /*
+     * Gives the model the tempo and volume of the song section a step is in, if the song has just entered it.
+     */
+    private void enterSection(long songStep) {
+        int entered = cursor.sectionAt(songStep);
+        if(entered != section) {
+            section = entered;
+            if(entered < playing.getSections()) {
+                model.updateTempo(playing.getTempo(entered));
+                model.updateVolume(playing.getVolume(entered));
+            }
+        }
+    }
+}
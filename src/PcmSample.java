@@ -0,0 +1,89 @@
+import java.nio.ShortBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A sound that has been decoded once into 16-bit stereo PCM at the engine's sample rate, ready to be mixed by the
+ * MixEngine. The audio lives off the Java heap, in a direct or memory-mapped buffer owned by the SampleBank that
+ * loaded it, and is shared by everything that plays the sound.
+ */
+public class PcmSample {
+
+    //Instance variables
+    private final String name;
+    private final String hash;
+    private final ShortBuffer data;
+    private final int frames;
+    private final AtomicInteger references = new AtomicInteger();
+
+    /**
+     * Instantiate a PcmSample from already decoded audio.
+     * @param name A name for the sample, usually the URI of the file it came from.
+     * @param hash The content hash of the file, used to share identical files.
+     * @param data Interleaved stereo 16-bit samples. Read with absolute gets only.
+     */
+    public PcmSample(String name, String hash, ShortBuffer data) {
+        this(name, hash, data, data.limit() / MixEngine.CHANNELS);
+    }
+
+    /**
+     * Instantiate a PcmSample that is longer than the audio held in memory, for StreamingSample.
+     * @param name A name for the sample, usually the URI of the file it came from.
+     * @param hash The content hash of the file, used to share identical files.
+     * @param data The start of the sound, as interleaved stereo 16-bit samples.
+     * @param frames The length of the whole sound.
+     */
+    protected PcmSample(String name, String hash, ShortBuffer data, int frames) {
+        this.name = name;
+        this.hash = hash;
+        this.data = data;
+        this.frames = frames;
+    }
+
+    /**
+     * Get the name of this sample.
+     * @return The name, usually the URI of the file it was first loaded from.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get the content hash of this sample.
+     * @return The hex SHA-256 of the file it was decoded from.
+     */
+    public String getHash() {
+        return hash;
+    }
+
+    /**
+     * Get the decoded audio.
+     * @return Interleaved stereo samples. Must not be modified, and only read with absolute gets since the buffer
+     *         is shared between threads. For a StreamingSample this is only the start of the sound.
+     */
+    public ShortBuffer getData() {
+        return data;
+    }
+
+    /**
+     * Get the length of this sample.
+     * @return The number of stereo frames.
+     */
+    public int getFrames() {
+        return frames;
+    }
+
+    /**
+     * Get the amount of memory the decoded audio held in memory takes up.
+     * @return The size in bytes.
+     */
+    public long getBytes() {
+        return (long) data.limit() * 2;
+    }
+
+    /*
+     * Reference count, managed by the SampleBank.
+     */
+    AtomicInteger references() {
+        return references;
+    }
+}
@@ -0,0 +1,121 @@
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * A note played by pitch-shifting a reference sound, so any note can be played from one decoded tone. A pitched
+ * sample shares its reference's audio and holds only the playback speed and the SincTable to read it with; the
+ * VoicePool resamples the reference as it mixes, allocating nothing per note. Memory for melodic sounds is that of
+ * the reference however many keys, scales or octaves are used.
+ *
+ * There is only ever one PitchedSample for each reference and pitch, so the notes can be used anywhere a sound is
+ * identified by its handle, such as a BeatMatrix. A pattern saves a note by its reference's hash and a name with
+ * the pitch appended, which resolve turns back into the same note.
+ */
+public class PitchedSample extends PcmSample {
+
+    //Instance variables
+    public static final int RANGE = 48;
+    private static final String MARK = "#pitch=";
+    private static final Map<PcmSample, PitchedSample[]> notes = new IdentityHashMap<>();
+    private final PcmSample reference;
+    private final int semitones;
+    private final long increment;
+    private final float[] table;
+
+    /*
+     * Instantiate a PitchedSample. Use of.
+     */
+    private PitchedSample(PcmSample reference, int semitones, long increment) {
+        super(reference.getName() + MARK + semitones, reference.getHash(), reference.getData(),
+                (int) (((long) reference.getFrames() << 32) / increment));
+        this.reference = reference;
+        this.semitones = semitones;
+        this.increment = increment;
+        this.table = SincTable.forRatio(increment / (double) (1L << 32));
+    }
+
+    /**
+     * Gets the note a number of semitones away from a reference sound.
+     * @param reference The sound to pitch-shift. Must be held in memory, not streamed.
+     * @param semitones How far to shift it, from -RANGE to RANGE.
+     * @return The note, the same object every time for the same reference and pitch.
+     */
+    public static synchronized PitchedSample of(PcmSample reference, int semitones) {
+        if(reference instanceof PitchedSample) {
+            PitchedSample pitched = (PitchedSample) reference;
+            return of(pitched.reference, pitched.semitones + semitones);
+        }
+        if(reference instanceof StreamingSample) {
+            throw new IllegalArgumentException("can't pitch a streamed sound: " + reference.getName());
+        }
+        if(Math.abs(semitones) > RANGE) {
+            throw new IllegalArgumentException("pitch out of range: " + semitones);
+        }
+        PitchedSample[] pitches = notes.computeIfAbsent(reference, r -> new PitchedSample[2 * RANGE + 1]);
+        if(pitches[semitones + RANGE] == null) {
+            long increment = Math.round(Math.pow(2, semitones / 12.0) * (1L << 32));
+            pitches[semitones + RANGE] = new PitchedSample(reference, semitones, increment);
+        }
+        return pitches[semitones + RANGE];
+    }
+
+    /**
+     * Gets the name of the sound a saved note was made from.
+     * @param name The name of a sound, as saved in a pattern.
+     * @return The reference's name if it names a note, otherwise the name itself.
+     */
+    public static String referenceName(String name) {
+        int mark = name.lastIndexOf(MARK);
+        return mark < 0 ? name : name.substring(0, mark);
+    }
+
+    /**
+     * Turns a saved sound back into what it named.
+     * @param name The name of a sound, as saved in a pattern.
+     * @param reference The sound found for referenceName(name).
+     * @return The note if the name was a note's, otherwise the reference.
+     */
+    public static PcmSample resolve(String name, PcmSample reference) {
+        int mark = name.lastIndexOf(MARK);
+        return mark < 0 ? reference : of(reference, Integer.parseInt(name.substring(mark + MARK.length())));
+    }
+
+    /**
+     * Get the sound being pitched.
+     * @return The reference.
+     */
+    public PcmSample getReference() {
+        return reference;
+    }
+
+    /**
+     * Get the pitch.
+     * @return The semitones from the reference.
+     */
+    public int getSemitones() {
+        return semitones;
+    }
+
+    /**
+     * Get the amount of memory the note takes up on its own.
+     * @return 0, since the audio belongs to the reference.
+     */
+    @Override
+    public long getBytes() {
+        return 0;
+    }
+
+    /*
+     * How far through the reference each frame of the note moves, in 32.32 fixed point.
+     */
+    long getIncrement() {
+        return increment;
+    }
+
+    /*
+     * The interpolation table to read the reference with.
+     */
+    float[] getTable() {
+        return table;
+    }
+}
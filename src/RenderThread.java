@@ -0,0 +1,250 @@
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The thread that plays a MixEngine live. It owns the AudioSink: it mixes a block at a time, converts it and writes
+ * it out, keeping a set amount of audio queued in the sink ahead of what is being heard. A bigger buffer rides out
+ * longer stalls, such as GC pauses or other processes taking the CPU, at the cost of latency.
+ *
+ * The sink is opened with room for the largest buffer, and the thread paces itself by mixing the next block only
+ * once the sink's queue has drained to one block less than the buffer size, so the buffer can be resized while
+ * playing without reopening the sink. A sink that can't report its queue is paced by its own blocking writes
+ * instead.
+ *
+ * The largest buffer is worked out from the Transport's lookahead. A step reaches the engine up to the lookahead
+ * before it is due to be heard, and must get there before the block it falls in starts being mixed, which is as
+ * much as the buffer plus the block being mixed ahead of what is heard. LOOKAHEAD_HEADROOM_NANOS of the lookahead
+ * is kept back for the transport thread waking late, and the buffer gets as many blocks as fit in the rest, less
+ * the one being mixed: 5 at the default block size.
+ *
+ * Each underrun the sink reports is counted. In adaptive mode the buffer also grows by a block, up to the largest
+ * buffer, and shrinks by a block, down to MIN_BLOCKS, after each SHRINK_AFTER_NANOS without one.
+ * The latency achieved, from starting to mix a block to its last frame being heard, is measured every block from
+ * the sink's queue, and the engine's clock is kept on the frame being heard rather than the frame being written.
+ * Its recent peak is kept as a bound on how long any trigger waits to be heard.
+ */
+public class RenderThread {
+
+    //Instance variables
+    public static final int DEFAULT_BLOCKS = 4;
+    public static final int MIN_BLOCKS = 2;
+    public static final long LOOKAHEAD_HEADROOM_NANOS = 10_000_000L;
+    public static final long SHRINK_AFTER_NANOS = 10_000_000_000L;
+    private static final int BOUND_RELEASE_BLOCKS = 256;
+    private final MixEngine engine;
+    private final AudioSink sink;
+    private final float[] mix;
+    private final byte[] pcm;
+    private final int blockFrames;
+    private final int maxBlocks;
+    private final double nanosPerFrame;
+    private final Thread thread;
+    private volatile boolean running;
+    private volatile int bufferBlocks;
+    private volatile boolean adaptive;
+    private volatile long underruns;
+    private volatile long latencyNanos;
+    private volatile long latencyBoundNanos;
+    private long sinkUnderruns;
+    private long lastResize;
+
+    /**
+     * Instantiate a RenderThread. The buffer starts at -Dbeatpad.buffer blocks, or DEFAULT_BLOCKS if that fits in
+     * the largest buffer, and adapts if -Dbeatpad.buffer.adaptive=true.
+     * @param engine The engine to mix.
+     * @param sink Where to play it. Opened by start.
+     */
+    public RenderThread(MixEngine engine, AudioSink sink) {
+        this(engine, sink, Integer.getInteger("beatpad.buffer", Math.min(DEFAULT_BLOCKS, maxBlocks(engine))),
+                Boolean.getBoolean("beatpad.buffer.adaptive"));
+    }
+
+    /**
+     * Instantiate a RenderThread.
+     * @param engine The engine to mix.
+     * @param sink Where to play it. Opened by start.
+     * @param bufferBlocks How many blocks to keep queued in the sink.
+     * @param adaptive True to grow the buffer on underruns and shrink it again while playback is steady.
+     */
+    public RenderThread(MixEngine engine, AudioSink sink, int bufferBlocks, boolean adaptive) {
+        this.engine = engine;
+        this.sink = sink;
+        this.blockFrames = engine.getBlockFrames();
+        this.maxBlocks = maxBlocks(engine);
+        this.nanosPerFrame = 1e9 / engine.getSampleRate();
+        this.mix = new float[blockFrames * MixEngine.CHANNELS];
+        this.pcm = new byte[blockFrames * MixEngine.CHANNELS * 2];
+        this.adaptive = adaptive;
+        setBufferBlocks(bufferBlocks);
+        this.thread = new Thread(this::run, "render");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MAX_PRIORITY);
+    }
+
+    /**
+     * Get the largest buffer a RenderThread for an engine allows: as many blocks as can be queued, with one more
+     * being mixed, in the Transport's lookahead less LOOKAHEAD_HEADROOM_NANOS.
+     * @param engine The engine to mix.
+     * @return The number of blocks, never less than MIN_BLOCKS.
+     */
+    public static int maxBlocks(MixEngine engine) {
+        long blockNanos = (long) (engine.getBlockFrames() * 1e9 / engine.getSampleRate());
+        long usable = TimeUnit.MILLISECONDS.toNanos(Transport.LOOKAHEAD) - LOOKAHEAD_HEADROOM_NANOS;
+        return (int) Math.max(MIN_BLOCKS, usable / blockNanos - 1);
+    }
+
+    /**
+     * Opens the sink with room for the largest buffer, and starts playing.
+     */
+    public void start() throws IOException {
+        sink.open(MixEngine.outputFormat(engine.getSampleRate()), maxBlocks * blockFrames);
+        running = true;
+        lastResize = System.nanoTime();
+        thread.start();
+    }
+
+    /**
+     * Stops playing and closes the sink, waiting for the thread to finish.
+     */
+    public void stop() {
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Sets how much audio is kept queued ahead of what is being heard. Safe to call from any thread while playing.
+     * @param bufferBlocks The buffer size in blocks, from MIN_BLOCKS to getMaxBlocks().
+     */
+    public void setBufferBlocks(int bufferBlocks) {
+        if(bufferBlocks < MIN_BLOCKS || bufferBlocks > maxBlocks) {
+            throw new IllegalArgumentException("buffer must be " + MIN_BLOCKS + " to " + maxBlocks + " blocks: "
+                    + bufferBlocks);
+        }
+        this.bufferBlocks = bufferBlocks;
+    }
+
+    /**
+     * Get the buffer size.
+     * @return The number of blocks kept queued in the sink, which changes by itself in adaptive mode.
+     */
+    public int getBufferBlocks() {
+        return bufferBlocks;
+    }
+
+    /**
+     * Get the largest buffer size.
+     * @return The number of blocks the buffer can be set or grow to.
+     */
+    public int getMaxBlocks() {
+        return maxBlocks;
+    }
+
+    /**
+     * Turns adaptive buffer sizing on or off. Turning it off keeps the current size.
+     * @param adaptive True to grow the buffer on underruns and shrink it again while playback is steady.
+     */
+    public void setAdaptive(boolean adaptive) {
+        this.adaptive = adaptive;
+    }
+
+    /**
+     * Get whether the buffer adapts.
+     * @return True if the buffer size follows underruns.
+     */
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+    /**
+     * Get the number of times the sink ran out of audio.
+     * @return The count, since the thread was started.
+     */
+    public long getUnderruns() {
+        return underruns;
+    }
+
+    /**
+     * Get the latency achieved for the last block: from starting to mix it to its last frame being heard. This is
+     * the longest a sound triggered just before a block is mixed waits to be heard.
+     * @return The latency in nanoseconds. If the sink can't report its queue, just the time to mix and write a block.
+     */
+    public long getLatencyNanos() {
+        return latencyNanos;
+    }
+
+    /**
+     * Get the recent peak of the latency. It rises at once to any block's latency and falls back by 1/256 of the
+     * difference each block after (about 1.5 seconds at the default block size), so it follows the buffer being
+     * resized but not the block-to-block wobble. A sound triggered at any moment will have been heard by this long
+     * afterwards.
+     * @return The latency bound in nanoseconds, or 0 before the first block has been written.
+     */
+    public long getLatencyBoundNanos() {
+        return latencyBoundNanos;
+    }
+
+    /*
+     * Body of the render thread: wait for room in the sink, mix a block and write it, then check how it went.
+     */
+    private void run() {
+        try {
+            while(running) {
+                waitForRoom();
+                long began = System.nanoTime();
+                engine.render(mix);
+                MixEngine.toPcm16(mix, pcm, mix.length);
+                sink.write(pcm, pcm.length);
+                afterWrite(began, System.nanoTime());
+            }
+            sink.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /*
+     * Parks until the sink's queue has drained to a block less than the buffer size.
+     */
+    private void waitForRoom() {
+        int queued;
+        int room;
+        while(running && (queued = sink.getQueuedFrames()) > (room = (bufferBlocks - 1) * blockFrames)) {
+            LockSupport.parkNanos((long) ((queued - room) * nanosPerFrame));
+        }
+    }
+
+    /*
+     * Tells the engine which frame is being heard, measures the latency of the block just written, counts any new
+     * underruns, and resizes the buffer in adaptive mode.
+     */
+    private void afterWrite(long began, long now) {
+        int queued = sink.getQueuedFrames();
+        engine.trackClock(engine.nextFrame() - Math.max(0, queued), now);
+        long latency = now - began + (queued < 0 ? 0 : (long) (queued * nanosPerFrame));
+        latencyNanos = latency;
+        long bound = latencyBoundNanos;
+        latencyBoundNanos = latency >= bound ? latency : bound - (bound - latency) / BOUND_RELEASE_BLOCKS;
+        EngineMetrics metrics = engine.getMetrics();
+        if(metrics != null) {
+            metrics.getOutputLatency().record(latency);
+        }
+        long seen = sink.getUnderruns();
+        if(seen > sinkUnderruns) {
+            underruns += seen - sinkUnderruns;
+            sinkUnderruns = seen;
+            lastResize = now;
+            if(adaptive && bufferBlocks < maxBlocks) {
+                bufferBlocks++;
+            }
+        } else if(adaptive && bufferBlocks > MIN_BLOCKS && now - lastResize > SHRINK_AFTER_NANOS) {
+            bufferBlocks--;
+            lastResize = now;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * A stereo reverb, the shared reverb bus of an EffectsRack: the Freeverb design of eight damped comb filters in
+ * parallel and four all-pass filters in series for each side, the right side's delays a little longer than the
+ * left's for width. The delay lengths are those tuned for 44.1 kHz, scaled to the rate it runs at. Every buffer is
+ * allocated up front, so processing allocates nothing, and it keeps track of when its tail has died away so the
+ * rack can stop processing it. Only used from the render thread.
+ */
+public class Reverb {
+
+    //Instance variables
+    private static final int[] COMBS = {1116, 1188, 1277, 1356, 1422, 1491, 1557, 1617};
+    private static final int[] ALLPASSES = {556, 441, 341, 225};
+    private static final int SPREAD = 23;
+    private static final float INPUT_GAIN = 0.015f;
+    private static final float SILENCE = 1e-5f;
+    private final float[][] combs = new float[COMBS.length * 2][];
+    private final int[] combIndex = new int[COMBS.length * 2];
+    private final float[] combStore = new float[COMBS.length * 2];
+    private final float[][] allpasses = new float[ALLPASSES.length * 2][];
+    private final int[] allpassIndex = new int[ALLPASSES.length * 2];
+    private final int tail;
+    private int ringing;
+
+    /**
+     * Instantiate a silent Reverb.
+     * @param sampleRate The rate it runs at.
+     */
+    public Reverb(float sampleRate) {
+        double scale = sampleRate / 44100.0;
+        int longest = 0;
+        for(int side = 0; side < 2; side++) {
+            for(int i = 0; i < COMBS.length; i++) {
+                combs[side * COMBS.length + i] = new float[(int) ((COMBS[i] + side * SPREAD) * scale)];
+                longest = Math.max(longest, combs[side * COMBS.length + i].length);
+            }
+            for(int i = 0; i < ALLPASSES.length; i++) {
+                allpasses[side * ALLPASSES.length + i] = new float[(int) ((ALLPASSES[i] + side * SPREAD) * scale)];
+            }
+        }
+        this.tail = longest * 2;
+    }
+
+    /**
+     * Is there still something to hear?
+     * @return True if the tail has yet to die away.
+     */
+    public boolean isRinging() {
+        return ringing > 0;
+    }
+
+    /**
+     * Runs the reverb for a block, adding it to the output.
+     * @param in What was sent to the reverb this block, as interleaved stereo, or null if nothing was.
+     * @param out Where to add the reverb, as interleaved stereo.
+     * @param frames The number of frames.
+     * @param size From 0 for a small room to 1 for a hall.
+     * @param damping How quickly high frequencies die away, from 0 to 1.
+     * @param level How loud the reverb is in the output.
+     */
+    public void process(float[] in, float[] out, int frames, double size, double damping, double level) {
+        float feedback = (float) (0.7 + 0.28 * size);
+        float damp = (float) (0.4 * damping);
+        float gain = (float) level;
+        float peak = 0;
+        for(int side = 0; side < 2; side++) {
+            for(int i = 0; i < frames; i++) {
+                float input = in == null ? 0 : (in[2 * i] + in[2 * i + 1]) * INPUT_GAIN;
+                float sum = 0;
+                for(int c = side * COMBS.length; c < (side + 1) * COMBS.length; c++) {
+                    float[] buffer = combs[c];
+                    int index = combIndex[c];
+                    float delayed = buffer[index];
+                    combStore[c] = delayed * (1 - damp) + combStore[c] * damp;
+                    buffer[index] = input + combStore[c] * feedback;
+                    combIndex[c] = index + 1 == buffer.length ? 0 : index + 1;
+                    sum += delayed;
+                }
+                for(int a = side * ALLPASSES.length; a < (side + 1) * ALLPASSES.length; a++) {
+                    float[] buffer = allpasses[a];
+                    int index = allpassIndex[a];
+                    float delayed = buffer[index];
+                    buffer[index] = sum + delayed * 0.5f;
+                    allpassIndex[a] = index + 1 == buffer.length ? 0 : index + 1;
+                    sum = delayed - sum;
+                }
+                out[2 * i + side] += sum * gain;
+                peak = Math.max(peak, Math.max(Math.abs(sum), Math.abs(input)));
+            }
+        }
+        ringing = peak > SILENCE ? tail : ringing - frames;
+    }
+}
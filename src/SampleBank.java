@@ -0,0 +1,315 @@
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Loads every sound file once and shares the decoded PCM between everything that plays it.
+ *
+ * Decoded audio is stored as 16-bit stereo in direct buffers, or in memory-mapped files when the bank has a cache
+ * directory, so it stays off the Java heap and adds nothing to GC work however many kits are loaded. Cached sounds
+ * longer than the stream length are opened as StreamingSamples, which keep only their attack in memory. Files with
+ * identical contents are decoded once, found by their SHA-256. Samples are reference counted: every acquire must
+ * be matched by a release, and a sample is dropped from the bank, and a streamed one's file closed, when its count
+ * reaches zero.
+ */
+public class SampleBank {
+
+    //Instance variables
+    public static final double DEFAULT_STREAM_SECONDS = 2;
+    private static final int DECODER_VERSION = 1;
+    private final float sampleRate;
+    private final Path cacheDirectory;
+    private final Map<String, PcmSample> byUri = new HashMap<>();
+    private final Map<String, PcmSample> byHash = new HashMap<>();
+    private long residentBytes;
+    private long sharedLoads;
+    private double streamSeconds = Double.parseDouble(System.getProperty("beatpad.stream.seconds",
+            String.valueOf(DEFAULT_STREAM_SECONDS)));
+
+    /**
+     * Instantiate an empty SampleBank that keeps audio in direct buffers.
+     * @param sampleRate The rate that samples should be decoded at.
+     */
+    public SampleBank(float sampleRate) {
+        this(sampleRate, null);
+    }
+
+    /**
+     * Instantiate an empty SampleBank.
+     * @param sampleRate The rate that samples should be decoded at.
+     * @param cacheDirectory Where to keep decoded audio as memory-mapped files named by content hash, sample rate
+     *                       and decoder version, or null to use direct buffers. Files already in the cache are mapped
+     *                       without being decoded again.
+     */
+    public SampleBank(float sampleRate, Path cacheDirectory) {
+        this.sampleRate = sampleRate;
+        this.cacheDirectory = cacheDirectory;
+    }
+
+    /**
+     * Acquires every .wav file in a directory.
+     * @param directory The directory to load, e.g. "loops".
+     */
+    public void loadDirectory(String directory) {
+        File[] files = new File(directory).listFiles((dir, name) -> name.endsWith(".wav"));
+        if(files == null) {
+            return;
+        }
+        Arrays.sort(files);
+        for(File file : files) {
+            acquire(file.toPath().toUri().toString());
+        }
+    }
+
+    /**
+     * Gets the sample for a file URI, loading it if needed, and adds a reference to it.
+     * @param uri The file URI of the sound.
+     * @return The shared decoded sample.
+     */
+    public synchronized PcmSample acquire(String uri) {
+        PcmSample sample = byUri.get(uri);
+        if(sample == null) {
+            sample = load(uri);
+            byUri.put(uri, sample);
+        }
+        sample.references().incrementAndGet();
+        return sample;
+    }
+
+    /**
+     * Gets a sample that is already in the bank, without adding a reference.
+     * @param uri The file URI of the sound.
+     * @return The sample, or null if it has not been acquired.
+     */
+    public synchronized PcmSample find(String uri) {
+        return byUri.get(uri);
+    }
+
+    /**
+     * Adds a sample that was decoded somewhere else, e.g. by a SampleImporter, and adds a reference to it. If a
+     * sample with the same hash is already in the bank, that one is shared instead.
+     * @param name A name for the sample, usually the URI of the file it came from.
+     * @param hash A hash identifying the decoded contents.
+     * @param file Interleaved stereo 16-bit samples at the bank's rate, in native byte order. Mapped, or streamed if
+     *             it is long.
+     * @return The shared sample.
+     * @throws IOException If the file can't be opened.
+     */
+    public synchronized PcmSample adopt(String name, String hash, Path file) throws IOException {
+        PcmSample sample = byHash.get(hash);
+        if(sample == null) {
+            sample = StreamingSample.open(name, hash, file, sampleRate, streamSeconds);
+            byHash.put(hash, sample);
+            residentBytes += sample.getBytes();
+        } else {
+            sharedLoads++;
+        }
+        sample.references().incrementAndGet();
+        return sample;
+    }
+
+    /**
+     * Gets a sample that is already in the bank by its contents, without adding a reference.
+     * @param hash The hex SHA-256 of the sound's file.
+     * @return The sample, or null if no file with those contents has been acquired.
+     */
+    public synchronized PcmSample findByHash(String hash) {
+        return byHash.get(hash);
+    }
+
+    /**
+     * Drops a reference to a sample, removing it from the bank if it was the last one. A streamed sample's file is
+     * closed then too.
+     * @param sample A sample returned by acquire or adopt.
+     */
+    public synchronized void release(PcmSample sample) {
+        if(sample.references().decrementAndGet() > 0) {
+            return;
+        }
+        byHash.remove(sample.getHash());
+        byUri.values().removeIf(s -> s == sample);
+        residentBytes -= sample.getBytes();
+        if(sample instanceof StreamingSample) {
+            try {
+                ((StreamingSample) sample).close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Get the number of distinct decoded samples held.
+     * @return The sample count.
+     */
+    public synchronized int getSampleCount() {
+        return byHash.size();
+    }
+
+    /**
+     * Get the memory used by decoded audio, all of it outside the Java heap.
+     * @return The size in bytes.
+     */
+    public synchronized long getResidentBytes() {
+        return residentBytes;
+    }
+
+    /**
+     * Get the number of loads that were satisfied by sharing an identical, already decoded file.
+     * @return The count.
+     */
+    public synchronized long getSharedLoads() {
+        return sharedLoads;
+    }
+
+    /**
+     * Sets how long a cached sound must be to be streamed from disk rather than mapped whole. Only affects sounds
+     * loaded afterwards.
+     * @param seconds The length in seconds.
+     */
+    public synchronized void setStreamSeconds(double seconds) {
+        this.streamSeconds = seconds;
+    }
+
+    /**
+     * Get the sample rate.
+     * @return The rate samples are decoded at.
+     */
+    public float getSampleRate() {
+        return sampleRate;
+    }
+
+    /*
+     * Reads a file, and either shares an identical sample already in the bank or decodes a new one.
+     */
+    private PcmSample load(String uri) {
+        try {
+            byte[] file = Files.readAllBytes(Path.of(URI.create(uri)));
+            String hash = sha256(file);
+            PcmSample shared = byHash.get(hash);
+            if(shared != null) {
+                sharedLoads++;
+                return shared;
+            }
+            PcmSample sample = store(uri, hash, file);
+            byHash.put(hash, sample);
+            residentBytes += sample.getBytes();
+            return sample;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (UnsupportedAudioFileException e) {
+            throw new IllegalArgumentException("Can't decode " + uri, e);
+        }
+    }
+
+    /*
+     * Makes a sample from the decoded PCM for a file, from the cache directory if it is there, otherwise by decoding
+     * it.
+     */
+    private PcmSample store(String uri, String hash, byte[] file) throws IOException, UnsupportedAudioFileException {
+        if(cacheDirectory == null) {
+            ByteBuffer pcm = decode(file);
+            ByteBuffer direct = ByteBuffer.allocateDirect(pcm.remaining()).order(ByteOrder.nativeOrder());
+            direct.put(pcm).flip();
+            return new PcmSample(uri, hash, direct.asShortBuffer());
+        }
+        Path cached = cacheDirectory.resolve(cacheName(hash));
+        if(!Files.exists(cached)) {
+            Files.createDirectories(cacheDirectory);
+            Path temp = Files.createTempFile(cacheDirectory, hash, ".tmp");
+            try(FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                ByteBuffer pcm = decode(file);
+                while(pcm.hasRemaining()) {
+                    out.write(pcm);
+                }
+            }
+            Files.move(temp, cached, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return StreamingSample.open(uri, hash, cached, sampleRate, streamSeconds);
+    }
+
+    /*
+     * The cache file for a sound. The PCM in it has been resampled to the bank's rate by this version of decode, so
+     * both are in the name, and a bank at another rate or a changed decoder never maps audio that doesn't fit.
+     */
+    private String cacheName(String hash) {
+        return hash + "-" + Math.round(sampleRate) + "hz-v" + DECODER_VERSION + ".pcm";
+    }
+
+    /*
+     * Decodes a sound file to interleaved stereo 16-bit PCM in native byte order at the bank's sample rate. Mono is
+     * copied to both sides, and any channels past the second are dropped.
+     */
+    private ByteBuffer decode(byte[] file) throws IOException, UnsupportedAudioFileException {
+        try(AudioInputStream source =
+                    AudioSystem.getAudioInputStream(new BufferedInputStream(new ByteArrayInputStream(file)))) {
+            AudioFormat from = source.getFormat();
+            int channels = from.getChannels();
+            AudioFormat pcm = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, from.getSampleRate(), 16,
+                    channels, channels * 2, from.getSampleRate(), false);
+            byte[] bytes;
+            try(AudioInputStream decoded = AudioSystem.getAudioInputStream(pcm, source)) {
+                bytes = decoded.readAllBytes();
+            }
+            int inFrames = bytes.length / (2 * channels);
+            double step = from.getSampleRate() / sampleRate;
+            int outFrames = (int) (inFrames / step);
+            ByteBuffer out = ByteBuffer.allocate(outFrames * MixEngine.CHANNELS * 2).order(ByteOrder.nativeOrder());
+            for(int f = 0; f < outFrames; f++) {
+                double pos = f * step;
+                int i = (int) pos;
+                double frac = pos - i;
+                int next = Math.min(i + 1, inFrames - 1);
+                for(int c = 0; c < MixEngine.CHANNELS; c++) {
+                    int ch = Math.min(c, channels - 1);
+                    int a = sampleAt(bytes, (i * channels + ch) * 2);
+                    int b = sampleAt(bytes, (next * channels + ch) * 2);
+                    out.putShort((short) Math.round(a + (b - a) * frac));
+                }
+            }
+            out.flip();
+            return out;
+        }
+    }
+
+    /*
+     * Reads one little-endian 16-bit sample.
+     */
+    private static int sampleAt(byte[] bytes, int at) {
+        return (short) ((bytes[at] & 0xff) | (bytes[at + 1] << 8));
+    }
+
+    /*
+     * Hex SHA-256 of a file's contents.
+     */
+    private static String sha256(byte[] data) {
+        try {
+            StringBuilder hex = new StringBuilder();
+            for(byte b : MessageDigest.getInstance("SHA-256").digest(data)) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
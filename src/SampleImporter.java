@@ -0,0 +1,327 @@
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Imports the user's own sound files into a SampleBank, off the UI and audio threads. Each file is decoded from
+ * WAV or AIFF at any bit depth and sample rate, has the silence trimmed from both ends, is resampled to the bank's
+ * rate and normalised to just under full scale.
+ *
+ * Batches are split across a fork-join pool of low-priority daemon threads, leaving a core free for playback.
+ * Processed audio is written to a cache directory under a hash of the file's contents, the bank's rate and the
+ * processing version, and mapped from there, so importing the same file again only costs reading and hashing it.
+ */
+public class SampleImporter implements AutoCloseable {
+
+    //Instance variables
+    public static final double PEAK = 0.891;
+    public static final double SILENCE = 0.001;
+    private static final int VERSION = 1;
+    private static final int BATCH = 4;
+    private final SampleBank bank;
+    private final Path cacheDirectory;
+    private final ForkJoinPool pool;
+    private final AtomicLong imported = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    /**
+     * Instantiate a SampleImporter.
+     * @param bank The bank to add imported sounds to.
+     * @param cacheDirectory Where to keep processed audio, created if needed.
+     */
+    public SampleImporter(SampleBank bank, Path cacheDirectory) {
+        this.bank = bank;
+        this.cacheDirectory = cacheDirectory;
+        this.pool = new ForkJoinPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1), pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("import-" + thread.getPoolIndex());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }, null, false);
+    }
+
+    /**
+     * Imports one file in the background.
+     * @param file The sound file.
+     * @return The imported sound, once it is in the bank.
+     */
+    public CompletableFuture<PcmSample> importFile(Path file) {
+        return CompletableFuture.supplyAsync(() -> load(file), pool);
+    }
+
+    /**
+     * Imports a batch of files in parallel in the background. Files that can't be read or decoded are reported and
+     * left out.
+     * @param files The sound files.
+     * @return The imported sounds, in the same order as the files they came from, once they are all in the bank.
+     */
+    public CompletableFuture<List<PcmSample>> importFiles(List<Path> files) {
+        return CompletableFuture.supplyAsync(() -> {
+            PcmSample[] sounds = new PcmSample[files.size()];
+            pool.invoke(new Batch(files, sounds, 0, sounds.length));
+            List<PcmSample> loaded = new ArrayList<>(sounds.length);
+            for(PcmSample sound : sounds) {
+                if(sound != null) {
+                    loaded.add(sound);
+                }
+            }
+            return loaded;
+        }, pool);
+    }
+
+    /**
+     * Lists the sound files in a directory.
+     * @param directory The directory.
+     * @return The .wav, .aif and .aiff files in it, sorted by name.
+     * @throws IOException If the directory can't be read.
+     */
+    public static List<Path> soundFiles(Path directory) throws IOException {
+        try(Stream<Path> files = Files.list(directory)) {
+            return files.filter(SampleImporter::isSoundFile).sorted().toList();
+        }
+    }
+
+    /**
+     * Get the number of files imported.
+     * @return The count, including ones found in the cache.
+     */
+    public long getImported() {
+        return imported.get();
+    }
+
+    /**
+     * Get the number of imports that were satisfied from the cache without decoding.
+     * @return The count.
+     */
+    public long getCacheHits() {
+        return cacheHits.get();
+    }
+
+    /**
+     * Get the number of files that could not be imported.
+     * @return The count.
+     */
+    public long getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * Stops the import threads. Imports still running are abandoned.
+     */
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+
+    /*
+     * Imports the files in a range of a batch, splitting it in two until it is small.
+     */
+    private class Batch extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final List<Path> files;
+        private final PcmSample[] sounds;
+        private final int from;
+        private final int to;
+
+        private Batch(List<Path> files, PcmSample[] sounds, int from, int to) {
+            this.files = files;
+            this.sounds = sounds;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if(to - from > BATCH) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Batch(files, sounds, from, middle), new Batch(files, sounds, middle, to));
+                return;
+            }
+            for(int i = from; i < to; i++) {
+                try {
+                    sounds[i] = load(files.get(i));
+                } catch (RuntimeException e) {
+                    System.err.println("can't import " + files.get(i) + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /*
+     * Imports a file, from the cache if it has been processed before.
+     */
+    private PcmSample load(Path file) {
+        try {
+            byte[] bytes = Files.readAllBytes(file);
+            String key = key(bytes);
+            Path cached = cacheDirectory.resolve(key + ".pcm");
+            if(Files.exists(cached)) {
+                cacheHits.incrementAndGet();
+            } else {
+                write(cached, process(bytes));
+            }
+            PcmSample sample = bank.adopt(file.toUri().toString(), key, cached);
+            imported.incrementAndGet();
+            return sample;
+        } catch (IOException e) {
+            failed.incrementAndGet();
+            throw new UncheckedIOException(e);
+        } catch (UnsupportedAudioFileException e) {
+            failed.incrementAndGet();
+            throw new IllegalArgumentException("Can't decode " + file, e);
+        }
+    }
+
+    /*
+     * Writes processed audio to the cache, through a temporary file so a half written file is never mapped.
+     */
+    private void write(Path cached, ByteBuffer pcm) throws IOException {
+        Files.createDirectories(cacheDirectory);
+        Path temp = Files.createTempFile(cacheDirectory, "import", ".tmp");
+        try(FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            while(pcm.hasRemaining()) {
+                out.write(pcm);
+            }
+        }
+        Files.move(temp, cached, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /*
+     * Decodes, trims, resamples and normalises a file to interleaved stereo 16-bit PCM in native byte order.
+     */
+    private ByteBuffer process(byte[] file) throws IOException, UnsupportedAudioFileException {
+        float sourceRate;
+        float[] left;
+        float[] right;
+        try(AudioInputStream source =
+                    AudioSystem.getAudioInputStream(new BufferedInputStream(new ByteArrayInputStream(file)))) {
+            AudioFormat from = source.getFormat();
+            sourceRate = from.getSampleRate();
+            int channels = from.getChannels();
+            AudioFormat floats = new AudioFormat(AudioFormat.Encoding.PCM_FLOAT, sourceRate, 32, channels,
+                    channels * 4, sourceRate, false);
+            if(!AudioSystem.isConversionSupported(floats, from)) {
+                throw new UnsupportedAudioFileException("can't convert " + from);
+            }
+            byte[] bytes;
+            try(AudioInputStream decoded = AudioSystem.getAudioInputStream(floats, source)) {
+                bytes = decoded.readAllBytes();
+            }
+            ByteBuffer in = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+            int frames = bytes.length / (4 * channels);
+            left = new float[frames];
+            right = new float[frames];
+            for(int f = 0; f < frames; f++) {
+                left[f] = in.getFloat((f * channels) * 4);
+                right[f] = in.getFloat((f * channels + Math.min(1, channels - 1)) * 4);
+            }
+        }
+
+        float peak = 0;
+        for(int f = 0; f < left.length; f++) {
+            peak = Math.max(peak, Math.max(Math.abs(left[f]), Math.abs(right[f])));
+        }
+        int start = 0;
+        int end = left.length;
+        float threshold = (float) (peak * SILENCE);
+        while(start < end && Math.abs(left[start]) <= threshold && Math.abs(right[start]) <= threshold) {
+            start++;
+        }
+        while(end > start && Math.abs(left[end - 1]) <= threshold && Math.abs(right[end - 1]) <= threshold) {
+            end--;
+        }
+
+        double step = sourceRate / bank.getSampleRate();
+        int outFrames = (int) ((end - start) / step);
+        double gain = peak == 0 ? 0 : PEAK / peak;
+        ByteBuffer out = ByteBuffer.allocate(outFrames * MixEngine.CHANNELS * 2).order(ByteOrder.nativeOrder());
+        for(int f = 0; f < outFrames; f++) {
+            double pos = start + f * step;
+            out.putShort(toShort(hermite(left, pos, start, end) * gain));
+            out.putShort(toShort(hermite(right, pos, start, end) * gain));
+        }
+        out.flip();
+        return out;
+    }
+
+    /*
+     * Reads between samples with 4-point Hermite interpolation, treating samples outside [start, end) as silent.
+     */
+    private static double hermite(float[] x, double pos, int start, int end) {
+        int i = (int) pos;
+        double t = pos - i;
+        double y0 = at(x, i - 1, start, end);
+        double y1 = at(x, i, start, end);
+        double y2 = at(x, i + 1, start, end);
+        double y3 = at(x, i + 2, start, end);
+        double c1 = 0.5 * (y2 - y0);
+        double c2 = y0 - 2.5 * y1 + 2 * y2 - 0.5 * y3;
+        double c3 = 0.5 * (y3 - y0) + 1.5 * (y1 - y2);
+        return ((c3 * t + c2) * t + c1) * t + y1;
+    }
+
+    /*
+     * Reads a sample, or 0 outside the trimmed range.
+     */
+    private static float at(float[] x, int i, int start, int end) {
+        return i < start || i >= end ? 0 : x[i];
+    }
+
+    /*
+     * Converts a sample from -1..1 to 16 bits, clipping anything outside.
+     */
+    private static short toShort(double sample) {
+        return (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(sample * Short.MAX_VALUE)));
+    }
+
+    /*
+     * Hex SHA-256 of a file's contents together with everything that changes how it is processed.
+     */
+    private String key(byte[] file) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(file);
+            digest.update(("import-" + VERSION + "@" + bank.getSampleRate()).getBytes());
+            StringBuilder hex = new StringBuilder();
+            for(byte b : digest.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /*
+     * Does a file name look like a sound file the importer can read?
+     */
+    private static boolean isSoundFile(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        return name.endsWith(".wav") || name.endsWith(".aif") || name.endsWith(".aiff");
+    }
+}
@@ -0,0 +1,58 @@
+/**
+ * A musical scale: the notes of one octave, as semitones above the key centre. The melody maker lays its rows out
+ * along a scale, from the key centre upwards.
+ */
+public enum Scale {
+    /** Ionian */
+    MAJOR("major", 0, 2, 4, 5, 7, 9, 11),
+    /** Aeolian */
+    MINOR("minor", 0, 2, 3, 5, 7, 8, 10),
+    /** Minor with a raised seventh */
+    HARMONIC_MINOR("harmonic minor", 0, 2, 3, 5, 7, 8, 11),
+    /** Minor with a raised sixth */
+    DORIAN("dorian", 0, 2, 3, 5, 7, 9, 10),
+    /** Major with a flattened seventh */
+    MIXOLYDIAN("mixolydian", 0, 2, 4, 5, 7, 9, 10),
+    /** Five notes of the major scale */
+    MAJOR_PENTATONIC("major pentatonic", 0, 2, 4, 7, 9),
+    /** Five notes of the minor scale */
+    MINOR_PENTATONIC("minor pentatonic", 0, 3, 5, 7, 10),
+    /** Minor pentatonic with a flattened fifth */
+    BLUES("blues", 0, 3, 5, 6, 7, 10);
+
+    //Instance variables
+    public static final String[] KEYS = {"C", "C#", "D", "D#", "E", "F", "F#", "G", "G#", "A", "A#", "B"};
+    private final String label;
+    private final int[] intervals;
+
+    Scale(String label, int... intervals) {
+        this.label = label;
+        this.intervals = intervals;
+    }
+
+    /**
+     * Gets how far a note of the scale is from the C at or below the key centre. Degrees past the end of the octave
+     * carry on into the octaves above.
+     * @param key The key centre, from 0 for C to 11 for B.
+     * @param degree The note of the scale, from 0 for the key centre.
+     * @return The distance in semitones.
+     */
+    public int semitones(int key, int degree) {
+        return key + intervals[degree % intervals.length] + 12 * (degree / intervals.length);
+    }
+
+    /**
+     * Gets the name of a note of the scale.
+     * @param key The key centre, from 0 for C to 11 for B.
+     * @param degree The note of the scale, from 0 for the key centre.
+     * @return The note name, e.g. "F#".
+     */
+    public String noteName(int key, int degree) {
+        return KEYS[semitones(key, degree) % 12];
+    }
+
+    @Override
+    public String toString() {
+        return label;
+    }
+}
@@ -0,0 +1,156 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One user's beat pad on a SessionManager: their own Model (pattern, volume and tempo) rendered to a stream of
+ * 16-bit stereo PCM bytes in real time. Sessions share the manager's SampleBank, so decoded audio is held once
+ * however many sessions play it. The model never plays live, so it is rendered on its own MixEngine, and a session
+ * has one engine and one voice pool.
+ */
+public class Session {
+
+    //Instance variables
+    private final String id;
+    private final SampleBank bank;
+    private final List<PcmSample> acquired = new ArrayList<>();
+    private final Model model;
+    private final PatternRenderer renderer;
+    private final OutputStream out;
+    private final float[] block;
+    private final byte[] pcm;
+    private final long leadFrames;
+    private long startNanos = -1;
+    private volatile long maxLagFrames;
+    private volatile long lateTicks;
+    private volatile boolean closed;
+
+    /**
+     * Instantiate a Session. Sessions are normally made by SessionManager.open.
+     * @param id A name for the session.
+     * @param bank The shared bank to play sounds from.
+     * @param out Where to write the audio. Writes should not block, since the session is rendered on a thread
+     *            shared with other sessions.
+     * @param leadMillis How far ahead of real time to keep the stream.
+     */
+    Session(String id, SampleBank bank, OutputStream out, long leadMillis) {
+        this.id = id;
+        this.bank = bank;
+        this.model = new Model(null, bank);
+        this.renderer = new PatternRenderer(model, model.getMixEngine(), true);
+        this.out = out;
+        this.block = new float[renderer.getBlockFrames() * MixEngine.CHANNELS];
+        this.pcm = new byte[block.length * 2];
+        this.leadFrames = (long) (leadMillis * renderer.getSampleRate() / 1000);
+    }
+
+    /**
+     * Get the session's name.
+     * @return The id it was opened with.
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Get the session's pattern state.
+     * @return The model to edit the pattern, volume and tempo through. Edits posted to its CommandQueue are
+     *         applied between blocks.
+     */
+    public Model getModel() {
+        return model;
+    }
+
+    /**
+     * Loads a sound for this session from the shared bank. The session holds a reference to it until it is closed.
+     * @param uri The sound's URI.
+     * @return The sound.
+     * @throws IllegalStateException If the session has been closed.
+     */
+    public PcmSample acquire(String uri) {
+        PcmSample sound = bank.acquire(uri);
+        synchronized(acquired) {
+            if(closed) {
+                bank.release(sound);
+                throw new IllegalStateException("session " + id + " is closed");
+            }
+            acquired.add(sound);
+        }
+        return sound;
+    }
+
+    /**
+     * Get how much audio has been streamed.
+     * @return The number of frames written.
+     */
+    public long getFramesRendered() {
+        return renderer.getFrame();
+    }
+
+    /**
+     * Get how far behind real time the session has ever been.
+     * @return The worst lag in frames, beyond the lead it is meant to keep.
+     */
+    public long getMaxLagFrames() {
+        return maxLagFrames;
+    }
+
+    /**
+     * Get the number of times the session was found behind real time, i.e. a listener would have heard a gap.
+     * @return The count.
+     */
+    public long getLateTicks() {
+        return lateTicks;
+    }
+
+    /**
+     * Is the session still open?
+     * @return False once closed.
+     */
+    public boolean isOpen() {
+        return !closed;
+    }
+
+    /**
+     * Renders blocks until the stream is a lead ahead of real time. Called by the manager's tick workers.
+     * @param now The current System.nanoTime().
+     * @return True if the session had fallen behind real time before this tick.
+     */
+    boolean tick(long now) throws IOException {
+        if(startNanos < 0) {
+            startNanos = now;
+        }
+        long realTime = (long) ((now - startNanos) * (renderer.getSampleRate() / 1e9));
+        long lag = realTime - renderer.getFrame();
+        boolean late = lag > 0;
+        if(late) {
+            lateTicks++;
+            maxLagFrames = Math.max(maxLagFrames, lag);
+        }
+        while(renderer.getFrame() < realTime + leadFrames) {
+            renderer.render(block);
+            MixEngine.toPcm16(block, pcm, block.length);
+            out.write(pcm, 0, pcm.length);
+        }
+        return late;
+    }
+
+    /**
+     * Ends the session: closes its stream and gives back every sound it acquired. Does nothing if already closed.
+     */
+    void close() throws IOException {
+        if(closed) {
+            return;
+        }
+        closed = true;
+        model.close();
+        synchronized(acquired) {
+            for(PcmSample sound : acquired) {
+                bank.release(sound);
+            }
+            acquired.clear();
+        }
+        out.close();
+    }
+}
@@ -0,0 +1,153 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hosts many independent beat pad sessions in one JVM. Instead of a thread per session, sessions are split into
+ * shards, one per worker thread of a shared scheduler, and every tick each worker tops up each of its sessions'
+ * streams to a little ahead of real time. All sessions play from one read-only SampleBank.
+ */
+public class SessionManager implements AutoCloseable {
+
+    //Instance variables
+    public static final long TICK_MILLIS = 10;
+    public static final long LEAD_MILLIS = 40;
+    private final SampleBank bank;
+    private final ScheduledExecutorService scheduler;
+    private final List<List<Session>> shards = new CopyOnWriteArrayList<>();
+    private final AtomicLong opened = new AtomicLong();
+    private final AtomicLong lateTicks = new AtomicLong();
+    private final AtomicLong failedSessions = new AtomicLong();
+
+    /**
+     * Instantiate a SessionManager with a worker per processor.
+     * @param bank The bank every session plays from.
+     */
+    public SessionManager(SampleBank bank) {
+        this(bank, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Instantiate a SessionManager.
+     * @param bank The bank every session plays from.
+     * @param workers The number of threads rendering sessions.
+     */
+    public SessionManager(SampleBank bank, int workers) {
+        this.bank = bank;
+        this.scheduler = Executors.newScheduledThreadPool(workers, r -> {
+            Thread t = new Thread(r, "session-worker");
+            t.setDaemon(true);
+            t.setPriority(Thread.MAX_PRIORITY);
+            return t;
+        });
+        for(int i = 0; i < workers; i++) {
+            List<Session> shard = new CopyOnWriteArrayList<>();
+            shards.add(shard);
+            scheduler.scheduleAtFixedRate(() -> tick(shard), 0, TICK_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Opens a new session, which starts streaming straight away.
+     * @param id A name for the session.
+     * @param out Where to write its audio, as 16-bit stereo PCM. Should not block.
+     * @return The session, whose model can be edited from any thread.
+     */
+    public Session open(String id, OutputStream out) {
+        Session session = new Session(id, bank, out, LEAD_MILLIS);
+        shards.get((int) (opened.getAndIncrement() % shards.size())).add(session);
+        return session;
+    }
+
+    /**
+     * Ends a session.
+     * @param session A session opened by this manager.
+     */
+    public void close(Session session) throws IOException {
+        for(List<Session> shard : shards) {
+            shard.remove(session);
+        }
+        session.close();
+    }
+
+    /**
+     * Get the number of open sessions.
+     * @return The session count.
+     */
+    public int getSessionCount() {
+        int count = 0;
+        for(List<Session> shard : shards) {
+            count += shard.size();
+        }
+        return count;
+    }
+
+    /**
+     * Get the number of times any session was found behind real time.
+     * @return The count, over all sessions since the manager started.
+     */
+    public long getLateTicks() {
+        return lateTicks.get();
+    }
+
+    /**
+     * Get the number of sessions that threw while being topped up. Each is logged, removed and closed, so it can't
+     * fail again on every tick or hold on to its stream and sounds.
+     * @return The count, since the manager started.
+     */
+    public long getFailedSessions() {
+        return failedSessions.get();
+    }
+
+    /**
+     * Get the bank shared by all sessions.
+     * @return The sample bank.
+     */
+    public SampleBank getSampleBank() {
+        return bank;
+    }
+
+    /**
+     * Stops every worker and closes every session.
+     */
+    @Override
+    public void close() throws IOException {
+        scheduler.shutdownNow();
+        for(List<Session> shard : shards) {
+            for(Session session : shard) {
+                session.close();
+            }
+            shard.clear();
+        }
+    }
+
+    /*
+     * Tops up every session in a shard. A session that throws must not stop the others, or the worker: an exception
+     * escaping here would cancel the shard's scheduled task for good. So a failing session is logged, taken out of
+     * the shard and closed instead.
+     */
+    private void tick(List<Session> shard) {
+        long now = System.nanoTime();
+        for(Session session : shard) {
+            try {
+                if(session.tick(now)) {
+                    lateTicks.incrementAndGet();
+                }
+            } catch (IOException | RuntimeException e) {
+                failedSessions.incrementAndGet();
+                System.err.println("session " + session.getId() + " failed and was closed: " + e);
+                shard.remove(session);
+                try {
+                    session.close();
+                } catch (IOException closing) {
+                    System.err.println("session " + session.getId() + " failed to close: " + closing);
+                }
+            }
+        }
+    }
+}
@@ -1,14 +1,21 @@
+import javafx.application.Platform;
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
+import javafx.css.PseudoClass;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.Node;
 import javafx.scene.control.Button;
+import javafx.scene.control.CheckBox;
+import javafx.scene.control.ComboBox;
 import javafx.scene.control.Label;
 import javafx.scene.control.Slider;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
 import javafx.scene.text.*;
+import javafx.stage.FileChooser;
+
+import java.io.File;
 
 /**
  * Class that holds the side pane with all the information and volume controls etc.
@@ -16,20 +23,28 @@ import javafx.scene.text.*;
 
 public class SideBarPane {
 
+    private static final int EXPORT_BARS = 4;
+    private static final double MIN_BPM = 40;
+    private static final double MAX_BPM = 300;
+    private static final PseudoClass ON = PseudoClass.getPseudoClass("on");
+
     private Node root;
     private Controller controller;
     private Label one;
     private Label two;
     private Label three;
     private Label four;
+    private Label lit;
+    private Slider volume;
+    private Slider tempo;
     private BeatPadPane beatPad;
 
     /**
      * Initialize an instance of the SideBarPane
      */
     public SideBarPane(Controller controller) {
-        root = buildSideBarPane();
         this.controller = controller;
+        root = buildSideBarPane();
         beatPad=new BeatPadPane(controller);
     }
 
@@ -43,14 +58,31 @@ public class SideBarPane {
     }
 
     /**
-     * Update the visual counter based on the internal time
-     * @param beat the current beat
+     * Update the visual counter based on the internal time. Only touches the labels when the lit number changes.
+     * @param beat the current beat, or -1 if nothing is playing
      */
     public void updateCounter(int beat) {
-        if(beat == 0) {one.getStyleClass().add("counter-on"); four.getStyleClass().remove("counter-on");}
-        if(beat == 4) {two.getStyleClass().add("counter-on"); one.getStyleClass().remove("counter-on");}
-        if(beat == 8) {three.getStyleClass().add("counter-on"); two.getStyleClass().remove("counter-on");}
-        if(beat == 12) {four.getStyleClass().add("counter-on"); three.getStyleClass().remove("counter-on");}
+        Label label = null;
+        if(beat >= 0 && beat < 4) label = one;
+        if(beat >= 4 && beat < 8) label = two;
+        if(beat >= 8 && beat < 12) label = three;
+        if(beat >= 12 && beat < 16) label = four;
+        if(label == lit) {
+            return;
+        }
+        if(lit != null) lit.pseudoClassStateChanged(ON, false);
+        if(label != null) label.pseudoClassStateChanged(ON, true);
+        lit = label;
+    }
+
+    /**
+     * Moves the volume and tempo sliders, e.g. after a saved pattern is loaded.
+     * @param newVolume the volume, from 0 to 100
+     * @param bpm the tempo in beats per minute
+     */
+    public void showSettings(double newVolume, double bpm) {
+        volume.setValue(newVolume);
+        tempo.setValue(bpm);
     }
 
     /*
@@ -77,7 +109,7 @@ public class SideBarPane {
         sidebar.getChildren().add(description);
 
         /* Volume control slider */
-        Slider volume = new Slider(0, 100, 80);
+        volume = new Slider(0, 100, 80);
         volume.setPadding(new Insets(50, 0, 0, 0));
         volume.setShowTickLabels(true);
         volume.setBlockIncrement(10);
@@ -99,6 +131,23 @@ public class SideBarPane {
         volumeCaption.setPadding(new Insets(0, 0, 0, 132));
         sidebar.getChildren().add(volumeCaption);
 
+        /* Tempo control slider, which changes the speed without stopping the music */
+        tempo = new Slider(MIN_BPM, MAX_BPM, Tempo.DEFAULT.getBpm());
+        tempo.setPadding(new Insets(20, 0, 0, 0));
+        tempo.setShowTickLabels(true);
+        tempo.setBlockIncrement(5);
+        tempo.setMajorTickUnit(40);
+        tempo.setMinorTickCount(0);
+        sidebar.getChildren().add(tempo);
+        tempo.valueProperty().addListener((observable, oldValue, newValue) ->
+                controller.updateTempo(newValue.doubleValue()));
+
+        /* Tempo Caption */
+        Label tempoCaption = new Label("tempo");
+        tempoCaption.getStyleClass().add("sidebar-label");
+        tempoCaption.setPadding(new Insets(0, 0, 0, 137));
+        sidebar.getChildren().add(tempoCaption);
+
         /*
          * This counter displays the internal time of the beatpad so as to make the product
          * more accessible to users unfamiliar with drum machines or music theory
@@ -188,11 +237,86 @@ public class SideBarPane {
             controller.removeAllSoundsFromModel();
             controller.clearLoopAndMelodyButtons();
         });
+        /* Export button that renders a few bars of the current beats to a .wav file, and says how it went */
+        Button export = new Button("export");
+        Label exportStatus = new Label();
+        exportStatus.getStyleClass().add("sidebar-label");
+        export.setOnMouseClicked(event -> {
+            FileChooser chooser = new FileChooser();
+            chooser.setTitle("Export beat");
+            chooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("WAV audio", "*.wav"));
+            File file = chooser.showSaveDialog(export.getScene().getWindow());
+            if(file != null) {
+                exportStatus.setText("exporting " + file.getName() + "...");
+                controller.bounceToFile(file, EXPORT_BARS).whenComplete((result, error) -> Platform.runLater(() ->
+                        exportStatus.setText(error == null ? file.getName() + ": " + result
+                                : "export failed: " + error.getMessage())));
+            }
+        });
         clearSpace.setAlignment(Pos.CENTER);
+        clearSpace.setSpacing(10);
         clear.setPrefSize(100,50);
+        export.setPrefSize(100,50);
         clearSpace.setPadding(new Insets(50,0,0,0));
-        clearSpace.getChildren().add(clear);
+        clearSpace.getChildren().addAll(clear, export);
         sidebar.getChildren().add(clearSpace);
+        HBox exportSpace = new HBox(exportStatus);
+        exportSpace.setAlignment(Pos.CENTER);
+        sidebar.getChildren().add(exportSpace);
+
+        /* Saved patterns. Type a name and save, or pick one and load it */
+        HBox patternSpace = new HBox();
+        ComboBox<String> patternName = new ComboBox<>();
+        patternName.setEditable(true);
+        patternName.setPromptText("pattern name");
+        patternName.getItems().addAll(controller.getPatternNames());
+        patternName.setPrefWidth(150);
+        Button save = new Button("save");
+        save.setOnMouseClicked(event -> {
+            String name = patternName.getValue();
+            if(name != null && !name.isEmpty()) {
+                controller.savePattern(name);
+                if(!patternName.getItems().contains(name)) {
+                    patternName.getItems().add(name);
+                }
+            }
+        });
+        Button load = new Button("load");
+        load.setOnMouseClicked(event -> {
+            String name = patternName.getValue();
+            if(name != null && !name.isEmpty()) {
+                controller.loadPattern(name);
+            }
+        });
+        patternSpace.setAlignment(Pos.CENTER);
+        patternSpace.setSpacing(10);
+        patternSpace.setPadding(new Insets(20,0,0,0));
+        patternSpace.getChildren().addAll(patternName, save, load);
+        sidebar.getChildren().add(patternSpace);
+
+        /* Quantise toggle that snaps sample pad hits to the next sixteenth note */
+        HBox quantiseSpace = new HBox();
+        CheckBox quantise = new CheckBox("quantise pads to 1/16");
+        quantise.setOnAction(event -> controller.setQuantise(quantise.isSelected()));
+        quantiseSpace.setAlignment(Pos.CENTER);
+        quantiseSpace.setPadding(new Insets(20,0,0,0));
+        quantiseSpace.getChildren().add(quantise);
+        sidebar.getChildren().add(quantiseSpace);
+
+        /* Record arm, which overdubs pad hits into the pattern, and how strongly hits are pulled onto the steps */
+        HBox recordSpace = new HBox();
+        CheckBox record = new CheckBox("record");
+        record.setOnAction(event -> controller.setRecordArmed(record.isSelected()));
+        Slider strength = new Slider(0, 100, 100);
+        strength.setPrefWidth(150);
+        strength.valueProperty().addListener((observable, oldValue, newValue) ->
+                controller.setRecordStrength(newValue.doubleValue() / 100));
+        Label strengthCaption = new Label("strength");
+        recordSpace.setAlignment(Pos.CENTER);
+        recordSpace.setSpacing(10);
+        recordSpace.setPadding(new Insets(10,0,0,0));
+        recordSpace.getChildren().addAll(record, strength, strengthCaption);
+        sidebar.getChildren().add(recordSpace);
 
         return sidebar;
     }
@@ -0,0 +1,62 @@
+/**
+ * Precomputed windowed-sinc interpolation tables for reading a sound between its samples, used to play
+ * PitchedSamples. Each table holds TAPS coefficients for each of PHASES evenly spaced positions between two
+ * samples, so interpolating is a table lookup and a short dot product, with no trigonometry while mixing.
+ *
+ * Playing a sound faster than it was recorded would fold its top octave back down as aliasing, so pitching up uses
+ * a table whose cutoff is lowered to the new Nyquist frequency. There is one table per band of BAND_SEMITONES, built
+ * the first time it is needed and shared by every note in the band.
+ */
+public final class SincTable {
+
+    //Instance variables
+    public static final int TAPS = 8;
+    public static final int PHASE_BITS = 9;
+    public static final int PHASES = 1 << PHASE_BITS;
+    private static final int BAND_SEMITONES = 3;
+    private static final float[][] tables = new float[PitchedSample.RANGE / BAND_SEMITONES + 2][];
+
+    private SincTable() {
+    }
+
+    /**
+     * Gets the table for playing a sound at a speed.
+     * @param ratio How much faster than recorded the sound is played, e.g. 2 for an octave up.
+     * @return PHASES * TAPS coefficients, phase by phase. Must not be modified.
+     */
+    public static synchronized float[] forRatio(double ratio) {
+        int band = ratio <= 1 ? 0 : (int) Math.ceil(12 * Math.log(ratio) / Math.log(2) / BAND_SEMITONES - 1e-9);
+        band = Math.min(band, tables.length - 1);
+        if(tables[band] == null) {
+            tables[band] = build(Math.pow(2, -band * BAND_SEMITONES / 12.0));
+        }
+        return tables[band];
+    }
+
+    /*
+     * Builds a Blackman-windowed sinc table with a cutoff as a fraction of Nyquist. Tap t of a phase weights the
+     * sample TAPS / 2 - 1 before the one the position is in, plus t. Each phase is normalised to unity gain at DC.
+     */
+    private static float[] build(double cutoff) {
+        float[] table = new float[PHASES * TAPS];
+        int half = TAPS / 2;
+        for(int phase = 0; phase < PHASES; phase++) {
+            double fraction = (double) phase / PHASES;
+            double[] taps = new double[TAPS];
+            double sum = 0;
+            for(int t = 0; t < TAPS; t++) {
+                double x = t - (half - 1) - fraction;
+                double sinc = x == 0 ? 1 : Math.sin(Math.PI * cutoff * x) / (Math.PI * cutoff * x);
+                double w = x / half;
+                double window = Math.abs(w) >= 1 ? 0
+                        : 0.42 + 0.5 * Math.cos(Math.PI * w) + 0.08 * Math.cos(2 * Math.PI * w);
+                taps[t] = sinc * window;
+                sum += taps[t];
+            }
+            for(int t = 0; t < TAPS; t++) {
+                table[phase * TAPS + t] = (float) (taps[t] / sum);
+            }
+        }
+        return table;
+    }
+}
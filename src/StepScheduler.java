@@ -0,0 +1,166 @@
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dispatches steps on a grid of absolute deadlines. Each step's deadline is computed from an anchor time and
+ * System.nanoTime(), never from the time the previous step finished, so the time spent doing each step's work
+ * cannot add up into drift. Steps are handed out a lookahead ahead of their deadline so the listener can queue
+ * them to start exactly on time.
+ *
+ * The tempo can be changed while running. A change takes effect at the next step boundary: the grid is re-anchored
+ * on the deadline of the last dispatched step, so no step is dropped or played twice.
+ *
+ * The scheduler sleeps until shortly before each wake-up time and spins the rest of the way. The spin window follows
+ * how far the OS actually oversleeps: it rises at once to any oversleep, plus MIN_SPIN_NANOS, and falls back by
+ * 1/SPIN_RELEASE_STEPS of the difference each step, between MIN_SPIN_NANOS and MAX_SPIN_NANOS. So a machine with
+ * precise timers spends tens of microseconds a step spinning rather than a whole millisecond. How late each step is
+ * dispatched can be recorded into a Histogram, e.g. the EngineMetrics step lateness.
+ */
+public class StepScheduler {
+
+    /** Receives steps from the scheduler */
+    public interface StepListener {
+        /**
+         * Called a lookahead before a step is due.
+         * @param step The step number, from 0 to stepsPerLoop - 1.
+         * @param deadlineNanos The System.nanoTime() at which the step should be heard.
+         */
+        void onStep(long step, long deadlineNanos);
+    }
+
+    /** What to do with steps whose deadline has already passed when the scheduler gets to them */
+    public enum OverrunPolicy {
+        /** Dispatch them anyway, straight away */
+        CATCH_UP,
+        /** Drop them and carry on from the next step that is still in the future */
+        SKIP
+    }
+
+    //Instance variables
+    public static final long MIN_SPIN_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    public static final long MAX_SPIN_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+    private static final int SPIN_RELEASE_STEPS = 64;
+    private final long lookaheadNanos;
+    private final OverrunPolicy policy;
+    private volatile Histogram lateness;
+    private volatile long skipped;
+    private volatile long spinNanos = TimeUnit.MILLISECONDS.toNanos(1);
+    private volatile Tempo tempo;
+    private volatile boolean running;
+
+    /**
+     * Instantiate a StepScheduler.
+     * @param tempo The starting tempo.
+     * @param lookaheadMillis How long before its deadline each step is dispatched.
+     * @param policy What to do with steps that are already overdue.
+     */
+    public StepScheduler(Tempo tempo, long lookaheadMillis, OverrunPolicy policy) {
+        this.tempo = tempo;
+        this.lookaheadNanos = TimeUnit.MILLISECONDS.toNanos(lookaheadMillis);
+        this.policy = policy;
+    }
+
+    /**
+     * Dispatches steps on the calling thread until stop() is called.
+     * @param stepsPerLoop The number of steps before the step number wraps back to 0, or Long.MAX_VALUE to count
+     *                     steps without wrapping.
+     * @param listener Receives each step.
+     * @throws InterruptedException If the thread is interrupted while waiting for a step.
+     */
+    public void run(long stepsPerLoop, StepListener listener) throws InterruptedException {
+        running = true;
+        Tempo current = tempo;
+        long stepNanos = current.stepNanos();
+        long anchor = System.nanoTime() + lookaheadNanos;
+        long anchorStep = 0;
+        long n = 0;
+        while(running) {
+            if(tempo != current && n > anchorStep) {
+                anchor += (n - 1 - anchorStep) * stepNanos;
+                anchorStep = n - 1;
+                current = tempo;
+                stepNanos = current.stepNanos();
+            }
+            long deadline = anchor + (n - anchorStep) * stepNanos;
+            long wake = deadline - lookaheadNanos;
+            sleepUntil(wake);
+            long now = System.nanoTime();
+            if(policy == OverrunPolicy.SKIP && now > deadline) {
+                skipped++;
+                n++;
+                continue;
+            }
+            Histogram record = lateness;
+            if(record != null) {
+                record.record(now - wake);
+            }
+            listener.onStep(n % stepsPerLoop, deadline);
+            n++;
+        }
+    }
+
+    /**
+     * Makes run() return after the step it is currently on.
+     */
+    public void stop() {
+        running = false;
+    }
+
+    /**
+     * Changes the tempo. Safe to call from any thread while the scheduler is running.
+     * @param tempo The new tempo, used from the next step on.
+     */
+    public void setTempo(Tempo tempo) {
+        this.tempo = tempo;
+    }
+
+    /**
+     * Get the tempo.
+     * @return The tempo most recently set.
+     */
+    public Tempo getTempo() {
+        return tempo;
+    }
+
+    /**
+     * Sets where to record how late each step is dispatched. Safe to call from any thread while running.
+     * @param lateness Receives nanoseconds from each step's wake-up time to its dispatch, or null to stop recording.
+     */
+    public void setLateness(Histogram lateness) {
+        this.lateness = lateness;
+    }
+
+    /**
+     * Get the number of steps dropped by the SKIP policy.
+     * @return The count, since the scheduler was made.
+     */
+    public long getSkipped() {
+        return skipped;
+    }
+
+    /**
+     * Get the spin window.
+     * @return How long before each wake-up time the scheduler stops sleeping and spins, in nanoseconds.
+     */
+    public long getSpinNanos() {
+        return spinNanos;
+    }
+
+    /*
+     * Sleeps until the spin window before the deadline, then spins the rest of the way, and moves the window after
+     * how far the sleep overran.
+     */
+    private void sleepUntil(long deadline) throws InterruptedException {
+        long spin = spinNanos;
+        long asleep = System.nanoTime();
+        long remaining = deadline - asleep - spin;
+        if(remaining > 0) {
+            TimeUnit.NANOSECONDS.sleep(remaining);
+            long needed = System.nanoTime() - asleep - remaining + MIN_SPIN_NANOS;
+            spin = needed >= spin ? needed : spin - (spin - needed) / SPIN_RELEASE_STEPS;
+            spinNanos = Math.max(MIN_SPIN_NANOS, Math.min(MAX_SPIN_NANOS, spin));
+        }
+        while(System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+    }
+}
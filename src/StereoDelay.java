@@ -0,0 +1,78 @@
+/**
+ * A stereo feedback delay, the shared delay bus of an EffectsRack. Its buffer is allocated up front for the longest
+ * delay time, so processing allocates nothing. It keeps track of when the echoes in its buffer have died away, so
+ * the rack can stop processing it once there is nothing left to hear. Only used from the render thread.
+ */
+public class StereoDelay {
+
+    //Instance variables
+    private static final float SILENCE = 1e-5f;
+    private final float sampleRate;
+    private final float[] left;
+    private final float[] right;
+    private int write;
+    private int ringing;
+
+    /**
+     * Instantiate a silent StereoDelay.
+     * @param sampleRate The rate it runs at.
+     * @param maxSeconds The longest delay time it can be set to.
+     */
+    public StereoDelay(float sampleRate, double maxSeconds) {
+        this.sampleRate = sampleRate;
+        int length = (int) Math.ceil(maxSeconds * sampleRate) + 1;
+        this.left = new float[length];
+        this.right = new float[length];
+    }
+
+    /**
+     * Is there still something to hear?
+     * @return True if echoes in the buffer have yet to die away.
+     */
+    public boolean isRinging() {
+        return ringing > 0;
+    }
+
+    /**
+     * Runs the delay for a block, adding its echoes to the output.
+     * @param in What was sent to the delay this block, as interleaved stereo, or null if nothing was.
+     * @param out Where to add the echoes, as interleaved stereo.
+     * @param frames The number of frames.
+     * @param time The seconds between echoes.
+     * @param feedback How much of each echo is fed back.
+     * @param level How loud the echoes are in the output.
+     */
+    public void process(float[] in, float[] out, int frames, double time, double feedback, double level) {
+        int length = left.length;
+        int delay = (int) Math.max(1, Math.min(length - 1, Math.round(time * sampleRate)));
+        float fb = (float) feedback;
+        float gain = (float) level;
+        int w = write;
+        int r = w - delay;
+        if(r < 0) {
+            r += length;
+        }
+        float peak = 0;
+        for(int i = 0; i < frames; i++) {
+            float echoLeft = left[r];
+            float echoRight = right[r];
+            float inLeft = in == null ? 0 : in[2 * i];
+            float inRight = in == null ? 0 : in[2 * i + 1];
+            float l = inLeft + echoLeft * fb;
+            float rt = inRight + echoRight * fb;
+            left[w] = l;
+            right[w] = rt;
+            peak = Math.max(peak, Math.max(Math.abs(l), Math.abs(rt)));
+            out[2 * i] += echoLeft * gain;
+            out[2 * i + 1] += echoRight * gain;
+            if(++w == length) {
+                w = 0;
+            }
+            if(++r == length) {
+                r = 0;
+            }
+        }
+        write = w;
+        ringing = peak > SILENCE ? delay + frames : ringing - frames;
+    }
+}
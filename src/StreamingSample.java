@@ -0,0 +1,115 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A long sound that is played from disk. Only the attack, the first fraction of a second, is kept in memory; the
+ * rest is read a little ahead of playback by the DiskStreamer's I/O thread. The sound must already be decoded to
+ * the engine's format in a file, as the SampleBank and SampleImporter caches are. The file stays open until the
+ * sample is closed, which its SampleBank does when the last reference to it is released.
+ */
+public class StreamingSample extends PcmSample implements Closeable {
+
+    //Instance variables
+    public static final double ATTACK_SECONDS = 0.25;
+    private final FileChannel channel;
+    private final ByteBuffer map;
+    private final int attackFrames;
+
+    /*
+     * Instantiate a StreamingSample. Use open.
+     */
+    private StreamingSample(String name, String hash, ShortBuffer attack, int frames, FileChannel channel,
+                            ByteBuffer map) {
+        super(name, hash, attack, frames);
+        this.channel = channel;
+        this.map = map;
+        this.attackFrames = attack.limit() / MixEngine.CHANNELS;
+    }
+
+    /**
+     * Opens a decoded file as a sample, streaming it if it is long.
+     * @param name A name for the sample, usually the URI of the file it came from.
+     * @param hash The content hash of the file.
+     * @param file Interleaved stereo 16-bit samples in native byte order.
+     * @param rate The sample rate.
+     * @param streamSeconds Sounds longer than this are streamed; shorter ones are mapped whole.
+     * @return The sample.
+     * @throws IOException If the file can't be read.
+     */
+    public static PcmSample open(String name, String hash, Path file, float rate, double streamSeconds)
+            throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        int frames = (int) (channel.size() / (MixEngine.CHANNELS * 2));
+        if(frames <= streamSeconds * rate) {
+            channel.close();
+            return new PcmSample(name, hash, map.order(ByteOrder.nativeOrder()).asShortBuffer());
+        }
+        int attackFrames = (int) Math.min(ATTACK_SECONDS * rate, frames);
+        ByteBuffer attack = ByteBuffer.allocateDirect(attackFrames * MixEngine.CHANNELS * 2)
+                .order(ByteOrder.nativeOrder());
+        attack.put(map.duplicate().limit(attack.capacity())).flip();
+        return new StreamingSample(name, hash, attack.asShortBuffer(), frames, channel,
+                map.order(ByteOrder.nativeOrder()));
+    }
+
+    /**
+     * Get the length of the part kept in memory.
+     * @return The number of frames at the start of the sound that getData() holds.
+     */
+    public int getAttackFrames() {
+        return attackFrames;
+    }
+
+    /**
+     * Closes the file the sound is streamed from. Voices still playing the sound carry on reading the mapped file,
+     * which stays valid until the sample itself is collected.
+     * @throws IOException If the file can't be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /*
+     * Reads frames from the file with a positional read, which can't disturb other readers. Only called by the
+     * DiskStreamer's I/O thread. Once the sample has been closed, copies them from the mapped file instead.
+     */
+    int read(ByteBuffer dst, long frame) throws IOException {
+        long position = frame * MixEngine.CHANNELS * 2;
+        int total = 0;
+        try {
+            while(dst.hasRemaining()) {
+                int read = channel.read(dst, position + total);
+                if(read < 0) {
+                    break;
+                }
+                total += read;
+            }
+        } catch (ClosedChannelException e) {
+            int from = (int) Math.min(position + total, map.capacity());
+            int bytes = Math.min(dst.remaining(), map.capacity() - from);
+            dst.put(map.duplicate().limit(from + bytes).position(from));
+            total += bytes;
+        }
+        return total;
+    }
+
+    /*
+     * Copies frames straight from the mapped file, for when the stream has fallen behind. May wait on the disk.
+     */
+    void copy(long frame, int frames, ShortBuffer dst, int offset) {
+        int from = (int) (frame * MixEngine.CHANNELS * 2);
+        for(int i = 0; i < frames * MixEngine.CHANNELS; i++) {
+            dst.put(offset * MixEngine.CHANNELS + i, map.getShort(from + i * 2));
+        }
+    }
+}
@@ -0,0 +1,87 @@
+import java.nio.ShortBuffer;
+
+/**
+ * A note of the built-in synth, usable anywhere a sound is: in a BeatMatrix, a pattern or a trigger. It holds no
+ * audio; the VoicePool plays it with a SynthVoice, using whatever its SynthPatch is set to at the time. There is
+ * only ever one SynthNote for each patch and pitch, so notes can be compared by handle.
+ *
+ * Notes of the shared patch are saved in patterns by name alone, and resolve turns the name back into the note.
+ */
+public class SynthNote extends PcmSample {
+
+    //Instance variables
+    public static final int NOTES = 128;
+    private static final String PREFIX = "synth#note=";
+    private static final SynthNote[] shared = new SynthNote[NOTES];
+    private final SynthPatch patch;
+    private final int note;
+    private final double frequency;
+
+    /*
+     * Instantiate a SynthNote. Use of.
+     */
+    private SynthNote(SynthPatch patch, int note) {
+        super(PREFIX + note, PREFIX + note, ShortBuffer.allocate(0), 0);
+        this.patch = patch;
+        this.note = note;
+        this.frequency = 440 * Math.pow(2, (note - 69) / 12.0);
+    }
+
+    /**
+     * Gets a note of the shared patch.
+     * @param note The MIDI note number, from 0 to 127; 60 is middle C.
+     * @return The note, the same object every time for the same number.
+     */
+    public static synchronized SynthNote of(int note) {
+        if(note < 0 || note >= NOTES) {
+            throw new IllegalArgumentException("note out of range: " + note);
+        }
+        if(shared[note] == null) {
+            shared[note] = new SynthNote(SynthPatch.shared(), note);
+        }
+        return shared[note];
+    }
+
+    /**
+     * Turns a saved sound back into a synth note.
+     * @param name The name of a sound, as saved in a pattern.
+     * @return The note, or null if the name is not a synth note's.
+     */
+    public static SynthNote resolve(String name) {
+        return name.startsWith(PREFIX) ? of(Integer.parseInt(name.substring(PREFIX.length()))) : null;
+    }
+
+    /**
+     * Get the settings the note is played with.
+     * @return The patch.
+     */
+    public SynthPatch getPatch() {
+        return patch;
+    }
+
+    /**
+     * Get the note number.
+     * @return The MIDI note number.
+     */
+    public int getNote() {
+        return note;
+    }
+
+    /**
+     * Get the pitch.
+     * @return The frequency in Hz, in equal temperament from A = 440 Hz.
+     */
+    public double getFrequency() {
+        return frequency;
+    }
+
+    /**
+     * Get the length of the note if it were started now.
+     * @return The gate plus release of the patch, in frames at the engine's rate.
+     */
+    @Override
+    public int getFrames() {
+        return (int) (patch.getGate() * MixEngine.SAMPLE_RATE)
+                + Math.max(1, (int) (patch.getRelease() * MixEngine.SAMPLE_RATE));
+    }
+}
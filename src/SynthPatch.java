@@ -0,0 +1,176 @@
+/**
+ * The settings of the built-in synth: waveform, amplitude envelope, filter and level. Every setting can be changed
+ * from any thread while notes are playing; SynthVoices read them afresh every few milliseconds, so edits are heard
+ * straight away. The gate and release are read when a note starts, since they fix how long it is.
+ */
+public class SynthPatch {
+
+    //Instance variables
+    private static final SynthPatch shared = new SynthPatch();
+    private volatile Wavetable waveform = Wavetable.SAW;
+    private volatile double attack = 0.005;
+    private volatile double decay = 0.15;
+    private volatile double sustain = 0.6;
+    private volatile double release = 0.2;
+    private volatile double gate = 0.12;
+    private volatile double cutoff = 1200;
+    private volatile double resonance = 0.3;
+    private volatile double envelope = 2.5;
+    private volatile double level = 0.5;
+
+    /**
+     * Get the patch the melody maker and saved patterns use.
+     * @return The shared patch.
+     */
+    public static SynthPatch shared() {
+        return shared;
+    }
+
+    /**
+     * Get the oscillator's waveform.
+     * @return The waveform.
+     */
+    public Wavetable getWaveform() {
+        return waveform;
+    }
+
+    /**
+     * Sets the oscillator's waveform.
+     * @param waveform The waveform.
+     */
+    public void setWaveform(Wavetable waveform) {
+        this.waveform = waveform;
+    }
+
+    /**
+     * Get the attack time.
+     * @return The seconds taken to rise to full level.
+     */
+    public double getAttack() {
+        return attack;
+    }
+
+    /**
+     * Get the decay time.
+     * @return The seconds taken to fall from full level to the sustain level.
+     */
+    public double getDecay() {
+        return decay;
+    }
+
+    /**
+     * Get the sustain level.
+     * @return The level held until the gate closes, from 0 to 1.
+     */
+    public double getSustain() {
+        return sustain;
+    }
+
+    /**
+     * Sets the attack, decay and sustain.
+     * @param attack The seconds taken to rise to full level.
+     * @param decay The seconds taken to fall to the sustain level.
+     * @param sustain The level held until the gate closes, from 0 to 1.
+     */
+    public void setEnvelope(double attack, double decay, double sustain) {
+        if(attack < 0 || decay < 0 || sustain < 0 || sustain > 1) {
+            throw new IllegalArgumentException("Bad envelope " + attack + "/" + decay + "/" + sustain);
+        }
+        this.attack = attack;
+        this.decay = decay;
+        this.sustain = sustain;
+    }
+
+    /**
+     * Get the release time.
+     * @return The seconds taken to fade out after the gate closes.
+     */
+    public double getRelease() {
+        return release;
+    }
+
+    /**
+     * Sets the release time. Only affects notes started afterwards.
+     * @param release The seconds taken to fade out after the gate closes.
+     */
+    public void setRelease(double release) {
+        if(release < 0) {
+            throw new IllegalArgumentException("Bad release " + release);
+        }
+        this.release = release;
+    }
+
+    /**
+     * Get the gate time.
+     * @return The seconds a note is held before it is released.
+     */
+    public double getGate() {
+        return gate;
+    }
+
+    /**
+     * Sets the gate time. Only affects notes started afterwards.
+     * @param gate The seconds a note is held before it is released.
+     */
+    public void setGate(double gate) {
+        if(gate < 0) {
+            throw new IllegalArgumentException("Bad gate " + gate);
+        }
+        this.gate = gate;
+    }
+
+    /**
+     * Get the filter cutoff.
+     * @return The low-pass cutoff in Hz, before the envelope opens it.
+     */
+    public double getCutoff() {
+        return cutoff;
+    }
+
+    /**
+     * Get the filter resonance.
+     * @return The resonance, from 0 to 1.
+     */
+    public double getResonance() {
+        return resonance;
+    }
+
+    /**
+     * Get the filter envelope amount.
+     * @return How many octaves the cutoff is raised at full envelope level.
+     */
+    public double getEnvelopeAmount() {
+        return envelope;
+    }
+
+    /**
+     * Sets the low-pass filter.
+     * @param cutoff The cutoff in Hz.
+     * @param resonance The resonance, from 0 to 1.
+     * @param envelope How many octaves the amplitude envelope raises the cutoff at full level.
+     */
+    public void setFilter(double cutoff, double resonance, double envelope) {
+        if(cutoff <= 0 || resonance < 0 || resonance > 1) {
+            throw new IllegalArgumentException("Bad filter " + cutoff + "/" + resonance);
+        }
+        this.cutoff = cutoff;
+        this.resonance = resonance;
+        this.envelope = envelope;
+    }
+
+    /**
+     * Get the output level.
+     * @return The level, from 0 to 1.
+     */
+    public double getLevel() {
+        return level;
+    }
+
+    /**
+     * Sets the output level.
+     * @param level The level, from 0 to 1.
+     */
+    public void setLevel(double level) {
+        this.level = level;
+    }
+}
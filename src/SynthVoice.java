@@ -0,0 +1,153 @@
+/**
+ * One note of the built-in synth: a band-limited wavetable oscillator through a resonant low-pass filter, shaped by
+ * an attack-decay-sustain-release envelope that also opens the filter. Renders any number of frames at a time into
+ * a float buffer, allocating nothing, so it can run on the audio thread. A voice is reused for note after note.
+ *
+ * The envelope, filter coefficients and waveform are worked out from the SynthPatch once every CONTROL_FRAMES
+ * frames and interpolated in between, so patch edits are picked up within a millisecond and the per-frame work is
+ * just a table read, a multiply and the filter.
+ */
+public class SynthVoice {
+
+    //Instance variables
+    public static final int CONTROL_FRAMES = 32;
+    private final float sampleRate;
+    private SynthPatch patch;
+    private double increment;
+    private double phase;
+    private long frame;
+    private long gateFrames;
+    private long releaseFrames;
+    private float releaseLevel = -1;
+    private float level;
+    private float low;
+    private float band;
+
+    /**
+     * Instantiate a SynthVoice.
+     * @param sampleRate The rate it renders at.
+     */
+    public SynthVoice(float sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * Starts a note from silence. The gate and release are read from the patch now.
+     * @param patch The settings to play with.
+     * @param frequency The pitch in Hz.
+     */
+    public void start(SynthPatch patch, double frequency) {
+        this.patch = patch;
+        this.increment = frequency / sampleRate;
+        this.phase = 0;
+        this.frame = 0;
+        this.gateFrames = (long) (patch.getGate() * sampleRate);
+        this.releaseFrames = Math.max(1, (long) (patch.getRelease() * sampleRate));
+        this.releaseLevel = -1;
+        this.level = 0;
+        this.low = 0;
+        this.band = 0;
+    }
+
+    /**
+     * Get the length of the note.
+     * @return The frames until the end of the release.
+     */
+    public long getLength() {
+        return gateFrames + releaseFrames;
+    }
+
+    /**
+     * Get how far the note has got.
+     * @return The number of frames rendered or skipped since start.
+     */
+    public long getFrame() {
+        return frame;
+    }
+
+    /**
+     * Moves on without rendering, e.g. when a note was triggered for a frame that has already been mixed.
+     * @param frames The number of frames to skip.
+     */
+    public void skip(long frames) {
+        phase = (phase + increment * frames) % 1.0;
+        frame += frames;
+        level = envelope(frame);
+    }
+
+    /**
+     * Renders the next frames of the note, after the level from the patch is applied.
+     * @param out Where to write them, as mono samples from -1 to 1.
+     * @param offset The index of the first sample to write.
+     * @param frames The number of frames.
+     */
+    public void render(float[] out, int offset, int frames) {
+        SynthPatch patch = this.patch;
+        float gain = (float) patch.getLevel();
+        double nyquist = 0.45 * sampleRate;
+        for(int done = 0; done < frames; ) {
+            int n = Math.min(CONTROL_FRAMES, frames - done);
+            float[] table = patch.getWaveform().table(increment);
+            float from = level;
+            float to = envelope(frame + n);
+            float slope = (to - from) / n;
+            double cutoff = Math.min(nyquist, patch.getCutoff() * Math.pow(2, patch.getEnvelopeAmount() * to));
+            // Trapezoidal state-variable filter coefficients
+            float g = (float) Math.tan(Math.PI * cutoff / sampleRate);
+            float k = (float) (2 - 1.9 * patch.getResonance());
+            float a1 = 1 / (1 + g * (g + k));
+            float a2 = g * a1;
+            float a3 = g * a2;
+            for(int i = 0; i < n; i++) {
+                double position = phase * Wavetable.SIZE;
+                int index = (int) position;
+                float fraction = (float) (position - index);
+                float x = table[index] + fraction * (table[index + 1] - table[index]);
+                phase += increment;
+                if(phase >= 1) {
+                    phase -= 1;
+                }
+                float v3 = x - low;
+                float v1 = a1 * band + a2 * v3;
+                float v2 = low + a2 * band + a3 * v3;
+                band = 2 * v1 - band;
+                low = 2 * v2 - low;
+                out[offset + done + i] = v2 * (from + slope * i) * gain;
+            }
+            level = to;
+            frame += n;
+            done += n;
+        }
+    }
+
+    /*
+     * The envelope level at a frame of the note. Attack and decay are read live; the release starts from whatever
+     * level the note had when the gate closed.
+     */
+    private float envelope(long at) {
+        if(at >= gateFrames) {
+            if(releaseLevel < 0) {
+                releaseLevel = adsr(gateFrames);
+            }
+            return Math.max(0, releaseLevel * (1 - (float) (at - gateFrames) / releaseFrames));
+        }
+        return adsr(at);
+    }
+
+    /*
+     * The attack, decay and sustain part of the envelope.
+     */
+    private float adsr(long at) {
+        double seconds = at / (double) sampleRate;
+        double attack = patch.getAttack();
+        if(seconds < attack) {
+            return (float) (seconds / attack);
+        }
+        double decay = patch.getDecay();
+        double sustain = patch.getSustain();
+        if(seconds < attack + decay) {
+            return (float) (1 - (1 - sustain) * (seconds - attack) / decay);
+        }
+        return (float) sustain;
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ * A tempo and step resolution, e.g. 60 BPM in 16th notes (4 steps per beat). Immutable, so it can be handed
+ * between threads freely.
+ */
+public final class Tempo {
+
+    //Instance variables
+    public static final double MIN_BPM = 20;
+    public static final double MAX_BPM = 400;
+    public static final Tempo DEFAULT = new Tempo(60, 4);
+    private final double bpm;
+    private final int stepsPerBeat;
+
+    /**
+     * Instantiate a Tempo.
+     * @param bpm Beats per minute, from MIN_BPM to MAX_BPM.
+     * @param stepsPerBeat How many steps each beat is divided into, e.g. 4 for 16th notes.
+     */
+    public Tempo(double bpm, int stepsPerBeat) {
+        if(!(bpm >= MIN_BPM && bpm <= MAX_BPM)) {
+            throw new IllegalArgumentException("Tempo must be between " + MIN_BPM + " and " + MAX_BPM + " BPM: " + bpm);
+        }
+        if(stepsPerBeat < 1) {
+            throw new IllegalArgumentException("Need at least one step per beat: " + stepsPerBeat);
+        }
+        this.bpm = bpm;
+        this.stepsPerBeat = stepsPerBeat;
+    }
+
+    /**
+     * Get the tempo.
+     * @return Beats per minute.
+     */
+    public double getBpm() {
+        return bpm;
+    }
+
+    /**
+     * Get the step resolution.
+     * @return The number of steps per beat.
+     */
+    public int getStepsPerBeat() {
+        return stepsPerBeat;
+    }
+
+    /**
+     * Get the length of a step in time.
+     * @return The time between steps in nanoseconds.
+     */
+    public long stepNanos() {
+        return Math.round(60e9 / (bpm * stepsPerBeat));
+    }
+
+    /**
+     * Get the length of a step in audio.
+     * @param sampleRate The sample rate.
+     * @return The exact (fractional) number of frames between steps.
+     */
+    public double stepFrames(float sampleRate) {
+        return 60.0 * sampleRate / (bpm * stepsPerBeat);
+    }
+
+    /**
+     * Get a copy of this tempo at a different speed.
+     * @param newBpm The new beats per minute.
+     * @return A tempo with the same resolution.
+     */
+    public Tempo withBpm(double newBpm) {
+        return new Tempo(newBpm, stepsPerBeat);
+    }
+
+    /**
+     * Get a copy of this tempo with a different resolution.
+     * @param newStepsPerBeat The new number of steps per beat.
+     * @return A tempo at the same speed.
+     */
+    public Tempo withStepsPerBeat(int newStepsPerBeat) {
+        return new Tempo(bpm, newStepsPerBeat);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%.1f BPM, %d steps/beat", bpm, stepsPerBeat);
+    }
+}
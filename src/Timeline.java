@@ -0,0 +1,238 @@
+/**
+ * A compiled Arrangement: every sound trigger in the song, sorted by step. Each section stores the events of a
+ * single pass through its pattern as two parallel int arrays, the step within the pass and an index into a shared
+ * sound table; repeats are expanded by the Cursor as it plays rather than stored. A song of thousands of bars
+ * therefore takes no more memory than the events of its distinct sections, and playing it is a walk along arrays
+ * that does work only when there is an event. Each section also keeps its pattern's tempo and volume, for the
+ * player to switch to as it enters the section.
+ */
+public class Timeline {
+
+    /**
+     * A position in the timeline. Only to be used by one thread; create one per player.
+     */
+    public final class Cursor {
+
+        //Instance variables
+        private int section;
+        private int repeat;
+        private int event;
+        private long base;
+        private int entered;
+
+        private Cursor() {
+            skipEmpty();
+        }
+
+        /**
+         * Get the step of the next event.
+         * @return The step, counted from the start of the song, or Long.MAX_VALUE after the last event.
+         */
+        public long nextStep() {
+            return section == sectionCount ? Long.MAX_VALUE : base + eventSteps[section][event];
+        }
+
+        /**
+         * Get the sound of the next event.
+         * @return The sound to start.
+         */
+        public PcmSample nextSound() {
+            return sounds[eventSounds[section][event]];
+        }
+
+        /**
+         * Moves on to the following event.
+         */
+        public void advance() {
+            if(++event < eventSteps[section].length) {
+                return;
+            }
+            event = 0;
+            if(++repeat < repeats[section]) {
+                base += passSteps[section];
+                return;
+            }
+            repeat = 0;
+            section++;
+            skipEmpty();
+        }
+
+        /**
+         * Gets the section a step falls in. Steps are expected to be asked for in order, as they are played; each
+         * call only looks past the section found by the last one, so playing through a song costs one comparison a
+         * step.
+         * @param step The step, counted from the start of the song.
+         * @return The section, or getSections() after the end of the song.
+         */
+        public int sectionAt(long step) {
+            while(entered < sectionCount && sectionStart[entered + 1] <= step) {
+                entered++;
+            }
+            return entered;
+        }
+
+        /**
+         * Moves to the first event at or after a step.
+         * @param step The step, counted from the start of the song.
+         */
+        public void seek(long step) {
+            entered = 0;
+            section = 0;
+            while(section < sectionCount && sectionStart[section + 1] <= step) {
+                section++;
+            }
+            repeat = 0;
+            event = 0;
+            if(section == sectionCount || eventSteps[section].length == 0) {
+                skipEmpty();
+                return;
+            }
+            repeat = (int) ((step - sectionStart[section]) / passSteps[section]);
+            base = sectionStart[section] + (long) repeat * passSteps[section];
+            while(event < eventSteps[section].length && base + eventSteps[section][event] < step) {
+                event++;
+            }
+            if(event == eventSteps[section].length) {
+                event = eventSteps[section].length - 1;
+                advance();
+            }
+            skipEmpty();
+        }
+
+        /**
+         * Has every event been played?
+         * @return True at the end of the song.
+         */
+        public boolean isDone() {
+            return section == sectionCount;
+        }
+
+        /*
+         * Moves past sections that have no events, leaving base at the start of the current section.
+         */
+        private void skipEmpty() {
+            while(section < sectionCount && (eventSteps[section].length == 0 || repeats[section] == 0)) {
+                section++;
+            }
+            if(section < sectionCount && repeat == 0) {
+                base = sectionStart[section];
+            }
+        }
+    }
+
+    //Instance variables
+    private final PcmSample[] sounds;
+    private final int sectionCount;
+    private final int[] passSteps;
+    private final int[] repeats;
+    private final long[] sectionStart;
+    private final int[][] eventSteps;
+    private final int[][] eventSounds;
+    private final Tempo[] tempos;
+    private final double[] volumes;
+
+    /**
+     * Instantiate a Timeline. Used by Arrangement.compile.
+     * @param sounds The sound table.
+     * @param passSteps The length of one pass of each section.
+     * @param repeats How many times each section plays.
+     * @param eventSteps For each section, the step within the pass of each event, in order.
+     * @param eventSounds For each section, the sound table index of each event.
+     * @param tempos The tempo of each section.
+     * @param volumes The volume of each section, from 0 to 100.
+     */
+    Timeline(PcmSample[] sounds, int[] passSteps, int[] repeats, int[][] eventSteps, int[][] eventSounds,
+             Tempo[] tempos, double[] volumes) {
+        this.sounds = sounds;
+        this.tempos = tempos;
+        this.volumes = volumes;
+        this.sectionCount = passSteps.length;
+        this.passSteps = passSteps;
+        this.repeats = repeats;
+        this.eventSteps = eventSteps;
+        this.eventSounds = eventSounds;
+        this.sectionStart = new long[sectionCount + 1];
+        for(int section = 0; section < sectionCount; section++) {
+            sectionStart[section + 1] = sectionStart[section] + (long) passSteps[section] * repeats[section];
+        }
+    }
+
+    /**
+     * Starts a cursor at the beginning of the song.
+     * @return A new cursor.
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Get the length of the song.
+     * @return The number of steps, including every repeat.
+     */
+    public long getSteps() {
+        return sectionStart[sectionCount];
+    }
+
+    /**
+     * Get the number of sections.
+     * @return The section count.
+     */
+    public int getSections() {
+        return sectionCount;
+    }
+
+    /**
+     * Get a section's tempo.
+     * @param section The section, from 0 to getSections() - 1.
+     * @return The tempo of the section's pattern.
+     */
+    public Tempo getTempo(int section) {
+        return tempos[section];
+    }
+
+    /**
+     * Get a section's volume.
+     * @param section The section, from 0 to getSections() - 1.
+     * @return The volume of the section's pattern, from 0 to 100.
+     */
+    public double getVolume(int section) {
+        return volumes[section];
+    }
+
+    /**
+     * Get the length of the song in audio, with each section at its own tempo.
+     * @param sampleRate The number of frames per second.
+     * @return The number of frames, rounded to the nearest.
+     */
+    public long getFrames(float sampleRate) {
+        double frames = 0;
+        for(int section = 0; section < sectionCount; section++) {
+            frames += (sectionStart[section + 1] - sectionStart[section]) * tempos[section].stepFrames(sampleRate);
+        }
+        return Math.round(frames);
+    }
+
+    /**
+     * Get the number of events stored.
+     * @return The events in one pass of each section, added up.
+     */
+    public int getStoredEvents() {
+        int count = 0;
+        for(int[] steps : eventSteps) {
+            count += steps.length;
+        }
+        return count;
+    }
+
+    /**
+     * Get the number of events that will be played.
+     * @return The events in the whole song, including every repeat.
+     */
+    public long getTotalEvents() {
+        long count = 0;
+        for(int section = 0; section < sectionCount; section++) {
+            count += (long) eventSteps[section].length * repeats[section];
+        }
+        return count;
+    }
+}
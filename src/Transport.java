@@ -0,0 +1,331 @@
+import java.util.Arrays;
+
+/**
+ * Starts and stops playback of a model's beat matrix, and keeps track of where playback is. Steps are dispatched
+ * by a StepScheduler on the transport's own thread, which is the model's playback thread: before each step it
+ * applies the changes waiting in the model's CommandQueue. While stopped the queue is drained by start and by
+ * applyCommands instead, so it only ever has one consumer. Has no JavaFX dependencies; a front end can follow
+ * playback by adding a Listener, or, without ever waiting on the transport thread, by polling getAudibleStep once
+ * per display frame.
+ *
+ * Each step is sent to the model LOOKAHEAD milliseconds before it is due to be heard, which the RenderThread's
+ * largest buffer is sized to fit in.
+ *
+ * Instead of looping the matrix the transport can play a song, a compiled Arrangement, by walking a cursor along
+ * its timeline. As the cursor enters each section the model takes that section's tempo and volume.
+ */
+public class Transport {
+
+    /** Told about every step the transport plays */
+    public interface Listener {
+        /**
+         * Called on the transport thread just after a step has been sent to the model.
+         * @param step The step, from 0 to the number of steps in the loop - 1.
+         * @param deadlineNanos The System.nanoTime() at which the step will be heard.
+         */
+        void onStep(int step, long deadlineNanos);
+    }
+
+    //Instance variables
+    public static final int LOOKAHEAD = 50;
+    private static final int STEP_BITS = 8;
+    private final ModelInterface model;
+    private final int stepsPerLoop;
+    private volatile Listener[] listeners = new Listener[0];
+    private volatile Tempo tempo = Tempo.DEFAULT;
+    private volatile StepScheduler scheduler;
+    private volatile long playhead = -1;
+    private volatile long origin;
+    private volatile Timeline song;
+    private volatile EngineMetrics metrics;
+    private Timeline playing;
+    private Timeline.Cursor cursor;
+    private int section;
+    private long songStart;
+    private Thread thread;
+
+    /**
+     * Instantiate a stopped Transport.
+     * @param model The model to play.
+     * @param stepsPerLoop The number of steps before playback loops back to the start.
+     */
+    public Transport(ModelInterface model, int stepsPerLoop) {
+        if(stepsPerLoop > 1 << STEP_BITS) {
+            throw new IllegalArgumentException("too many steps: " + stepsPerLoop);
+        }
+        this.model = model;
+        this.stepsPerLoop = stepsPerLoop;
+    }
+
+    /**
+     * Starts playing from the first step, with every change posted so far applied. Does nothing if already playing.
+     */
+    public synchronized void start() {
+        if(thread != null) {
+            return;
+        }
+        model.applyCommands();
+        tempo = model.getTempo();
+        playhead = -1;
+        playing = null;
+        origin = System.nanoTime();
+        StepScheduler steps = new StepScheduler(tempo, LOOKAHEAD, StepScheduler.OverrunPolicy.SKIP);
+        EngineMetrics recording = metrics;
+        steps.setLateness(recording == null ? null : recording.getStepLateness());
+        scheduler = steps;
+        thread = new Thread(() -> {
+            try {
+                steps.run(Long.MAX_VALUE, this::playStep);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "transport");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MAX_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * Stops playing, waiting for the current step to finish.
+     */
+    public synchronized void stop() {
+        if(thread == null) {
+            return;
+        }
+        scheduler.stop();
+        thread.interrupt();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        thread = null;
+    }
+
+    /**
+     * Applies the changes waiting in the model's CommandQueue now, if stopped, so edits made while nothing plays
+     * still reach the model. While playing this does nothing, since the transport thread applies them before each
+     * step and must be the queue's only consumer. Cheap enough to call once per display frame.
+     */
+    public synchronized void applyCommands() {
+        if(thread == null) {
+            model.applyCommands();
+        }
+    }
+
+    /**
+     * Is the transport running?
+     * @return True if playing.
+     */
+    public synchronized boolean isPlaying() {
+        return thread != null;
+    }
+
+    /**
+     * Get the playback position.
+     * @return The step most recently played, which may not be heard until the lookahead has passed, or -1 if
+     *         nothing has been played yet.
+     */
+    public int getPosition() {
+        long packed = playhead;
+        return packed < 0 ? -1 : (int) (packed & ((1 << STEP_BITS) - 1));
+    }
+
+    /**
+     * Get the step being heard at a given time. Reads a single field, so it is cheap enough to call every frame
+     * and never blocks the transport.
+     * @param now The time, from System.nanoTime().
+     * @return The step whose deadline is the latest one not after now, or -1 if nothing has been played yet.
+     */
+    public int getAudibleStep(long now) {
+        long packed = playhead;
+        if(packed < 0) {
+            return -1;
+        }
+        int step = (int) (packed & ((1 << STEP_BITS) - 1));
+        if(origin + (packed >>> STEP_BITS) > now) {
+            step = (step + stepsPerLoop - 1) % stepsPerLoop;
+        }
+        return step;
+    }
+
+    /**
+     * Gets where a time falls on the transport's grid, counting on from the last step played at the current tempo.
+     * @param nanos A System.nanoTime().
+     * @return The step, plus how far through it the time is, from 0 up to the number of steps in the loop; or -1 if
+     *         nothing has been played yet.
+     */
+    public double stepAt(long nanos) {
+        long packed = playhead;
+        if(packed < 0) {
+            return -1;
+        }
+        int step = (int) (packed & ((1 << STEP_BITS) - 1));
+        long last = origin + (packed >>> STEP_BITS);
+        double position = (step + (nanos - last) / (double) tempo.stepNanos()) % stepsPerLoop;
+        return position < 0 ? position + stepsPerLoop : position;
+    }
+
+    /**
+     * Gets the next sixteenth note on the transport's grid, lined up with the steps it plays. If the transport has
+     * stopped, the grid carries on from the last step it played.
+     * @param nanos A System.nanoTime().
+     * @return The time of the first sixteenth at or after nanos, or nanos if nothing has been played yet.
+     */
+    public long nextSixteenth(long nanos) {
+        long packed = playhead;
+        if(packed < 0) {
+            return nanos;
+        }
+        Tempo current = tempo;
+        long sixteenth = current.stepNanos() * current.getStepsPerBeat() / 4;
+        long last = origin + (packed >>> STEP_BITS);
+        return last + Math.floorDiv(nanos - last + sixteenth - 1, sixteenth) * sixteenth;
+    }
+
+    /**
+     * Changes the tempo, while playing or not. Takes effect from the next step.
+     * @param newTempo The new tempo.
+     */
+    public void setTempo(Tempo newTempo) {
+        tempo = newTempo;
+        model.updateTempo(newTempo);
+        StepScheduler running = scheduler;
+        if(running != null) {
+            running.setTempo(newTempo);
+        }
+    }
+
+    /**
+     * Get the tempo.
+     * @return The current tempo.
+     */
+    public Tempo getTempo() {
+        return tempo;
+    }
+
+    /**
+     * Plays a song from its start at the next step instead of looping the matrix. Once the song has ended the
+     * transport carries on silently until another song or null is set. Each section sets the model's tempo and
+     * volume to its pattern's as it starts, and they stay at the last section's once the song is over.
+     * @param newSong The compiled song, or null to go back to looping the matrix.
+     */
+    public void setSong(Timeline newSong) {
+        song = newSong;
+    }
+
+    /**
+     * Get the song.
+     * @return The song set to play, or null if the matrix is looped.
+     */
+    public Timeline getSong() {
+        return song;
+    }
+
+    /**
+     * Adds a listener to be told about each step.
+     * @param listener The listener.
+     */
+    public synchronized void addListener(Listener listener) {
+        Listener[] updated = Arrays.copyOf(listeners, listeners.length + 1);
+        updated[listeners.length] = listener;
+        listeners = updated;
+    }
+
+    /**
+     * Removes a listener.
+     * @param listener The listener.
+     */
+    public synchronized void removeListener(Listener listener) {
+        for(int i = 0; i < listeners.length; i++) {
+            if(listeners[i].equals(listener)) {
+                Listener[] updated = Arrays.copyOf(listeners, listeners.length - 1);
+                System.arraycopy(listeners, i + 1, updated, i, updated.length - i);
+                listeners = updated;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Get the number of steps the scheduler dropped because the transport thread got to them after they were due.
+     * @return The count since the transport was last started, or 0 if it never has been.
+     */
+    public long getSkippedSteps() {
+        StepScheduler steps = scheduler;
+        return steps == null ? 0 : steps.getSkipped();
+    }
+
+    /**
+     * Sets where the transport records how late each step is dispatched and how many commands were waiting for it.
+     * @param metrics The metrics to record into, or null to stop recording.
+     */
+    public void setMetrics(EngineMetrics metrics) {
+        this.metrics = metrics;
+        StepScheduler steps = scheduler;
+        if(steps != null) {
+            steps.setLateness(metrics == null ? null : metrics.getStepLateness());
+        }
+    }
+
+    /**
+     * Plays one step and tells the listeners. The scheduler's step count never wraps, so it can be used both for
+     * the position in a song and, wrapped here, for the position in the matrix. Entering a song section applies
+     * its tempo and volume before the step is played, so the gap to the next step is already at the new tempo.
+     * Called by the transport thread, or directly by a harness driving playback without one. Allocates nothing: the
+     * listeners are an array replaced on every change, so walking them needs no iterator.
+     * @param count The number of steps dispatched before this one.
+     * @param deadline The System.nanoTime() the step is due to be heard at.
+     */
+    void playStep(long count, long deadline) {
+        EngineMetrics metrics = this.metrics;
+        if(metrics != null) {
+            metrics.getQueueDepth().record(model.getCommands().getDepth());
+        }
+        model.applyCommands();
+        Timeline next = song;
+        if(next != playing) {
+            playing = next;
+            cursor = next == null ? null : next.cursor();
+            section = -1;
+            songStart = count;
+        }
+        if(cursor != null) {
+            enterSection(count - songStart);
+        }
+        Tempo modelTempo = model.getTempo();
+        if(modelTempo != tempo) {
+            tempo = modelTempo;
+            StepScheduler steps = scheduler;
+            if(steps != null) {
+                steps.setTempo(modelTempo);
+            }
+        }
+        int step;
+        if(cursor != null) {
+            model.playEvents(cursor, count - songStart, deadline);
+            step = (int) ((count - songStart) % stepsPerLoop);
+        } else {
+            step = (int) (count % stepsPerLoop);
+            model.playBeat(step, deadline);
+        }
+        playhead = (deadline - origin) << STEP_BITS | step;
+        for(Listener listener : listeners) {
+            listener.onStep(step, deadline);
+        }
+    }
+
+    /*
+     * Gives the model the tempo and volume of the song section a step is in, if the song has just entered it.
+     */
+    private void enterSection(long songStep) {
+        int entered = cursor.sectionAt(songStep);
+        if(entered != section) {
+            section = entered;
+            if(entered < playing.getSections()) {
+                model.updateTempo(playing.getTempo(entered));
+                model.updateVolume(playing.getVolume(entered));
+            }
+        }
+    }
+}
@@ -0,0 +1,468 @@
+import java.nio.ShortBuffer;
+
+/**
+ * A fixed set of voices, allocated once, that the MixEngine plays sounds with. The pool enforces a global
+ * polyphony limit and a per-sound limit. When a new sound would go over a limit, a playing voice is "stolen":
+ * it is given a short fade-out, so it doesn't click, and the new sound takes its place. Which voice is stolen is
+ * set by a StealPolicy. A SynthVoice is only made when more synth notes play at once than ever before, and is
+ * kept for reuse when its note ends, so once the pool has warmed up starting, stealing and mixing voices allocate
+ * nothing.
+ *
+ * Only used from the render thread.
+ */
+public class VoicePool {
+
+    /** Which voice to steal when the global polyphony limit is reached */
+    public enum StealPolicy {
+        /** The voice that started longest ago */
+        OLDEST,
+        /** The voice that was quietest in the last block */
+        QUIETEST,
+        /** The oldest voice playing the same sound, or the oldest voice if there is none */
+        SAME_SOUND
+    }
+
+    //Instance variables
+    public static final int DEFAULT_MAX_VOICES = 64;
+    public static final int DEFAULT_MAX_PER_SOUND = 4;
+    public static final int DEFAULT_FADE_FRAMES = 220;
+    private static final int SCRATCH_FRAMES = 1024;
+    private final Voice[] voices;
+    private final ShortBuffer scratch = ShortBuffer.allocate(SCRATCH_FRAMES * MixEngine.CHANNELS);
+    private final float[] synthScratch = new float[SCRATCH_FRAMES];
+    private final short[] pcmScratch = new short[SCRATCH_FRAMES * MixEngine.CHANNELS];
+    private final MixKernels kernels = MixKernels.get();
+    private final float sampleRate;
+    private final SynthVoice[] spareSynths;
+    private int spareSynthCount;
+    private DiskStreamer streamer;
+    private final int fadeFrames;
+    private volatile int maxVoices = DEFAULT_MAX_VOICES;
+    private volatile int maxPerSound = DEFAULT_MAX_PER_SOUND;
+    private volatile StealPolicy policy = StealPolicy.OLDEST;
+    private long serial;
+    private int playing;
+    private long stolen;
+
+    /**
+     * Instantiate a VoicePool.
+     * @param sampleRate The sample rate of the engine it plays in, which synth notes are rendered at.
+     * @param capacity The most voices the polyphony limit can ever be set to. Twice as many voices are allocated so
+     *                 that stolen voices can finish fading out while their replacements play.
+     * @param fadeFrames The length of the fade-out given to stolen voices.
+     */
+    public VoicePool(float sampleRate, int capacity, int fadeFrames) {
+        this.sampleRate = sampleRate;
+        this.voices = new Voice[capacity * 2];
+        for(int i = 0; i < voices.length; i++) {
+            voices[i] = new Voice();
+        }
+        this.spareSynths = new SynthVoice[voices.length];
+        this.fadeFrames = fadeFrames;
+        this.maxVoices = Math.min(DEFAULT_MAX_VOICES, capacity);
+    }
+
+    /**
+     * Sets the polyphony limits. Safe to call from any thread.
+     * @param maxVoices The most voices that can play at once, up to the capacity of the pool.
+     * @param maxPerSound The most voices that can play the same sound at once.
+     */
+    public void setPolyphony(int maxVoices, int maxPerSound) {
+        if(maxVoices < 1 || maxVoices > voices.length / 2 || maxPerSound < 1) {
+            throw new IllegalArgumentException("Bad polyphony " + maxVoices + "/" + maxPerSound);
+        }
+        this.maxVoices = maxVoices;
+        this.maxPerSound = maxPerSound;
+    }
+
+    /**
+     * Sets which voice is stolen when the global limit is reached. Safe to call from any thread.
+     * @param policy The steal policy.
+     */
+    public void setStealPolicy(StealPolicy policy) {
+        this.policy = policy;
+    }
+
+    /**
+     * Get the number of voices playing, not counting ones fading out after being stolen.
+     * @return The voice count.
+     */
+    public int getPlaying() {
+        return playing;
+    }
+
+    /**
+     * Get the number of voices playing one sound, not counting ones fading out. Only call it from the render thread,
+     * or while nothing is rendering.
+     * @param sound The sound.
+     * @return The voice count.
+     */
+    public int getPlaying(PcmSample sound) {
+        int count = 0;
+        for(Voice v : voices) {
+            if(v.sample == sound && !v.isFading()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Get the number of voices stolen since the pool was made.
+     * @return The steal count.
+     */
+    public long getStolen() {
+        return stolen;
+    }
+
+    /**
+     * Starts a voice.
+     * @param sample The sound to play.
+     * @param gain Its volume.
+     * @param frame The frame it starts on.
+     * @param cut True to fade out any voices already playing this sound, like restarting an AudioClip.
+     * @param now The first frame of the block about to be mixed. Fades start here at the earliest.
+     */
+    public void start(PcmSample sample, float gain, long frame, boolean cut, long now) {
+        start(sample, gain, frame, cut, now, -1);
+    }
+
+    /**
+     * Starts a voice on a track.
+     * @param sample The sound to play.
+     * @param gain Its volume.
+     * @param frame The frame it starts on.
+     * @param cut True to fade out any voices already playing this sample, like restarting an AudioClip.
+     * @param now The first frame of the block about to be mixed. Fades start here at the earliest.
+     * @param track The EffectsRack track it is mixed into, or -1 to mix it straight into the block.
+     */
+    public void start(PcmSample sample, float gain, long frame, boolean cut, long now, int track) {
+        int sameSound = 0;
+        for(Voice v : voices) {
+            if(v.sample == sample && !v.isFading()) {
+                if(cut && v.start <= frame) {
+                    fadeOut(v, Math.max(frame, now));
+                } else {
+                    sameSound++;
+                }
+            }
+        }
+        if(sameSound >= maxPerSound) {
+            steal(oldest(sample), now);
+        } else if(playing >= maxVoices) {
+            steal(victim(sample), now);
+        }
+        Voice free = free();
+        free.sample = sample;
+        free.gain = gain;
+        free.start = frame;
+        free.fadeStart = Long.MAX_VALUE;
+        free.serial = serial++;
+        free.level = gain;
+        free.track = track;
+        if(sample instanceof SynthNote) {
+            SynthNote note = (SynthNote) sample;
+            free.synth = spareSynthCount > 0 ? spareSynths[--spareSynthCount] : new SynthVoice(sampleRate);
+            free.synth.start(note.getPatch(), note.getFrequency());
+            free.end = frame + free.synth.getLength();
+        } else {
+            free.end = frame + sample.getFrames();
+        }
+        if(sample instanceof StreamingSample) {
+            if(streamer == null) {
+                streamer = DiskStreamer.shared();
+            }
+            free.stream = streamer.open((StreamingSample) sample);
+        }
+        playing++;
+    }
+
+    /**
+     * Adds every voice that sounds between two frames to a block, and frees voices that have finished.
+     * @param out The block, as interleaved stereo floats.
+     * @param blockStart The frame at the start of the block.
+     * @param blockEnd The frame after the end of the block.
+     */
+    public void mix(float[] out, long blockStart, long blockEnd) {
+        mix(out, null, blockStart, blockEnd);
+    }
+
+    /**
+     * Adds every voice that sounds between two frames to a block or to its track's bus, and frees voices that have
+     * finished.
+     * @param out The block, as interleaved stereo floats.
+     * @param effects The rack whose buses voices on tracks are mixed into, or null to mix every voice into out.
+     * @param blockStart The frame at the start of the block.
+     * @param blockEnd The frame after the end of the block.
+     */
+    public void mix(float[] out, EffectsRack effects, long blockStart, long blockEnd) {
+        for(Voice v : voices) {
+            if(v.sample == null) {
+                continue;
+            }
+            if(v.start < blockEnd) {
+                v.mixInto(effects == null || v.track < 0 ? out : effects.bus(v.track), blockStart, blockEnd);
+            }
+            if(v.stop() <= blockEnd) {
+                release(v);
+            }
+        }
+    }
+
+    /*
+     * Chooses the voice to steal under the global limit, according to the policy.
+     */
+    private Voice victim(PcmSample sample) {
+        switch(policy) {
+            case QUIETEST:
+                Voice quietest = null;
+                for(Voice v : voices) {
+                    if(v.sample != null && !v.isFading() && (quietest == null || v.level < quietest.level)) {
+                        quietest = v;
+                    }
+                }
+                return quietest;
+            case SAME_SOUND:
+                Voice same = oldest(sample);
+                return same != null ? same : oldest(null);
+            default:
+                return oldest(null);
+        }
+    }
+
+    /*
+     * The playing voice that started first, only looking at one sound if it is not null.
+     */
+    private Voice oldest(PcmSample sample) {
+        Voice oldest = null;
+        for(Voice v : voices) {
+            if(v.sample != null && !v.isFading() && (sample == null || v.sample == sample)
+                    && (oldest == null || v.serial < oldest.serial)) {
+                oldest = v;
+            }
+        }
+        return oldest;
+    }
+
+    /*
+     * Fades a voice out so that it can be replaced.
+     */
+    private void steal(Voice v, long now) {
+        if(v != null) {
+            fadeOut(v, now);
+            stolen++;
+        }
+    }
+
+    /*
+     * Starts a voice's fade-out. A fading voice no longer counts towards the polyphony limits.
+     */
+    private void fadeOut(Voice v, long at) {
+        v.fadeStart = Math.max(at, v.start);
+        playing--;
+    }
+
+    /*
+     * Finds an unused voice. If every voice is in use, the fading voice closest to finishing is cut short.
+     */
+    private Voice free() {
+        Voice nearest = null;
+        for(Voice v : voices) {
+            if(v.sample == null) {
+                return v;
+            }
+            if(v.isFading() && (nearest == null || v.stop() < nearest.stop())) {
+                nearest = v;
+            }
+        }
+        if(nearest == null) {
+            // Only possible if the limits were lowered while voices were playing
+            nearest = oldest(null);
+        }
+        release(nearest);
+        return nearest;
+    }
+
+    /*
+     * Returns a voice to the pool.
+     */
+    private void release(Voice v) {
+        if(!v.isFading()) {
+            playing--;
+        }
+        if(v.stream != null) {
+            streamer.close(v.stream);
+            v.stream = null;
+        }
+        if(v.synth != null) {
+            spareSynths[spareSynthCount++] = v.synth;
+            v.synth = null;
+        }
+        v.sample = null;
+    }
+
+    /*
+     * One voice: a sound playing from a start frame, with an optional linear fade-out.
+     */
+    private final class Voice {
+        private PcmSample sample;
+        private float gain;
+        private long start;
+        private long end;
+        private long fadeStart;
+        private long serial;
+        private float level;
+        private int track;
+        private DiskStreamer.Stream stream;
+        private SynthVoice synth;
+
+        boolean isFading() {
+            return fadeStart != Long.MAX_VALUE;
+        }
+
+        /*
+         * The frame after the last one this voice will play.
+         */
+        long stop() {
+            return isFading() ? Math.min(end, fadeStart + fadeFrames) : end;
+        }
+
+        /*
+         * Adds the part of this voice that falls between the frames blockStart and blockEnd to the block, and notes
+         * the loudest level reached, for the QUIETEST policy. A streamed sound is mixed from memory for its attack
+         * and then through the scratch buffer, a chunk at a time, from its stream. A pitched sound is resampled from
+         * its reference, and a synth note is rendered by the voice's SynthVoice.
+         */
+        void mixInto(float[] out, long blockStart, long blockEnd) {
+            long from = Math.max(start, blockStart);
+            long to = Math.min(stop(), blockEnd);
+            float scale = gain / 32768f;
+            int peak = 0;
+            if(sample instanceof SynthNote) {
+                peak = mixSynth(out, blockStart, from, to, gain);
+            } else if(sample instanceof PitchedSample) {
+                peak = mixPitched(out, blockStart, from, to, (PitchedSample) sample, scale);
+            } else if(!(sample instanceof StreamingSample)) {
+                peak = mixRange(out, blockStart, from, to, sample.getData(), (int) (from - start), scale);
+            } else {
+                StreamingSample streaming = (StreamingSample) sample;
+                long attackEnd = Math.min(to, start + streaming.getAttackFrames());
+                if(from < attackEnd) {
+                    peak = mixRange(out, blockStart, from, attackEnd, sample.getData(), (int) (from - start), scale);
+                    from = attackEnd;
+                }
+                while(from < to) {
+                    int frames = (int) Math.min(to - from, SCRATCH_FRAMES);
+                    streamer.read(stream, streaming, from - start, frames, scratch);
+                    peak = Math.max(peak, mixRange(out, blockStart, from, from + frames, scratch, 0, scale));
+                    from += frames;
+                }
+            }
+            level = peak * scale;
+        }
+
+        /*
+         * Adds frames from..to of the voice to the block, reading them from data starting at frame s, fading them
+         * if they are past fadeStart. Returns the loudest sample before the fade. The frames before the fade go
+         * through the kernels, straight from the array behind data if it has one, or else copied out a chunk at a
+         * time, since samples in memory are usually in direct buffers.
+         */
+        int mixRange(float[] out, long blockStart, long from, long to, ShortBuffer data, int s, float scale) {
+            int o = (int) (from - blockStart) * MixEngine.CHANNELS;
+            s *= MixEngine.CHANNELS;
+            int peak = 0;
+            long steady = Math.min(to, fadeStart);
+            for(long f = from; f < steady; ) {
+                int samples = (int) Math.min(steady - f, SCRATCH_FRAMES) * MixEngine.CHANNELS;
+                if(data.hasArray()) {
+                    peak = Math.max(peak, kernels.accumulate(out, o, data.array(), data.arrayOffset() + s, samples,
+                            scale));
+                } else {
+                    data.get(s, pcmScratch, 0, samples);
+                    peak = Math.max(peak, kernels.accumulate(out, o, pcmScratch, 0, samples, scale));
+                }
+                o += samples;
+                s += samples;
+                f += samples / MixEngine.CHANNELS;
+            }
+            for(long f = Math.max(from, fadeStart); f < to; f++) {
+                float ramp = scale * (fadeStart + fadeFrames - f) / fadeFrames;
+                out[o++] += data.get(s++) * ramp;
+                out[o++] += data.get(s++) * ramp;
+            }
+            return peak;
+        }
+
+        /*
+         * Like mixRange, but reads the reference of a pitched sound at the note's speed, interpolating between its
+         * samples with the note's SincTable. Frame f of the note is at (f - start) * increment in the reference, so
+         * there is no position to carry from block to block and rounding never accumulates.
+         */
+        int mixPitched(float[] out, long blockStart, long from, long to, PitchedSample note, float scale) {
+            ShortBuffer data = note.getData();
+            float[] table = note.getTable();
+            long increment = note.getIncrement();
+            int frames = data.limit() / MixEngine.CHANNELS;
+            int o = (int) (from - blockStart) * MixEngine.CHANNELS;
+            float peak = 0;
+            for(long f = from; f < to; f++) {
+                long position = (f - start) * increment;
+                int first = (int) (position >>> 32) - (SincTable.TAPS / 2 - 1);
+                int k = (int) (position >>> (32 - SincTable.PHASE_BITS) & (SincTable.PHASES - 1)) * SincTable.TAPS;
+                float left = 0;
+                float right = 0;
+                if(first >= 0 && first + SincTable.TAPS <= frames) {
+                    for(int t = 0, s = first * MixEngine.CHANNELS; t < SincTable.TAPS; t++) {
+                        left += table[k + t] * data.get(s++);
+                        right += table[k + t] * data.get(s++);
+                    }
+                } else {
+                    for(int t = 0; t < SincTable.TAPS; t++) {
+                        int i = first + t;
+                        if(i >= 0 && i < frames) {
+                            left += table[k + t] * data.get(i * MixEngine.CHANNELS);
+                            right += table[k + t] * data.get(i * MixEngine.CHANNELS + 1);
+                        }
+                    }
+                }
+                float gain = scale;
+                if(f >= fadeStart) {
+                    gain = scale * (fadeStart + fadeFrames - f) / fadeFrames;
+                } else {
+                    peak = Math.max(peak, Math.max(Math.abs(left), Math.abs(right)));
+                }
+                out[o++] += left * gain;
+                out[o++] += right * gain;
+            }
+            return (int) peak;
+        }
+
+        /*
+         * Renders the synth note a chunk at a time into the scratch buffer and adds it to both sides of the block,
+         * fading it if it is past fadeStart. Frames that were due before the voice was first mixed are skipped.
+         * Returns the loudest sample before the fade, on the same scale as mixRange.
+         */
+        int mixSynth(float[] out, long blockStart, long from, long to, float gain) {
+            if(synth.getFrame() < from - start) {
+                synth.skip(from - start - synth.getFrame());
+            }
+            int o = (int) (from - blockStart) * MixEngine.CHANNELS;
+            float peak = 0;
+            while(from < to) {
+                int frames = (int) Math.min(to - from, SCRATCH_FRAMES);
+                synth.render(synthScratch, 0, frames);
+                int steady = (int) Math.max(0, Math.min(frames, fadeStart - from));
+                peak = Math.max(peak, kernels.accumulateMono(out, o, synthScratch, 0, steady, gain));
+                o += steady * MixEngine.CHANNELS;
+                for(int i = steady; i < frames; i++) {
+                    float sample = synthScratch[i];
+                    float g = gain * (fadeStart + fadeFrames - (from + i)) / fadeFrames;
+                    out[o++] += sample * g;
+                    out[o++] += sample * g;
+                }
+                from += frames;
+            }
+            return (int) (peak * 32768);
+        }
+    }
+}
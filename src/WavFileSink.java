@@ -0,0 +1,89 @@
+import javax.sound.sampled.AudioFormat;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * An AudioSink that records the audio to a 16-bit PCM .wav file. The header is rewritten with the final sizes when
+ * the sink is closed.
+ */
+public class WavFileSink implements AudioSink {
+
+    //Instance variables
+    private static final int HEADER_BYTES = 44;
+    private final File file;
+    private final NullSink clock;
+    private RandomAccessFile raf;
+    private AudioFormat format;
+    private long dataBytes;
+
+    /**
+     * Instantiate a WavFileSink.
+     * @param file The file to write.
+     * @param realTime True to accept audio at real-time speed (live recording), false to write as fast as possible.
+     */
+    public WavFileSink(File file, boolean realTime) {
+        this.file = file;
+        this.clock = new NullSink(realTime);
+    }
+
+    @Override
+    public void open(AudioFormat format) throws IOException {
+        open(format, 0);
+    }
+
+    @Override
+    public void open(AudioFormat format, int bufferFrames) throws IOException {
+        this.format = format;
+        raf = new RandomAccessFile(file, "rw");
+        raf.setLength(0);
+        dataBytes = 0;
+        writeHeader();
+        clock.open(format, bufferFrames);
+    }
+
+    @Override
+    public void write(byte[] data, int len) throws IOException {
+        raf.write(data, 0, len);
+        dataBytes += len;
+        clock.write(data, len);
+    }
+
+    @Override
+    public long getUnderruns() {
+        return clock.getUnderruns();
+    }
+
+    @Override
+    public int getQueuedFrames() {
+        return clock.getQueuedFrames();
+    }
+
+    @Override
+    public void close() throws IOException {
+        raf.seek(0);
+        writeHeader();
+        raf.close();
+    }
+
+    /*
+     * Writes the RIFF/WAVE header for the current format and data length at the current file position.
+     */
+    private void writeHeader() throws IOException {
+        int channels = format.getChannels();
+        int bytesPerSample = format.getSampleSizeInBits() / 8;
+        int rate = (int) format.getSampleRate();
+        raf.writeBytes("RIFF");
+        raf.writeInt(Integer.reverseBytes((int) (HEADER_BYTES - 8 + dataBytes)));
+        raf.writeBytes("WAVEfmt ");
+        raf.writeInt(Integer.reverseBytes(16));
+        raf.writeShort(Short.reverseBytes((short) 1));
+        raf.writeShort(Short.reverseBytes((short) channels));
+        raf.writeInt(Integer.reverseBytes(rate));
+        raf.writeInt(Integer.reverseBytes(rate * channels * bytesPerSample));
+        raf.writeShort(Short.reverseBytes((short) (channels * bytesPerSample)));
+        raf.writeShort(Short.reverseBytes((short) (bytesPerSample * 8)));
+        raf.writeBytes("data");
+        raf.writeInt(Integer.reverseBytes((int) dataBytes));
+    }
+}
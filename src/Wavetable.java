@@ -0,0 +1,87 @@
+/**
+ * Band-limited single-cycle waveforms for the SynthVoice oscillator. Each waveform is built when the class loads by
+ * adding up its harmonics, into a table per octave: table b holds only the harmonics below SIZE / 2^(b+1), so a note
+ * reads the table whose highest harmonic still fits under the Nyquist frequency for its pitch, and never aliases.
+ */
+public enum Wavetable {
+    /** One harmonic */
+    SINE(1, 1, false, 1),
+    /** Odd harmonics falling at 1/n^2, alternating in sign */
+    TRIANGLE(2, 2, true, Integer.MAX_VALUE),
+    /** Every harmonic, falling at 1/n */
+    SAW(1, 1, false, Integer.MAX_VALUE),
+    /** Odd harmonics falling at 1/n */
+    SQUARE(2, 1, false, Integer.MAX_VALUE);
+
+    //Instance variables
+    public static final int SIZE_BITS = 11;
+    public static final int SIZE = 1 << SIZE_BITS;
+    private static final int BANDS = SIZE_BITS;
+    private final float[][] bands = new float[BANDS][];
+
+    /*
+     * Builds the tables from a recipe: harmonics 1, 1 + step, 1 + 2 * step and so on up to limit, each at 1/n^power,
+     * with every other one inverted if alternating.
+     */
+    Wavetable(int step, int power, boolean alternating, int limit) {
+        for(int band = 0; band < BANDS; band++) {
+            bands[band] = build(Math.min(harmonics(band), limit), step, power, alternating);
+        }
+    }
+
+    /**
+     * Gets the table to play a note with.
+     * @param increment How far through the cycle the oscillator moves each sample, i.e. frequency / sample rate.
+     * @return SIZE + 1 samples of one cycle, the last a copy of the first for interpolation. Must not be modified.
+     */
+    public float[] table(double increment) {
+        int band = 0;
+        while(band < BANDS - 1 && harmonics(band) * increment > 0.5) {
+            band++;
+        }
+        return bands[band];
+    }
+
+    @Override
+    public String toString() {
+        return name().toLowerCase();
+    }
+
+    /*
+     * The highest harmonic in a band's table.
+     */
+    private static int harmonics(int band) {
+        return Math.max(1, (SIZE >> (band + 1)) - 1);
+    }
+
+    /*
+     * Adds up harmonics, reading sines from one cycle of a sine table, and scales the result to
+     * a peak of 1.
+     */
+    private static float[] build(int harmonics, int step, int power, boolean alternating) {
+        double[] sine = new double[SIZE];
+        for(int i = 0; i < SIZE; i++) {
+            sine[i] = Math.sin(2 * Math.PI * i / SIZE);
+        }
+        double[] sum = new double[SIZE];
+        for(int n = 1; n <= harmonics; n += step) {
+            double amplitude = Math.pow(n, -power);
+            if(alternating && (n / 2) % 2 == 1) {
+                amplitude = -amplitude;
+            }
+            for(int i = 0; i < SIZE; i++) {
+                sum[i] += amplitude * sine[(int) ((long) n * i & (SIZE - 1))];
+            }
+        }
+        double peak = 0;
+        for(double s : sum) {
+            peak = Math.max(peak, Math.abs(s));
+        }
+        float[] table = new float[SIZE + 1];
+        for(int i = 0; i < SIZE; i++) {
+            table[i] = (float) (sum[i] / peak);
+        }
+        table[SIZE] = table[0];
+        return table;
+    }
+}